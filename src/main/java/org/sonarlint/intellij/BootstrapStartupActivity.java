@@ -19,29 +19,42 @@
  */
 package org.sonarlint.intellij;
 
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.ProjectManagerListener;
 import com.intellij.openapi.startup.StartupActivity;
+import java.util.StringJoiner;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.core.ProjectServerNotifications;
 import org.sonarlint.intellij.core.UpdateChecker;
 import org.sonarlint.intellij.editor.CodeAnalyzerRestarter;
 import org.sonarlint.intellij.issue.persistence.LiveIssueCache;
+import org.sonarlint.intellij.tasks.IssueStoreCleanupTask;
 import org.sonarlint.intellij.trigger.EditorChangeTrigger;
+import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class BootstrapStartupActivity implements StartupActivity {
 
   @Override
   public void runActivity(@NotNull Project project) {
-
+    StartupTimer timer = new StartupTimer();
     SonarLintUtils.getService(project, ProjectServerNotifications.class).init();
+    timer.step("server notifications");
     SonarLintUtils.getService(project, CodeAnalyzerRestarter.class).init();
+    timer.step("analyzer restarter");
     SonarLintUtils.getService(project, EditorChangeTrigger.class).onProjectOpened();
+    timer.step("editor change trigger");
 
     // perform on bindings load
     SonarLintUtils.getService(project, UpdateChecker.class).init();
+    timer.step("update checker");
+
+    // the issue store is opened and cleaned in the background, it is also opened on demand if an analysis needs it first
+    ProgressManager.getInstance().run(new IssueStoreCleanupTask(project));
+    timer.step("issue store cleanup scheduling");
+    SonarLintConsole.get(project).debug("SonarLint startup: " + timer);
 
     project.getMessageBus().connect().subscribe(ProjectManager.TOPIC, new ProjectManagerListener() {
       @Override
@@ -53,4 +66,21 @@ public class BootstrapStartupActivity implements StartupActivity {
     });
 
   }
+
+  private static class StartupTimer {
+    private final StringJoiner steps = new StringJoiner(", ");
+    private final long start = System.currentTimeMillis();
+    private long last = start;
+
+    private void step(String name) {
+      long now = System.currentTimeMillis();
+      steps.add(name + " " + (now - last) + "ms");
+      last = now;
+    }
+
+    @Override
+    public String toString() {
+      return (last - start) + "ms (" + steps + ")";
+    }
+  }
 }
@@ -35,6 +35,7 @@ import java.util.List;
 import javax.swing.Icon;
 import org.jetbrains.annotations.Nullable;
 import org.sonarlint.intellij.issue.IssueManager;
+import org.sonarlint.intellij.issue.persistence.AnalysisResultCache;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class SonarClearIssuesAction extends AnAction {
@@ -51,10 +52,13 @@ public class SonarClearIssuesAction extends AnAction {
 
     if (project != null) {
       IssueManager issueManager = SonarLintUtils.getService(project, IssueManager.class);
+      AnalysisResultCache analysisResultCache = SonarLintUtils.getService(project, AnalysisResultCache.class);
       DaemonCodeAnalyzer codeAnalyzer = DaemonCodeAnalyzer.getInstance(project);
 
       ApplicationManager.getApplication().runReadAction(() -> {
         issueManager.clear();
+        // otherwise the cleared issues would be replayed by the next analysis of unchanged files
+        analysisResultCache.clear();
 
         // run annotator to remove highlighting of issues
         FileEditorManager editorManager = FileEditorManager.getInstance(project);
@@ -0,0 +1,189 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.compiler.CompilationStatusListener;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompilerTopics;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.ModuleListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.messages.MessageBusConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
+import org.sonarlint.intellij.messages.GlobalConfigurationListener;
+import org.sonarlint.intellij.messages.ProjectConfigurationListener;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarlint.intellij.util.SonarLintUtils;
+
+/**
+ * Caches the analyzer properties computed by the {@link AnalysisConfigurator}s for each module. Computing them can be expensive, for
+ * example the Java classpath requires walking all the dependencies of the module.
+ * The cache is cleared when the roots of the project change (dependencies, SDKs, language levels...), when settings change, and
+ * after a compilation or when output directories are created or deleted by other means, since they are only configured if they exist.
+ */
+@ThreadSafe
+public class AnalysisConfigurationCache implements Disposable {
+  private final Project myProject;
+  private final Supplier<List<AnalysisConfigurator>> configurators;
+  private final Map<Module, Entry> entries = new ConcurrentHashMap<>();
+  // incremented on each invalidation, so that a configuration computed concurrently with an invalidation is not cached
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong savedMs = new AtomicLong();
+
+  public AnalysisConfigurationCache(Project project) {
+    this(project, AnalysisConfigurator.EP_NAME::getExtensionList);
+  }
+
+  AnalysisConfigurationCache(Project project, Supplier<List<AnalysisConfigurator>> configurators) {
+    myProject = project;
+    this.configurators = configurators;
+    subscribeToChanges();
+  }
+
+  /**
+   * Returns the analyzer properties of the module, computing them if they are not cached.
+   */
+  public Map<String, String> getConfiguration(Module module) {
+    SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
+    Entry entry = entries.get(module);
+    if (entry != null) {
+      hits.incrementAndGet();
+      long saved = savedMs.addAndGet(entry.computeMs);
+      console.debug(String.format("Reusing analysis configuration of module '%s', saved %dms (%dms since startup)", module.getName(),
+        entry.computeMs, saved));
+      return entry.properties;
+    }
+
+    misses.incrementAndGet();
+    long gen = generation.get();
+    long start = System.currentTimeMillis();
+    List<AnalysisConfigurator> analysisConfigurators = configurators.get();
+    if (analysisConfigurators.isEmpty()) {
+      console.info("No analysis configurators found");
+    }
+    Map<String, String> properties = new HashMap<>();
+    for (AnalysisConfigurator config : analysisConfigurators) {
+      console.debug("Configuring analysis with " + config.getClass().getName());
+      properties.putAll(config.configure(module));
+    }
+    entry = new Entry(Collections.unmodifiableMap(properties), System.currentTimeMillis() - start);
+    synchronized (this) {
+      if (gen == generation.get() && !module.isDisposed()) {
+        entries.put(module, entry);
+      }
+    }
+    return entry.properties;
+  }
+
+  public synchronized void invalidate() {
+    generation.incrementAndGet();
+    entries.clear();
+  }
+
+  public synchronized void invalidate(Module module) {
+    generation.incrementAndGet();
+    entries.remove(module);
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  /**
+   * Total time that computing the configurations again would have taken, since the project was opened.
+   */
+  public long savedMs() {
+    return savedMs.get();
+  }
+
+  private void subscribeToChanges() {
+    MessageBusConnection busConnection = myProject.getMessageBus().connect(this);
+    busConnection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+      @Override
+      public void rootsChanged(@NotNull ModuleRootEvent event) {
+        invalidate();
+      }
+    });
+    busConnection.subscribe(ProjectTopics.MODULES, new ModuleListener() {
+      @Override
+      public void moduleRemoved(@NotNull Project project, @NotNull Module module) {
+        invalidate(module);
+      }
+    });
+    busConnection.subscribe(CompilerTopics.COMPILATION_STATUS, new CompilationStatusListener() {
+      @Override
+      public void compilationFinished(boolean aborted, int errors, int warnings, @NotNull CompileContext compileContext) {
+        invalidate();
+      }
+    });
+    busConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        if (CompilerOutputChanges.affectOutputDirectories(myProject, events)) {
+          invalidate();
+        }
+      }
+    });
+    busConnection.subscribe(GlobalConfigurationListener.TOPIC, new GlobalConfigurationListener.Adapter() {
+      @Override
+      public void applied(SonarLintGlobalSettings newSettings) {
+        invalidate();
+      }
+    });
+    busConnection.subscribe(ProjectConfigurationListener.TOPIC, settings -> invalidate());
+  }
+
+  @Override
+  public void dispose() {
+    entries.clear();
+  }
+
+  private static class Entry {
+    private final Map<String, String> properties;
+    private final long computeMs;
+
+    private Entry(Map<String, String> properties, long computeMs) {
+      this.properties = properties;
+      this.computeMs = computeMs;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+
+/**
+ * Results of an analysis where some of the files had their issues replayed from the cache instead of being analyzed by the engine.
+ */
+class CachedAnalysisResults implements AnalysisResults {
+  private final Set<ClientInputFile> failedAnalysisFiles = new LinkedHashSet<>();
+  private final Map<ClientInputFile, String> languagePerFile = new LinkedHashMap<>();
+  private int indexedFileCount = 0;
+
+  void addCachedFile(ClientInputFile file, String language) {
+    indexedFileCount++;
+    if (!language.isEmpty()) {
+      languagePerFile.put(file, language);
+    }
+  }
+
+  void addAnalyzed(AnalysisResults results) {
+    indexedFileCount += results.indexedFileCount();
+    failedAnalysisFiles.addAll(results.failedAnalysisFiles());
+    languagePerFile.putAll(results.languagePerFile());
+  }
+
+  @Override
+  public int indexedFileCount() {
+    return indexedFileCount;
+  }
+
+  @Override
+  public Collection<ClientInputFile> failedAnalysisFiles() {
+    return failedAnalysisFiles;
+  }
+
+  @Override
+  public Map<ClientInputFile, String> languagePerFile() {
+    return languagePerFile;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.PathUtil;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Detects the changes of the VFS that create or delete the compiler output directories of the modules of a project. The analysis
+ * configuration only references the output directories that exist, and they are not only created or deleted by compilations of the
+ * IDE: also by builds delegated to Gradle or Maven, or run from a terminal, and by cleans.
+ */
+final class CompilerOutputChanges {
+  private CompilerOutputChanges() {
+    // utility class
+  }
+
+  /**
+   * Whether some of the events create, delete, move or rename an output directory or one of its parents. Events on files inside
+   * output directories, like the classes written by a build, are ignored.
+   */
+  static boolean affectOutputDirectories(Project project, List<? extends VFileEvent> events) {
+    Set<String> outputsAndParents = null;
+    for (VFileEvent event : events) {
+      List<String> paths = changedPaths(event);
+      if (paths.isEmpty()) {
+        continue;
+      }
+      if (outputsAndParents == null) {
+        if (project.isDisposed()) {
+          return false;
+        }
+        outputsAndParents = outputsAndParents(project);
+      }
+      for (String path : paths) {
+        if (outputsAndParents.contains(FileUtil.toSystemIndependentName(path))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static List<String> changedPaths(VFileEvent event) {
+    if (event instanceof VFileCreateEvent || event instanceof VFileDeleteEvent) {
+      return Collections.singletonList(event.getPath());
+    }
+    if (event instanceof VFileMoveEvent) {
+      return Arrays.asList(((VFileMoveEvent) event).getOldPath(), ((VFileMoveEvent) event).getNewPath());
+    }
+    if (event instanceof VFileCopyEvent) {
+      VFileCopyEvent copy = (VFileCopyEvent) event;
+      return Collections.singletonList(copy.getNewParent().getPath() + "/" + copy.getNewChildName());
+    }
+    if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+      return Arrays.asList(((VFilePropertyChangeEvent) event).getOldPath(), ((VFilePropertyChangeEvent) event).getNewPath());
+    }
+    return Collections.emptyList();
+  }
+
+  private static Set<String> outputsAndParents(Project project) {
+    Set<String> paths = new HashSet<>();
+    for (Module module : ModuleManager.getInstance(project).getModules()) {
+      CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+      if (extension != null) {
+        addWithParents(paths, extension.getCompilerOutputUrl());
+        addWithParents(paths, extension.getCompilerOutputUrlForTests());
+      }
+    }
+    return paths;
+  }
+
+  private static void addWithParents(Set<String> paths, @Nullable String url) {
+    if (url == null) {
+      return;
+    }
+    String path = FileUtil.toSystemIndependentName(VfsUtilCore.urlToPath(url));
+    while (!path.isEmpty() && paths.add(path)) {
+      path = PathUtil.getParentPath(path);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
 import javax.annotation.Nullable;
+import org.sonarlint.intellij.util.CharSequenceInputStream;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 
 public class DefaultClientInputFile implements ClientInputFile {
@@ -36,7 +37,8 @@ public class DefaultClientInputFile implements ClientInputFile {
   private final boolean test;
   private final Charset charset;
   private final VirtualFile vFile;
-  private final Document doc;
+  // snapshot of the document taken when the analysis starts, shared by all the readers of this file
+  private final CharSequence text;
   private final URI uri;
 
   DefaultClientInputFile(VirtualFile vFile, String relativePath, boolean isTest, Charset charset, @Nullable Document doc) {
@@ -45,7 +47,7 @@ public class DefaultClientInputFile implements ClientInputFile {
     this.test = isTest;
     this.charset = charset;
     this.vFile = vFile;
-    this.doc = doc;
+    this.text = doc != null ? doc.getImmutableCharSequence() : null;
     this.uri = createURI();
   }
 
@@ -71,11 +73,13 @@ public class DefaultClientInputFile implements ClientInputFile {
   }
 
   @Override public InputStream inputStream() throws IOException {
-    if (doc == null) {
+    if (text == null) {
       return vFile.getInputStream();
     }
-
-    return new ByteArrayInputStream(doc.getText().getBytes(charset));
+    if (!charset.canEncode()) {
+      return new ByteArrayInputStream(text.toString().getBytes(charset));
+    }
+    return new CharSequenceInputStream(text, charset);
   }
 
   private URI createURI() {
@@ -88,10 +92,10 @@ public class DefaultClientInputFile implements ClientInputFile {
   }
 
   @Override public String contents() throws IOException {
-    if (doc == null) {
+    if (text == null) {
       return new String(vFile.contentsToByteArray(), charset);
     }
-    return doc.getText();
+    return text.toString();
   }
 
   @Override public VirtualFile getClientObject() {
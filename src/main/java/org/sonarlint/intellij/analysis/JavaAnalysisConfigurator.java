@@ -21,44 +21,20 @@ package org.sonarlint.intellij.analysis;
 
 import com.intellij.compiler.CompilerConfiguration;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.EffectiveLanguageLevelUtil;
 import com.intellij.openapi.module.Module;
-import com.intellij.openapi.projectRoots.JdkUtil;
-import com.intellij.openapi.projectRoots.Sdk;
-import com.intellij.openapi.roots.CompilerModuleExtension;
-import com.intellij.openapi.roots.DependencyScope;
-import com.intellij.openapi.roots.ExportableOrderEntry;
-import com.intellij.openapi.roots.JdkOrderEntry;
-import com.intellij.openapi.roots.LibraryOrderEntry;
-import com.intellij.openapi.roots.ModuleOrderEntry;
-import com.intellij.openapi.roots.ModuleRootManager;
-import com.intellij.openapi.roots.OrderEntry;
-import com.intellij.openapi.roots.OrderRootType;
-import com.intellij.openapi.roots.libraries.Library;
-import com.intellij.openapi.vfs.VfsUtilCore;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.jrt.JrtFileSystem;
 import com.intellij.pom.java.LanguageLevel;
-import java.io.File;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
-import javax.annotation.CheckForNull;
-import javax.annotation.Nullable;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jps.model.java.JpsJavaSdkType;
+import org.sonarlint.intellij.util.SonarLintUtils;
 
 import static org.sonarlint.intellij.util.SonarLintUtils.isEmpty;
 
 public class JavaAnalysisConfigurator implements AnalysisConfigurator {
-  private static final Logger LOGGER = Logger.getInstance(JavaAnalysisConfigurator.class);
-
   private static final String JAVA_LIBRARIES_PROPERTY = "sonar.java.libraries";
   private static final String JAVA_BINARIES_PROPERTY = "sonar.java.binaries";
   private static final String JAVA_SOURCE_PROPERTY = "sonar.java.source";
@@ -70,9 +46,7 @@ public class JavaAnalysisConfigurator implements AnalysisConfigurator {
 
   @Override
   public Map<String, String> configure(@NotNull Module ijModule) {
-    JavaModuleClasspath moduleClasspath = new JavaModuleClasspath();
-    moduleClasspath.dependentModules().add(ijModule);
-    collectModuleClasspath(moduleClasspath, ijModule, true, false);
+    JavaModuleClasspath moduleClasspath = SonarLintUtils.getService(ijModule.getProject(), JavaClasspathGraph.class).getClasspath(ijModule);
     Map<String, String> properties = new HashMap<>();
     setMultiValuePropertyIfNonEmpty(properties, JAVA_LIBRARIES_PROPERTY, moduleClasspath.libraries());
     setMultiValuePropertyIfNonEmpty(properties, JAVA_TEST_LIBRARIES_PROPERTY, moduleClasspath.testLibraries());
@@ -105,161 +79,4 @@ public class JavaAnalysisConfigurator implements AnalysisConfigurator {
   private static String getLanguageLevelOption(LanguageLevel level) {
     return JpsJavaSdkType.complianceOption(level.toJavaVersion());
   }
-
-  private static void collectModuleClasspath(JavaModuleClasspath moduleClasspath, @Nullable final Module module, boolean topLevel, boolean testClasspathOnly) {
-    if (module == null) {
-      return;
-    }
-    processCompilerOutput(moduleClasspath, module, topLevel, testClasspathOnly);
-    final ModuleRootManager mrm = ModuleRootManager.getInstance(module);
-    final OrderEntry[] orderEntries = mrm.getOrderEntries();
-    for (final OrderEntry entry : orderEntries) {
-      if ((!topLevel && !isExported(entry)) || !entry.isValid()) {
-        continue;
-      }
-      if (entry instanceof ModuleOrderEntry) {
-        processModuleOrderEntry(moduleClasspath, testClasspathOnly, (ModuleOrderEntry) entry);
-      } else if (entry instanceof LibraryOrderEntry) {
-        processLibraryOrderEntry(moduleClasspath, (LibraryOrderEntry) entry, testClasspathOnly);
-      } else if (entry instanceof JdkOrderEntry) {
-        processJdkOrderEntry(moduleClasspath, ((JdkOrderEntry) entry).getJdk());
-      }
-    }
-  }
-
-  private static void processModuleOrderEntry(JavaModuleClasspath moduleClasspath, boolean testClasspathOnly, ModuleOrderEntry moduleOrderEntry) {
-    Module dependentModule = moduleOrderEntry.getModule();
-    Set<Module> alreadyVisitedModules = (testClasspathOnly || isOnlyForTestClasspath(moduleOrderEntry.getScope())) ? moduleClasspath.testDependentModules()
-      : moduleClasspath.dependentModules();
-    if (!alreadyVisitedModules.contains(dependentModule)) {
-      // Protect against circular dependencies
-      alreadyVisitedModules.add(dependentModule);
-      collectModuleClasspath(moduleClasspath, dependentModule, false, testClasspathOnly || isOnlyForTestClasspath(moduleOrderEntry.getScope()));
-    }
-  }
-
-  private static void processLibraryOrderEntry(JavaModuleClasspath moduleClasspath, LibraryOrderEntry libraryOrderEntry, boolean testClasspathOnly) {
-    Library lib = libraryOrderEntry.getLibrary();
-    final boolean libOnlyForTestClasspath = testClasspathOnly || isOnlyForTestClasspath(libraryOrderEntry.getScope());
-    getLibraryEntries(lib)
-      .stream()
-      .map(VfsUtilCore::virtualToIoFile)
-      .map(File::getAbsolutePath)
-      .forEach(libPath -> {
-        if (libOnlyForTestClasspath) {
-          moduleClasspath.testLibraries().add(libPath);
-        } else {
-          addProductionClasspathEntry(moduleClasspath, libPath);
-        }
-      });
-  }
-
-  private static boolean isOnlyForTestClasspath(DependencyScope scope) {
-    return !scope.isForProductionRuntime() && !scope.isForProductionCompile();
-  }
-
-  private static void processCompilerOutput(JavaModuleClasspath moduleClasspath, @NotNull Module module, boolean topLevel, boolean testModule) {
-    VirtualFile output = getCompilerOutputPath(module);
-    if (output != null) {
-      final String outputPath = VfsUtilCore.virtualToIoFile(output).getAbsolutePath();
-      if (topLevel) {
-        moduleClasspath.binaries().add(outputPath);
-        // Production .class should be on tests classpath
-        moduleClasspath.testLibraries().add(outputPath);
-      } else {
-        // Output dir of dependents modules should be considered as libraries
-        if (testModule) {
-          moduleClasspath.testLibraries().add(outputPath);
-        } else {
-          addProductionClasspathEntry(moduleClasspath, outputPath);
-        }
-      }
-    }
-    VirtualFile testOutput = getCompilerTestOutputPath(module);
-    if (testOutput != null) {
-      final String testOutputPath = VfsUtilCore.virtualToIoFile(testOutput).getAbsolutePath();
-      if (topLevel) {
-        moduleClasspath.testBinaries().add(testOutputPath);
-      }
-      // Test output dir of dependents modules are not visible
-    }
-  }
-
-  private static void addProductionClasspathEntry(JavaModuleClasspath moduleClasspath, final String libPath) {
-    moduleClasspath.libraries().add(libPath);
-    // Production classpath entries should be also added to the tests classpath
-    moduleClasspath.testLibraries().add(libPath);
-  }
-
-  private static boolean isExported(OrderEntry entry) {
-    return (entry instanceof ExportableOrderEntry) && ((ExportableOrderEntry) entry).isExported();
-  }
-
-  private static void processJdkOrderEntry(JavaModuleClasspath moduleClasspath, Sdk jdk) {
-    String jdkHomePath = jdk.getHomePath();
-    if (jdkHomePath != null && JdkUtil.isModularRuntime(jdkHomePath)) {
-      final File jrtFs = new File(jdkHomePath, "lib/jrt-fs.jar");
-      if (jrtFs.isFile()) {
-        final String jrtFsPath = jrtFs.getAbsolutePath();
-        moduleClasspath.libraries().add(jrtFsPath);
-        moduleClasspath.testLibraries().add(jrtFsPath);
-      } else {
-        LOGGER.warn("Unable to locate jrt-fs.jar");
-      }
-    }
-    Stream.of(jdk.getRootProvider().getFiles(OrderRootType.CLASSES))
-      .filter(f -> !JrtFileSystem.isModuleRoot(f))
-      .map(VfsUtilCore::virtualToIoFile)
-      .map(File::getAbsolutePath)
-      .forEach(jdkLib -> {
-        moduleClasspath.libraries().add(jdkLib);
-        moduleClasspath.testLibraries().add(jdkLib);
-      });
-  }
-
-  private static Collection<VirtualFile> getLibraryEntries(@Nullable Library lib) {
-    if (lib == null) {
-      return Collections.emptyList();
-    }
-    return Arrays.asList(lib.getFiles(OrderRootType.CLASSES));
-  }
-
-  @CheckForNull
-  private static VirtualFile getCompilerOutputPath(final Module module) {
-    final CompilerModuleExtension compilerModuleExtension = CompilerModuleExtension.getInstance(module);
-    if (compilerModuleExtension != null) {
-      VirtualFile file = compilerModuleExtension.getCompilerOutputPath();
-      // see SLI-107
-      if (exists(file)) {
-        return file;
-      }
-    }
-    return null;
-  }
-
-  @CheckForNull
-  private static VirtualFile getCompilerTestOutputPath(final Module module) {
-    final CompilerModuleExtension compilerModuleExtension = CompilerModuleExtension.getInstance(module);
-    if (compilerModuleExtension != null) {
-      VirtualFile file = compilerModuleExtension.getCompilerOutputPathForTests();
-      if (exists(file)) {
-        return file;
-      }
-    }
-    return null;
-  }
-
-  /**
-   * Checks if the file exists in the physical FS. It doesn't rely on the automatic refresh of the virtual FS, because
-   * sometimes it's status is out of date, and the file doesn't actually exist in the FS.
-   * It will trigger a refresh of the virtual file, which means to refresh it's status and attributes, and calling all listeners.
-   */
-  private static boolean exists(@Nullable VirtualFile file) {
-    if (file == null) {
-      return false;
-    }
-
-    return file.exists();
-  }
-
 }
@@ -0,0 +1,447 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.compiler.CompilationStatusListener;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompilerTopics;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.JdkUtil;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.roots.DependencyScope;
+import com.intellij.openapi.roots.ExportableOrderEntry;
+import com.intellij.openapi.roots.JdkOrderEntry;
+import com.intellij.openapi.roots.LibraryOrderEntry;
+import com.intellij.openapi.roots.ModuleOrderEntry;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEntry;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.jrt.JrtFileSystem;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.messages.MessageBusConnection;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Dependency graph of the modules of a project, used to compute the Java classpath of modules.
+ * Each module has a node holding what it contributes to the classpath of the modules depending on it: its production output, its
+ * exported libraries and the nodes of its exported modules. Nodes are computed once and shared by all the modules depending on them,
+ * as are the paths of libraries and SDKs, so that the dependencies common to many modules are not walked again for each of them.
+ * When the roots of the project change, a compilation finishes or an output directory is created or deleted, only the nodes of the
+ * modules whose dependencies or output changed, and of the modules depending on them, are computed again.
+ */
+@ThreadSafe
+public class JavaClasspathGraph implements Disposable {
+  private static final Logger LOGGER = Logger.getInstance(JavaClasspathGraph.class);
+
+  private final Project myProject;
+  private final AtomicBoolean dirty = new AtomicBoolean();
+  private final AtomicLong computedNodes = new AtomicLong();
+  @GuardedBy("this")
+  private final Map<Module, ModuleNode> nodes = new HashMap<>();
+  @GuardedBy("this")
+  private final Map<Module, List<Object>> fingerprints = new HashMap<>();
+  // reverse edges: modules whose node references the node of the key
+  @GuardedBy("this")
+  private final Map<Module, Set<Module>> dependents = new HashMap<>();
+  @GuardedBy("this")
+  private final Map<Library, List<String>> libraryPaths = new HashMap<>();
+  @GuardedBy("this")
+  private final Map<Sdk, List<String>> sdkPaths = new HashMap<>();
+
+  public JavaClasspathGraph(Project project) {
+    myProject = project;
+    subscribeToChanges();
+  }
+
+  /**
+   * Computes the classpath of a module, as seen when analyzing its files.
+   */
+  public JavaModuleClasspath getClasspath(Module module) {
+    // the read lock is always taken before the monitor, and listeners called in write actions don't take the monitor
+    return ApplicationManager.getApplication().<JavaModuleClasspath>runReadAction(() -> {
+      synchronized (this) {
+        refreshIfNeeded();
+        return collectClasspath(module);
+      }
+    });
+  }
+
+  /**
+   * Number of module nodes computed since the project was opened.
+   */
+  public long computedNodes() {
+    return computedNodes.get();
+  }
+
+  @GuardedBy("this")
+  private JavaModuleClasspath collectClasspath(Module module) {
+    JavaModuleClasspath moduleClasspath = new JavaModuleClasspath();
+    Set<Visit> visited = new HashSet<>();
+    moduleClasspath.dependentModules().add(module);
+    visited.add(new Visit(node(module), false));
+
+    String output = getCompilerOutputPath(module);
+    if (output != null) {
+      moduleClasspath.binaries().add(output);
+      // Production .class should be on tests classpath
+      moduleClasspath.testLibraries().add(output);
+    }
+    String testOutput = getCompilerTestOutputPath(module);
+    if (testOutput != null) {
+      moduleClasspath.testBinaries().add(testOutput);
+    }
+
+    for (OrderEntry entry : ModuleRootManager.getInstance(module).getOrderEntries()) {
+      if (!entry.isValid()) {
+        continue;
+      }
+      if (entry instanceof ModuleOrderEntry) {
+        Module dependentModule = ((ModuleOrderEntry) entry).getModule();
+        if (dependentModule != null) {
+          collectNode(moduleClasspath, node(dependentModule), isOnlyForTestClasspath(((ModuleOrderEntry) entry).getScope()), visited);
+        }
+      } else if (entry instanceof LibraryOrderEntry) {
+        addPaths(moduleClasspath, getLibraryPaths(((LibraryOrderEntry) entry).getLibrary()),
+          isOnlyForTestClasspath(((LibraryOrderEntry) entry).getScope()));
+      } else if (entry instanceof JdkOrderEntry) {
+        Sdk jdk = ((JdkOrderEntry) entry).getJdk();
+        if (jdk != null) {
+          addPaths(moduleClasspath, getSdkPaths(jdk), false);
+        }
+      }
+    }
+    return moduleClasspath;
+  }
+
+  /**
+   * Adds the classpath exported by a node. Like when walking the dependencies, each module is visited at most once for the production
+   * classpath and once for the test classpath, which also protects against circular dependencies.
+   */
+  private static void collectNode(JavaModuleClasspath moduleClasspath, ModuleNode node, boolean testClasspathOnly, Set<Visit> visited) {
+    if (!visited.add(new Visit(node, testClasspathOnly))) {
+      return;
+    }
+    (testClasspathOnly ? moduleClasspath.testDependentModules() : moduleClasspath.dependentModules()).add(node.module);
+    if (node.output != null) {
+      // Output dir of dependents modules should be considered as libraries
+      addPaths(moduleClasspath, Collections.singletonList(node.output), testClasspathOnly);
+    }
+    for (Part part : node.parts) {
+      boolean partTestClasspathOnly = testClasspathOnly || part.testClasspathOnly;
+      if (part.node != null) {
+        collectNode(moduleClasspath, part.node, partTestClasspathOnly, visited);
+      } else {
+        addPaths(moduleClasspath, part.paths, partTestClasspathOnly);
+      }
+    }
+  }
+
+  private static void addPaths(JavaModuleClasspath moduleClasspath, List<String> paths, boolean testClasspathOnly) {
+    if (!testClasspathOnly) {
+      // Production classpath entries should be also added to the tests classpath
+      moduleClasspath.libraries().addAll(paths);
+    }
+    moduleClasspath.testLibraries().addAll(paths);
+  }
+
+  @GuardedBy("this")
+  private ModuleNode node(Module module) {
+    ModuleNode node = nodes.get(module);
+    if (node != null) {
+      return node;
+    }
+    // registered before its dependencies are computed, so that circular dependencies reference it
+    node = new ModuleNode(module, getCompilerOutputPath(module));
+    nodes.put(module, node);
+    fingerprints.put(module, fingerprint(module));
+    computedNodes.incrementAndGet();
+
+    List<Part> parts = new ArrayList<>();
+    for (OrderEntry entry : ModuleRootManager.getInstance(module).getOrderEntries()) {
+      if (!isExported(entry) || !entry.isValid()) {
+        continue;
+      }
+      if (entry instanceof ModuleOrderEntry) {
+        Module dependentModule = ((ModuleOrderEntry) entry).getModule();
+        if (dependentModule != null) {
+          dependents.computeIfAbsent(dependentModule, m -> new HashSet<>()).add(module);
+          parts.add(new Part(node(dependentModule), null, isOnlyForTestClasspath(((ModuleOrderEntry) entry).getScope())));
+        }
+      } else if (entry instanceof LibraryOrderEntry) {
+        List<String> paths = getLibraryPaths(((LibraryOrderEntry) entry).getLibrary());
+        parts.add(new Part(null, paths, isOnlyForTestClasspath(((LibraryOrderEntry) entry).getScope())));
+      }
+    }
+    node.parts = Collections.unmodifiableList(parts);
+    return node;
+  }
+
+  @GuardedBy("this")
+  private void refreshIfNeeded() {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    libraryPaths.clear();
+    sdkPaths.clear();
+    Deque<Module> toInvalidate = new ArrayDeque<>();
+    for (Map.Entry<Module, List<Object>> e : fingerprints.entrySet()) {
+      Module module = e.getKey();
+      if (module.isDisposed() || !e.getValue().equals(fingerprint(module))) {
+        toInvalidate.add(module);
+      }
+    }
+    Set<Module> invalidated = new HashSet<>();
+    while (!toInvalidate.isEmpty()) {
+      Module module = toInvalidate.poll();
+      if (invalidated.add(module)) {
+        nodes.remove(module);
+        fingerprints.remove(module);
+        Set<Module> moduleDependents = dependents.remove(module);
+        if (moduleDependents != null) {
+          toInvalidate.addAll(moduleDependents);
+        }
+      }
+    }
+    if (!invalidated.isEmpty()) {
+      LOGGER.debug("Classpath of " + invalidated.size() + " module(s) invalidated");
+    }
+  }
+
+  /**
+   * Everything the node of a module depends on, other than the nodes of other modules.
+   */
+  private static List<Object> fingerprint(Module module) {
+    List<Object> fingerprint = new ArrayList<>();
+    fingerprint.add(getCompilerOutputPath(module));
+    for (OrderEntry entry : ModuleRootManager.getInstance(module).getOrderEntries()) {
+      fingerprint.add(entry.getClass());
+      fingerprint.add(entry.getPresentableName());
+      fingerprint.add(entry.isValid());
+      if (entry instanceof ExportableOrderEntry) {
+        fingerprint.add(((ExportableOrderEntry) entry).isExported());
+        fingerprint.add(((ExportableOrderEntry) entry).getScope());
+      }
+      if (entry instanceof ModuleOrderEntry) {
+        fingerprint.add(((ModuleOrderEntry) entry).getModule());
+      } else if (entry instanceof LibraryOrderEntry) {
+        fingerprint.add(Arrays.asList(((LibraryOrderEntry) entry).getRootUrls(OrderRootType.CLASSES)));
+      }
+    }
+    return fingerprint;
+  }
+
+  @GuardedBy("this")
+  private List<String> getLibraryPaths(@Nullable Library lib) {
+    if (lib == null) {
+      return Collections.emptyList();
+    }
+    return libraryPaths.computeIfAbsent(lib, l -> Collections.unmodifiableList(Stream.of(l.getFiles(OrderRootType.CLASSES))
+      .map(VfsUtilCore::virtualToIoFile)
+      .map(File::getAbsolutePath)
+      .collect(Collectors.toList())));
+  }
+
+  @GuardedBy("this")
+  private List<String> getSdkPaths(Sdk jdk) {
+    return sdkPaths.computeIfAbsent(jdk, JavaClasspathGraph::computeSdkPaths);
+  }
+
+  private static List<String> computeSdkPaths(Sdk jdk) {
+    List<String> paths = new ArrayList<>();
+    String jdkHomePath = jdk.getHomePath();
+    if (jdkHomePath != null && JdkUtil.isModularRuntime(jdkHomePath)) {
+      final File jrtFs = new File(jdkHomePath, "lib/jrt-fs.jar");
+      if (jrtFs.isFile()) {
+        paths.add(jrtFs.getAbsolutePath());
+      } else {
+        LOGGER.warn("Unable to locate jrt-fs.jar");
+      }
+    }
+    Stream.of(jdk.getRootProvider().getFiles(OrderRootType.CLASSES))
+      .filter(f -> !JrtFileSystem.isModuleRoot(f))
+      .map(VfsUtilCore::virtualToIoFile)
+      .map(File::getAbsolutePath)
+      .forEach(paths::add);
+    return Collections.unmodifiableList(paths);
+  }
+
+  private static boolean isOnlyForTestClasspath(DependencyScope scope) {
+    return !scope.isForProductionRuntime() && !scope.isForProductionCompile();
+  }
+
+  private static boolean isExported(OrderEntry entry) {
+    return (entry instanceof ExportableOrderEntry) && ((ExportableOrderEntry) entry).isExported();
+  }
+
+  @CheckForNull
+  private static String getCompilerOutputPath(final Module module) {
+    final CompilerModuleExtension compilerModuleExtension = CompilerModuleExtension.getInstance(module);
+    if (compilerModuleExtension != null) {
+      // see SLI-107
+      return toPathIfExists(compilerModuleExtension.getCompilerOutputPath());
+    }
+    return null;
+  }
+
+  @CheckForNull
+  private static String getCompilerTestOutputPath(final Module module) {
+    final CompilerModuleExtension compilerModuleExtension = CompilerModuleExtension.getInstance(module);
+    if (compilerModuleExtension != null) {
+      return toPathIfExists(compilerModuleExtension.getCompilerOutputPathForTests());
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the file exists in the physical FS. It doesn't rely on the automatic refresh of the virtual FS, because
+   * sometimes it's status is out of date, and the file doesn't actually exist in the FS.
+   * It will trigger a refresh of the virtual file, which means to refresh it's status and attributes, and calling all listeners.
+   */
+  @CheckForNull
+  private static String toPathIfExists(@Nullable VirtualFile file) {
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    return VfsUtilCore.virtualToIoFile(file).getAbsolutePath();
+  }
+
+  private void subscribeToChanges() {
+    MessageBusConnection busConnection = myProject.getMessageBus().connect(this);
+    busConnection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+      @Override
+      public void rootsChanged(@NotNull ModuleRootEvent event) {
+        dirty.set(true);
+      }
+    });
+    busConnection.subscribe(CompilerTopics.COMPILATION_STATUS, new CompilationStatusListener() {
+      @Override
+      public void compilationFinished(boolean aborted, int errors, int warnings, @NotNull CompileContext compileContext) {
+        // output directories may have been created
+        dirty.set(true);
+      }
+    });
+    busConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        // also created or deleted by builds not done by the IDE, and by cleans
+        if (CompilerOutputChanges.affectOutputDirectories(myProject, events)) {
+          dirty.set(true);
+        }
+      }
+    });
+  }
+
+  @Override
+  public synchronized void dispose() {
+    nodes.clear();
+    fingerprints.clear();
+    dependents.clear();
+    libraryPaths.clear();
+    sdkPaths.clear();
+  }
+
+  private static class ModuleNode {
+    private final Module module;
+    @Nullable
+    private final String output;
+    private List<Part> parts = Collections.emptyList();
+
+    private ModuleNode(Module module, @Nullable String output) {
+      this.module = module;
+      this.output = output;
+    }
+  }
+
+  /**
+   * Either the node of an exported module, or the paths of an exported library.
+   */
+  private static class Part {
+    @Nullable
+    private final ModuleNode node;
+    private final List<String> paths;
+    private final boolean testClasspathOnly;
+
+    private Part(@Nullable ModuleNode node, @Nullable List<String> paths, boolean testClasspathOnly) {
+      this.node = node;
+      this.paths = paths != null ? paths : Collections.emptyList();
+      this.testClasspathOnly = testClasspathOnly;
+    }
+  }
+
+  private static class Visit {
+    private final ModuleNode node;
+    private final boolean testClasspathOnly;
+
+    private Visit(ModuleNode node, boolean testClasspathOnly) {
+      this.node = node;
+      this.testClasspathOnly = testClasspathOnly;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Visit)) {
+        return false;
+      }
+      Visit other = (Visit) o;
+      return node == other.node && testClasspathOnly == other.testClasspathOnly;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(node), testClasspathOnly);
+    }
+  }
+}
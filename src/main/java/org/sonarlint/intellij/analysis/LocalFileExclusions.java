@@ -19,24 +19,40 @@
  */
 package org.sonarlint.intellij.analysis;
 
+import com.intellij.ProjectTopics;
 import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.roots.SourceFolder;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
 import com.intellij.util.messages.MessageBusConnection;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
 import org.sonarlint.intellij.config.project.ExclusionItem;
 import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
@@ -46,18 +62,31 @@ import org.sonarlint.intellij.util.SonarLintAppUtils;
 import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarsource.sonarlint.core.client.api.common.FileExclusions;
 
-public class LocalFileExclusions {
+/**
+ * Exclusions configured locally, in the project structure and in the SonarLint settings. The exclusions of the settings are parsed
+ * and their glob patterns compiled only when the settings change, and the decision taken for each file is cached until the settings or
+ * the roots of the project change. When files are moved, renamed or deleted in the content of the project, only their decisions, and
+ * the ones of the files they contain, are dropped.
+ */
+@ThreadSafe
+public class LocalFileExclusions implements Disposable {
+  static final int MAX_DECISIONS = 100_000;
+
   private final ProjectRootManager projectRootManager;
   private final BooleanSupplier powerSaveModeCheck;
+  // bounded to MAX_DECISIONS, by evicting arbitrary entries
+  private final Map<VirtualFile, Decision> decisions = new ConcurrentHashMap<>();
+  // incremented on each invalidation, so that a decision taken concurrently with an invalidation is not cached
+  private final AtomicLong generation = new AtomicLong();
 
-  private FileExclusions projectExclusions;
-  private FileExclusions globalExclusions;
+  private volatile FileExclusions projectExclusions;
+  private volatile FileExclusions globalExclusions;
 
   public LocalFileExclusions(Project project) {
     this.projectRootManager = ProjectRootManager.getInstance(project);
     this.powerSaveModeCheck = PowerSaveMode::isEnabled;
 
-    subscribeToSettingsChanges(project);
+    subscribeToChanges(project);
     loadGlobalExclusions(SonarLintUtils.getService(SonarLintGlobalSettings.class));
     loadProjectExclusions(SonarLintUtils.getService(project, SonarLintProjectSettings.class));
   }
@@ -86,20 +115,119 @@ public class LocalFileExclusions {
     this.globalExclusions = new FileExclusions(new LinkedHashSet<>(settings.getFileExclusions()));
   }
 
-  private void subscribeToSettingsChanges(Project project) {
-    MessageBusConnection busConnection = project.getMessageBus().connect(project);
+  private void subscribeToChanges(Project project) {
+    MessageBusConnection busConnection = project.getMessageBus().connect(this);
     busConnection.subscribe(GlobalConfigurationListener.TOPIC, new GlobalConfigurationListener.Adapter() {
       @Override public void applied(SonarLintGlobalSettings newSettings) {
         loadGlobalExclusions(newSettings);
+        invalidate();
+      }
+    });
+    busConnection.subscribe(ProjectConfigurationListener.TOPIC, settings -> {
+      loadProjectExclusions(settings);
+      invalidate();
+    });
+    busConnection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+      @Override
+      public void rootsChanged(@NotNull ModuleRootEvent event) {
+        invalidate();
       }
     });
-    busConnection.subscribe(ProjectConfigurationListener.TOPIC, this::loadProjectExclusions);
+    busConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        Set<VirtualFile> changed = events.stream()
+          .map(LocalFileExclusions.this::changedInContent)
+          .filter(Objects::nonNull)
+          .collect(Collectors.toSet());
+        if (!changed.isEmpty()) {
+          invalidate(changed);
+        }
+      }
+    });
+  }
+
+  /**
+   * The file or directory of the event, if it is moved, renamed or deleted in the content of this project. Relative paths of the
+   * files it contains change, and the decisions of deleted files are no longer needed.
+   */
+  @CheckForNull
+  private VirtualFile changedInContent(VFileEvent event) {
+    VirtualFile file = event.getFile();
+    if (file == null) {
+      return null;
+    }
+    ProjectFileIndex fileIndex = projectRootManager.getFileIndex();
+    if (event instanceof VFileMoveEvent) {
+      return fileIndex.isInContent(file) || fileIndex.isInContent(((VFileMoveEvent) event).getOldParent()) ? file : null;
+    }
+    if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+      return fileIndex.isInContent(file) ? file : null;
+    }
+    if (event instanceof VFileDeleteEvent) {
+      // the file is not valid anymore, but its parent is
+      VirtualFile parent = file.getParent();
+      return parent != null && parent.isValid() && fileIndex.isInContent(parent) ? file : null;
+    }
+    return null;
+  }
+
+  public synchronized void invalidate() {
+    generation.incrementAndGet();
+    decisions.clear();
+  }
+
+  /**
+   * Forgets the decisions of the given files and of the files they contain.
+   */
+  synchronized void invalidate(Set<VirtualFile> filesOrDirs) {
+    generation.incrementAndGet();
+    decisions.keySet().removeIf(f -> isInOneOf(f, filesOrDirs));
+  }
+
+  private static boolean isInOneOf(VirtualFile file, Set<VirtualFile> filesOrDirs) {
+    for (VirtualFile f = file; f != null; f = f.getParent()) {
+      if (filesOrDirs.contains(f)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
    * Checks if a file is excluded from analysis based on locally configured exclusions.
    */
   public Result checkExclusions(VirtualFile file, Module module) {
+    Decision decision = decisions.get(file);
+    if (decision != null && decision.module == module) {
+      return decision.result;
+    }
+    long gen = generation.get();
+    Result result = computeExclusions(file, module);
+    synchronized (this) {
+      if (gen == generation.get()) {
+        if (decisions.size() >= MAX_DECISIONS && !decisions.containsKey(file)) {
+          evictOne();
+        }
+        decisions.put(file, new Decision(module, result));
+      }
+    }
+    return result;
+  }
+
+  private void evictOne() {
+    Iterator<VirtualFile> it = decisions.keySet().iterator();
+    if (it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  int cachedDecisions() {
+    return decisions.size();
+  }
+
+  private Result computeExclusions(VirtualFile file, Module module) {
     Result result = checkFileInSourceFolders(file, module);
     if (result.isExcluded) {
       return result;
@@ -163,7 +291,24 @@ public class LocalFileExclusions {
     return Result.notExcluded();
   }
 
+  @Override
+  public void dispose() {
+    decisions.clear();
+  }
+
+  private static class Decision {
+    private final Module module;
+    private final Result result;
+
+    private Decision(Module module, Result result) {
+      this.module = module;
+      this.result = result;
+    }
+  }
+
   public static class Result {
+    private static final Result NOT_EXCLUDED = new Result(false, null);
+
     private final boolean isExcluded;
     @Nullable
     private final String excludeReason;
@@ -187,7 +332,7 @@ public class LocalFileExclusions {
     }
 
     public static Result notExcluded() {
-      return new Result(false, null);
+      return NOT_EXCLUDED;
     }
   }
 }
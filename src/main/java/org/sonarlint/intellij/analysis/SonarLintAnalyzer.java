@@ -26,16 +26,21 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.encoding.EncodingProjectManager;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.core.ProjectBindingManager;
 import org.sonarlint.intellij.core.SonarLintFacade;
 import org.sonarlint.intellij.exception.InvalidBindingException;
+import org.sonarlint.intellij.issue.persistence.AnalysisResultCache;
 import org.sonarlint.intellij.telemetry.SonarLintTelemetry;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
@@ -43,6 +48,7 @@ import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 
 public class SonarLintAnalyzer {
@@ -54,18 +60,20 @@ public class SonarLintAnalyzer {
   }
 
   public AnalysisResults analyzeModule(Module module, Collection<VirtualFile> filesToAnalyze, IssueListener listener, ProgressMonitor progressMonitor) {
+    return analyzeModule(module, filesToAnalyze, listener, progressMonitor, false);
+  }
+
+  /**
+   * @param useCache whether files whose content and analysis configuration didn't change since their last analysis can have their issues
+   *                 replayed from the {@link AnalysisResultCache} instead of being analyzed again.
+   */
+  public AnalysisResults analyzeModule(Module module, Collection<VirtualFile> filesToAnalyze, IssueListener listener, ProgressMonitor progressMonitor,
+    boolean useCache) {
     // Configure plugin properties. Nothing might be done if there is no configurator available for the extensions loaded in runtime.
     long start = System.currentTimeMillis();
-    Map<String, String> pluginProps = new HashMap<>();
-    List<AnalysisConfigurator> analysisConfigurators = AnalysisConfigurator.EP_NAME.getExtensionList();
+    AnalysisConfigurationCache configurationCache = SonarLintUtils.getService(myProject, AnalysisConfigurationCache.class);
+    Map<String, String> pluginProps = configurationCache.getConfiguration(module);
     SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
-    if (analysisConfigurators.isEmpty()) {
-      console.info("No analysis configurators found");
-    }
-    for (AnalysisConfigurator config : analysisConfigurators) {
-      console.debug("Configuring analysis with " + config.getClass().getName());
-      pluginProps.putAll(config.configure(module));
-    }
 
     // configure files
     VirtualFileTestPredicate testPredicate = SonarLintUtils.getService(module, VirtualFileTestPredicate.class);
@@ -84,8 +92,13 @@ public class SonarLintAnalyzer {
         what = filesToAnalyze.size() + " files";
       }
 
-      console.info("Analysing " + what + "...");
-      AnalysisResults result = facade.startAnalysis(inputFiles, listener, pluginProps, progressMonitor);
+      AnalysisResults result;
+      if (useCache) {
+        result = analyzeWithCache(facade, inputFiles, listener, pluginProps, progressMonitor, what);
+      } else {
+        console.info("Analysing " + what + "...");
+        result = facade.startAnalysis(inputFiles, listener, pluginProps, progressMonitor);
+      }
       console.debug("Done in " + (System.currentTimeMillis() - start) + "ms\n");
       SonarLintTelemetry telemetry = SonarLintUtils.getService(SonarLintTelemetry.class);
       if (result.languagePerFile().size() == 1 && result.failedAnalysisFiles().isEmpty()) {
@@ -100,6 +113,60 @@ public class SonarLintAnalyzer {
     }
   }
 
+  private AnalysisResults analyzeWithCache(SonarLintFacade facade, List<ClientInputFile> inputFiles, IssueListener listener,
+    Map<String, String> pluginProps, ProgressMonitor progressMonitor, String what) {
+    SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
+    AnalysisResultCache cache = SonarLintUtils.getService(myProject, AnalysisResultCache.class);
+    Map<String, String> props = new HashMap<>(pluginProps);
+    props.putAll(SonarLintUtils.getService(myProject, SonarLintProjectSettings.class).getAdditionalProperties());
+    String fingerprint = AnalysisResultCache.configurationFingerprint(facade.getRulesFingerprint(), props, facade.getLoadedAnalyzers());
+
+    CachedAnalysisResults results = new CachedAnalysisResults();
+    Map<ClientInputFile, String> hashes = new HashMap<>();
+    List<ClientInputFile> missed = new ArrayList<>();
+    for (ClientInputFile f : inputFiles) {
+      String hash = AnalysisResultCache.contentHash(f);
+      Optional<String> language = hash != null ? cache.replay(f, hash, fingerprint, listener) : Optional.empty();
+      if (language.isPresent()) {
+        results.addCachedFile(f, language.get());
+      } else {
+        missed.add(f);
+        if (hash != null) {
+          hashes.put(f, hash);
+        }
+      }
+    }
+    console.debug(String.format("Analysis cache: %d hit(s), %d miss(es) (%d/%d since startup)", inputFiles.size() - missed.size(), missed.size(),
+      cache.hits(), cache.hits() + cache.misses()));
+    if (missed.isEmpty()) {
+      console.info("Reusing previous results for " + what);
+      return results;
+    }
+
+    console.info("Analysing " + what + "...");
+    Map<ClientInputFile, List<Issue>> issuesPerFile = new HashMap<>();
+    IssueListener recordingListener = issue -> {
+      ClientInputFile inputFile = issue.getInputFile();
+      if (inputFile != null) {
+        issuesPerFile.computeIfAbsent(inputFile, k -> new ArrayList<>()).add(issue);
+      }
+      listener.handle(issue);
+    };
+    AnalysisResults engineResults = facade.startAnalysis(missed, recordingListener, pluginProps, progressMonitor);
+    results.addAnalyzed(engineResults);
+
+    if (!progressMonitor.isCanceled()) {
+      for (Map.Entry<ClientInputFile, String> e : hashes.entrySet()) {
+        ClientInputFile f = e.getKey();
+        // don't cache results of files that failed or whose content changed during the analysis
+        if (!engineResults.failedAnalysisFiles().contains(f) && e.getValue().equals(AnalysisResultCache.contentHash(f))) {
+          cache.save(f, e.getValue(), fingerprint, engineResults.languagePerFile().get(f), issuesPerFile.getOrDefault(f, Collections.emptyList()));
+        }
+      }
+    }
+    return results;
+  }
+
   private List<ClientInputFile> getInputFiles(Module module, VirtualFileTestPredicate testPredicate, Collection<VirtualFile> filesToAnalyze) {
     return ApplicationManager.getApplication().<List<ClientInputFile>>runReadAction(() -> filesToAnalyze.stream()
       .map(f -> createClientInputFile(module, f, testPredicate))
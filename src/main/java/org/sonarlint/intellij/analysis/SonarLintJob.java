@@ -40,6 +40,7 @@ public class SonarLintJob {
   private final Project project;
   private final Collection<VirtualFile> filesToClearIssues;
   @Nullable private final AnalysisCallback callback;
+  private volatile boolean canceled = false;
 
   SonarLintJob(Module module, Collection<VirtualFile> files, Collection<VirtualFile> filesToClearIssues, TriggerType trigger) {
     this(module.getProject(), Collections.singletonMap(module, files), filesToClearIssues, trigger, false, null);
@@ -91,4 +92,15 @@ public class SonarLintJob {
   public Collection<VirtualFile> filesToClearIssues() {
     return filesToClearIssues;
   }
+
+  /**
+   * Requests this job to stop as soon as possible, for example because the content of one of its files changed since it started.
+   */
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled;
+  }
 }
@@ -30,10 +30,21 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.messages.MessageBus;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarlint.intellij.ui.SonarLintConsole;
@@ -41,17 +52,24 @@ import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class SonarLintJobManager implements Disposable {
   private final ExecutorService executor = Executors.newSingleThreadExecutor(new AnalysisThreadFactory());
+  private final ThreadPoolExecutor moduleExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+    new LinkedBlockingQueue<>(), new AnalysisThreadFactory());
+  private final SonarLintJobQueue queue = new SonarLintJobQueue();
+  // files of the automatic background jobs being run, looked up on each modification of a document
+  private final Map<SonarLintJob, Set<VirtualFile>> runningBackgroundJobs = new ConcurrentHashMap<>();
   private final MessageBus messageBus;
   private final Project myProject;
 
   public SonarLintJobManager(Project project) {
     this.messageBus = project.getMessageBus();
     myProject = project;
+    moduleExecutor.allowCoreThreadTimeOut(true);
   }
 
   /**
    * Runs SonarLint analysis asynchronously, as a background task, in the application's thread pool.
-   * It might queue the submission of the job in the thread pool.
+   * It might queue the submission of the job in the thread pool. If another automatic job is already waiting, the new job is merged into it
+   * instead, so that files requested by several triggers are analyzed only once.
    * It won't block the current thread (in most cases, the event dispatch thread), but the contents of the file being analyzed
    * might be changed with the editor at the same time, resulting in a bad or failed placement of the issues in the editor.
    *
@@ -61,9 +79,13 @@ public class SonarLintJobManager implements Disposable {
     SonarLintJob newJob = new SonarLintJob(myProject, files, filesToClearIssues, trigger, false, callback);
     SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
     console.debug(String.format("[%s] %d file(s) submitted", trigger.getName(), newJob.allFiles().count()));
-    SonarLintTaskFactory taskFactory = SonarLintUtils.getService(myProject, SonarLintTaskFactory.class);
-    SonarLintTask task = taskFactory.createTask(newJob, true);
-    runInEDT(task);
+    SonarLintJobQueue.Entry entry = queue.enqueue(newJob);
+    if (entry == null) {
+      console.debug(String.format("[%s] Merged with pending analysis (queue depth: %d, merged jobs: %d/%d, deduplicated files: %d)", trigger.getName(),
+        queue.depth(), queue.mergedJobs(), queue.submittedJobs(), queue.deduplicatedFiles()));
+      return;
+    }
+    runInEDT(() -> startQueued(entry));
   }
 
   /**
@@ -90,12 +112,16 @@ public class SonarLintJobManager implements Disposable {
   }
 
   private void runInEDT(SonarLintTask task) {
+    runInEDT(() -> runTask(task));
+  }
+
+  private void runInEDT(Runnable runnable) {
     final Application app = ApplicationManager.getApplication();
     // task needs to be submitted in the EDT because progress manager will get the related UI
     if (!app.isDispatchThread()) {
-      app.invokeLater(() -> runTask(task), myProject.getDisposed());
+      app.invokeLater(runnable, myProject.getDisposed());
     } else {
-      runTask(task);
+      runnable.run();
     }
   }
 
@@ -108,13 +134,127 @@ public class SonarLintJobManager implements Disposable {
     if (myProject.isDisposed()) {
       return;
     }
-    notifyStart(task.getJob());
     ProgressManager progressManager = ProgressManager.getInstance();
     if (task.isConditionalModal() || task.isModal()) {
+      notifyStart(task.getJob());
       progressManager.run(task);
     } else {
       ProgressIndicator progressIndicator = new BackgroundableProcessIndicator(task);
-      executor.submit(() -> progressManager.runProcess(() -> task.run(progressIndicator), progressIndicator));
+      executor.submit(() -> {
+        notifyStart(task.getJob());
+        progressManager.runProcess(() -> task.run(progressIndicator), progressIndicator);
+      });
+    }
+  }
+
+  /**
+   * Prepares the progress indicator of a queued entry in the EDT, and submits the entry to the analysis thread. Jobs can still be merged
+   * into the entry until the analysis thread takes it, which doesn't affect the indicator: its title and cancellation don't depend
+   * on the files of the job.
+   */
+  private void startQueued(SonarLintJobQueue.Entry entry) {
+    SonarLintJob job = queue.peek(entry);
+    if (job == null || myProject.isDisposed()) {
+      return;
+    }
+    SonarLintTaskFactory taskFactory = SonarLintUtils.getService(myProject, SonarLintTaskFactory.class);
+    ProgressIndicator progressIndicator = new BackgroundableProcessIndicator(taskFactory.createTask(job, true));
+    executor.submit(() -> runQueued(entry, progressIndicator));
+  }
+
+  /**
+   * Runs the job of a queued entry, including the jobs that were merged into it since it was queued. The task is created from that job,
+   * rather than from the job the indicator was created for.
+   */
+  private void runQueued(SonarLintJobQueue.Entry entry, ProgressIndicator progressIndicator) {
+    SonarLintJob job = queue.take(entry);
+    if (job == null || myProject.isDisposed()) {
+      return;
+    }
+    SonarLintTaskFactory taskFactory = SonarLintUtils.getService(myProject, SonarLintTaskFactory.class);
+    SonarLintTask task = taskFactory.createTask(job, true);
+    notifyStart(job);
+    if (job.callback() == null) {
+      runningBackgroundJobs.put(job, job.allFiles().collect(Collectors.toSet()));
+    }
+    try {
+      ProgressManager.getInstance().runProcess(() -> task.run(progressIndicator), progressIndicator);
+    } finally {
+      runningBackgroundJobs.remove(job);
+    }
+  }
+
+  /**
+   * Cancels the automatic background jobs currently analyzing the given file, since their results would be placed on outdated content.
+   * The other files of a canceled job are submitted again, while the modified file is expected to be submitted by the caller once
+   * its content is stable.
+   */
+  public void cancelStaleBackgroundJobs(VirtualFile modifiedFile) {
+    for (Map.Entry<SonarLintJob, Set<VirtualFile>> running : runningBackgroundJobs.entrySet()) {
+      SonarLintJob job = running.getKey();
+      if (job.isCanceled() || !running.getValue().contains(modifiedFile)) {
+        continue;
+      }
+      job.cancel();
+      SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
+      console.debug(String.format("[%s] Canceling analysis because '%s' was modified", job.trigger().getName(), modifiedFile.getName()));
+
+      Map<Module, Collection<VirtualFile>> remainingFiles = new LinkedHashMap<>();
+      for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
+        List<VirtualFile> moduleFiles = e.getValue().stream()
+          .filter(f -> !f.equals(modifiedFile))
+          .collect(Collectors.toList());
+        if (!moduleFiles.isEmpty()) {
+          remainingFiles.put(e.getKey(), moduleFiles);
+        }
+      }
+      if (!remainingFiles.isEmpty() || !job.filesToClearIssues().isEmpty()) {
+        submitBackground(remainingFiles, job.filesToClearIssues(), job.trigger(), null);
+      }
+    }
+  }
+
+  /**
+   * Number of background jobs waiting to be run.
+   */
+  public int queueDepth() {
+    return queue.depth();
+  }
+
+  /**
+   * Number of background jobs that were merged into a pending job instead of being queued.
+   */
+  public long mergedJobs() {
+    return queue.mergedJobs();
+  }
+
+  /**
+   * Number of files that were requested again while already pending analysis.
+   */
+  public long deduplicatedFiles() {
+    return queue.deduplicatedFiles();
+  }
+
+  /**
+   * Submits the analysis of a single module to the pool of workers shared by all the jobs of the project.
+   * The size of the pool is bounded by {@link SonarLintProjectSettings#getMaxParallelModuleAnalyses()}.
+   */
+  <T> Future<T> submitModuleAnalysis(Callable<T> moduleAnalysis) {
+    resizeModuleExecutor(maxParallelModuleAnalyses());
+    return moduleExecutor.submit(moduleAnalysis);
+  }
+
+  int maxParallelModuleAnalyses() {
+    return SonarLintUtils.getService(myProject, SonarLintProjectSettings.class).getMaxParallelModuleAnalyses();
+  }
+
+  private synchronized void resizeModuleExecutor(int size) {
+    if (size > moduleExecutor.getMaximumPoolSize()) {
+      moduleExecutor.setMaximumPoolSize(size);
+      moduleExecutor.setCorePoolSize(size);
+    } else if (size < moduleExecutor.getMaximumPoolSize()) {
+      moduleExecutor.setCorePoolSize(size);
+      moduleExecutor.setMaximumPoolSize(size);
     }
   }
 
@@ -125,5 +265,6 @@ public class SonarLintJobManager implements Disposable {
   @Override
   public void dispose() {
     executor.shutdown();
+    moduleExecutor.shutdownNow();
   }
 }
@@ -0,0 +1,144 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Background jobs waiting for the analysis thread.
+ * A job without callback submitted while the last pending job has no callback either is merged into it, so that a file
+ * requested several times by different triggers is analyzed only once. Jobs with a callback are never merged, since their callback
+ * needs to be notified about the exact files that were requested, and jobs are never merged past a job with a callback, so that
+ * jobs still run in the order they were submitted.
+ */
+@ThreadSafe
+class SonarLintJobQueue {
+  private final LinkedList<Entry> pending = new LinkedList<>();
+  private long submittedJobs = 0;
+  private long mergedJobs = 0;
+  private long deduplicatedFiles = 0;
+
+  /**
+   * Adds a job to the queue.
+   *
+   * @return the new entry of the queue, to be taken with {@link #take(Entry)}, or null if the job was merged into a pending entry.
+   */
+  @CheckForNull
+  synchronized Entry enqueue(SonarLintJob job) {
+    submittedJobs++;
+    Entry last = pending.peekLast();
+    if (job.callback() == null && last != null && last.job.callback() == null) {
+      last.job = merge(last.job, job);
+      mergedJobs++;
+      return null;
+    }
+    Entry entry = new Entry(job);
+    pending.add(entry);
+    return entry;
+  }
+
+  /**
+   * @return the current job of the entry, including the jobs merged into it so far, or null if the entry was already taken.
+   */
+  @CheckForNull
+  synchronized SonarLintJob peek(Entry entry) {
+    return pending.contains(entry) ? entry.job : null;
+  }
+
+  /**
+   * Removes an entry from the queue.
+   *
+   * @return the job of the entry, including the jobs merged into it, or null if the entry was already taken.
+   */
+  @CheckForNull
+  synchronized SonarLintJob take(Entry entry) {
+    return pending.remove(entry) ? entry.job : null;
+  }
+
+  synchronized int depth() {
+    return pending.size();
+  }
+
+  synchronized long submittedJobs() {
+    return submittedJobs;
+  }
+
+  synchronized long mergedJobs() {
+    return mergedJobs;
+  }
+
+  synchronized long deduplicatedFiles() {
+    return deduplicatedFiles;
+  }
+
+  /**
+   * The newest job has the last word on whether a file should be analyzed or have its issues cleared.
+   */
+  private SonarLintJob merge(SonarLintJob previous, SonarLintJob next) {
+    Set<VirtualFile> nextFiles = next.allFiles().collect(Collectors.toSet());
+    Set<VirtualFile> nextFilesToClear = new LinkedHashSet<>(next.filesToClearIssues());
+
+    Map<Module, Collection<VirtualFile>> files = new LinkedHashMap<>();
+    for (Map.Entry<Module, Collection<VirtualFile>> e : previous.filesPerModule().entrySet()) {
+      Collection<VirtualFile> moduleFiles = e.getValue().stream()
+        .filter(f -> !nextFilesToClear.contains(f))
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+      if (!moduleFiles.isEmpty()) {
+        files.put(e.getKey(), moduleFiles);
+      }
+    }
+    for (Map.Entry<Module, Collection<VirtualFile>> e : next.filesPerModule().entrySet()) {
+      Collection<VirtualFile> moduleFiles = files.computeIfAbsent(e.getKey(), m -> new LinkedHashSet<>());
+      for (VirtualFile f : e.getValue()) {
+        if (!moduleFiles.add(f)) {
+          deduplicatedFiles++;
+        }
+      }
+    }
+
+    Set<VirtualFile> filesToClear = previous.filesToClearIssues().stream()
+      .filter(f -> !nextFiles.contains(f))
+      .collect(Collectors.toCollection(LinkedHashSet::new));
+    filesToClear.addAll(nextFilesToClear);
+
+    return new SonarLintJob(next.project(), files, filesToClear, next.trigger().mostDemanding(previous.trigger()),
+      previous.waitForServerIssues() || next.waitForServerIssues(), null);
+  }
+
+  class Entry {
+    @GuardedBy("SonarLintJobQueue.this")
+    private SonarLintJob job;
+
+    private Entry(SonarLintJob job) {
+      this.job = job;
+    }
+  }
+}
@@ -28,27 +28,32 @@ import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.sonarlint.intellij.editor.AccumulatorIssueListener;
-import org.sonarlint.intellij.issue.IssueProcessor;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarlint.intellij.util.AggregatedProgressMonitor;
 import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarlint.intellij.util.TaskProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
 
 public class SonarLintTask extends Task.Backgroundable {
   private static final Logger LOGGER = Logger.getInstance(SonarLintTask.class);
+  private static final long MODULE_POLL_INTERVAL_MS = 100;
   protected final SonarLintJob job;
   protected final boolean modal;
   private final boolean startInBackground;
@@ -92,35 +97,21 @@ public class SonarLintTask extends Task.Backgroundable {
 
   @Override
   public void run(ProgressIndicator indicator) {
-    AccumulatorIssueListener listener = new AccumulatorIssueListener();
+    StreamingIssueListener listener = new StreamingIssueListener(myProject, job);
 
     try {
-      checkCanceled(indicator, myProject);
+      checkCanceled(indicator);
 
-      List<ClientInputFile> allFailedAnalysisFiles;
       if (getJob().allFiles().findAny().isPresent()) {
-
-        List<AnalysisResults> results = analyze(myProject, indicator, listener);
-
-        //last chance to cancel (to avoid the possibility of having interrupt flag set)
-        checkCanceled(indicator, myProject);
+        analyze(myProject, indicator, listener);
 
         LOGGER.info("SonarLint analysis done");
 
         indicator.setIndeterminate(false);
         indicator.setFraction(.9);
-
-        allFailedAnalysisFiles = results.stream()
-          .flatMap(r -> r.failedAnalysisFiles().stream())
-          .collect(Collectors.toList());
-      } else {
-        allFailedAnalysisFiles = Collections.emptyList();
       }
-      List<Issue> issues = listener.getIssues();
-      indicator.setText("Updating SonarLint issues: " + issues.size());
-
-      IssueProcessor processor = SonarLintUtils.getService(myProject, IssueProcessor.class);
-      processor.process(job, indicator, issues, allFailedAnalysisFiles);
+      indicator.setText("Updating SonarLint issues");
+      listener.finish(indicator);
     } catch (CanceledException e1) {
       SonarLintConsole console = SonarLintConsole.get(job.project());
       console.info("Analysis canceled");
@@ -133,7 +124,7 @@ public class SonarLintTask extends Task.Backgroundable {
 
   private void handleError(Throwable e, ProgressIndicator indicator) {
     // if cancelled, ignore any errors since they were most likely caused by the interrupt
-    if (!indicator.isCanceled()) {
+    if (!isCanceled(indicator)) {
       String msg = "Error running SonarLint analysis";
       SonarLintConsole console = SonarLintConsole.get(job.project());
       console.error(msg, e);
@@ -152,13 +143,17 @@ public class SonarLintTask extends Task.Backgroundable {
     }
   }
 
-  private static void checkCanceled(ProgressIndicator indicator, Project project) {
-    if (indicator.isCanceled() || project.isDisposed()) {
+  private void checkCanceled(ProgressIndicator indicator) {
+    if (isCanceled(indicator) || myProject.isDisposed()) {
       throw new CanceledException();
     }
   }
 
-  private List<AnalysisResults> analyze(Project project, ProgressIndicator indicator, AccumulatorIssueListener listener) {
+  private boolean isCanceled(ProgressIndicator indicator) {
+    return indicator.isCanceled() || job.isCanceled();
+  }
+
+  private void analyze(Project project, ProgressIndicator indicator, StreamingIssueListener listener) {
     SonarLintAnalyzer analyzer = SonarLintUtils.getService(project, SonarLintAnalyzer.class);
 
     indicator.setIndeterminate(true);
@@ -177,14 +172,149 @@ public class SonarLintTask extends Task.Backgroundable {
 
     LOGGER.info(indicator.getText());
 
-    ProgressMonitor progressMonitor = new TaskProgressMonitor(indicator);
-    List<AnalysisResults> results = new LinkedList<>();
-
-    for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
-      results.add(analyzer.analyzeModule(e.getKey(), e.getValue(), listener, progressMonitor));
-      checkCanceled(indicator, myProject);
+    // results of manual analyses are never served from the cache, so that users can always force a fresh analysis
+    boolean useCache = job.callback() == null && !job.waitForServerIssues();
+    SonarLintJobManager jobManager = SonarLintUtils.getService(project, SonarLintJobManager.class);
+    if (numModules > 1 && jobManager.maxParallelModuleAnalyses() > 1) {
+      analyzeInParallel(analyzer, jobManager, indicator, listener, useCache);
+    } else {
+      ProgressMonitor progressMonitor = new TaskProgressMonitor(indicator, job::isCanceled);
+      for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
+        AnalysisResults results = analyzer.analyzeModule(e.getKey(), e.getValue(), listener, progressMonitor, useCache);
+        // last chance to cancel (to avoid the possibility of having interrupt flag set)
+        checkCanceled(indicator);
+        listener.filesCompleted(e.getValue(), results);
+      }
     }
     indicator.startNonCancelableSection();
-    return results;
+  }
+
+  /**
+   * Analyzes each module in the pool of workers of the {@link SonarLintJobManager}. The progress of all modules is aggregated in the
+   * indicator of this task, and canceling the task (or a failure in any of the modules) cancels all the other modules.
+   * The issues of each module are processed as soon as it completes, regardless of the order in which modules were submitted.
+   * It only returns once no worker is analyzing a module of the job anymore, so that no issue is published after the job ended.
+   */
+  private void analyzeInParallel(SonarLintAnalyzer analyzer, SonarLintJobManager jobManager, ProgressIndicator indicator,
+    StreamingIssueListener listener, boolean useCache) {
+    AggregatedProgressMonitor aggregatedMonitor = new AggregatedProgressMonitor(indicator, job::isCanceled);
+    CountDownLatch workersDone = new CountDownLatch(job.filesPerModule().size());
+    List<ModuleAnalysis> analyses = new ArrayList<>();
+    Map<Future<AnalysisResults>, ProgressMonitor> futures = new LinkedHashMap<>();
+    Map<Future<AnalysisResults>, Collection<VirtualFile>> filesPerFuture = new HashMap<>();
+
+    try {
+      for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
+        ProgressMonitor moduleMonitor = aggregatedMonitor.newPart(e.getValue().size());
+        ModuleAnalysis analysis = new ModuleAnalysis(() -> analyzer.analyzeModule(e.getKey(), e.getValue(), listener, moduleMonitor, useCache),
+          workersDone);
+        analyses.add(analysis);
+        Future<AnalysisResults> future = jobManager.submitModuleAnalysis(analysis);
+        futures.put(future, moduleMonitor);
+        filesPerFuture.put(future, e.getValue());
+      }
+
+      Map<Future<AnalysisResults>, ProgressMonitor> running = new LinkedHashMap<>(futures);
+      while (!running.isEmpty()) {
+        Future<AnalysisResults> done = waitForAnyModule(running.keySet(), indicator);
+        AnalysisResults results = waitForModule(done, indicator);
+        running.remove(done).setFraction(1f);
+        checkCanceled(indicator);
+        listener.filesCompleted(filesPerFuture.get(done), results);
+      }
+    } finally {
+      // stops the modules still running and discards the ones that didn't start yet
+      aggregatedMonitor.cancel();
+      futures.keySet().forEach(f -> f.cancel(false));
+      for (int i = analyses.size(); i < job.filesPerModule().size(); i++) {
+        // never submitted
+        workersDone.countDown();
+      }
+      analyses.forEach(ModuleAnalysis::discard);
+      awaitWorkers(workersDone);
+    }
+  }
+
+  /**
+   * A canceled future is done as soon as it is canceled, even if its worker is still running: the workers are awaited on the latch.
+   */
+  private static void awaitWorkers(CountDownLatch workersDone) {
+    try {
+      workersDone.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The analysis of a module, that is either run or discarded, exactly once. The latch is counted down when it completes or is
+   * discarded before starting.
+   */
+  private static class ModuleAnalysis implements Callable<AnalysisResults> {
+    private final Callable<AnalysisResults> analysis;
+    private final CountDownLatch done;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private ModuleAnalysis(Callable<AnalysisResults> analysis, CountDownLatch done) {
+      this.analysis = analysis;
+      this.done = done;
+    }
+
+    @Override
+    public AnalysisResults call() throws Exception {
+      if (!claimed.compareAndSet(false, true)) {
+        throw new CanceledException();
+      }
+      try {
+        return analysis.call();
+      } finally {
+        done.countDown();
+      }
+    }
+
+    private void discard() {
+      if (claimed.compareAndSet(false, true)) {
+        done.countDown();
+      }
+    }
+  }
+
+  private Future<AnalysisResults> waitForAnyModule(Collection<Future<AnalysisResults>> running, ProgressIndicator indicator) {
+    while (true) {
+      checkCanceled(indicator);
+      for (Future<AnalysisResults> f : running) {
+        if (f.isDone()) {
+          return f;
+        }
+      }
+      try {
+        running.iterator().next().get(MODULE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException | ExecutionException e) {
+        // check again for completion, failures are reported by waitForModule
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CanceledException();
+      }
+    }
+  }
+
+  private AnalysisResults waitForModule(Future<AnalysisResults> future, ProgressIndicator indicator) {
+    while (true) {
+      checkCanceled(indicator);
+      try {
+        return future.get(MODULE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        // check again for cancellation
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CanceledException();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
   }
 }
@@ -0,0 +1,168 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarlint.intellij.util.SonarLintUtils;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Groups the issues raised by the engine per file, and hands them over to the {@link IssueProcessor} as soon as the analysis of their
+ * file is complete, in batches of at most {@link #BATCH_SIZE} files. This way results show up progressively and only the raw issues
+ * of files still being analyzed are kept in memory.
+ * The engine doesn't tell when it's done with a file (several sensors can report issues on the same file), so files are completed
+ * once the analysis of their module returns.
+ * Modules can be analyzed concurrently, so issues may be handled by several threads.
+ */
+@ThreadSafe
+class StreamingIssueListener implements IssueListener {
+  static final int BATCH_SIZE = 100;
+
+  private final Project project;
+  private final SonarLintJob job;
+
+  @GuardedBy("this")
+  private final Map<VirtualFile, List<Issue>> pendingIssues = new HashMap<>();
+  @GuardedBy("this")
+  private final Set<VirtualFile> filesWithIssues = new HashSet<>();
+  @GuardedBy("this")
+  private final List<ClientInputFile> failedAnalysisFiles = new ArrayList<>();
+  @GuardedBy("this")
+  private int rawIssueCount = 0;
+  @GuardedBy("this")
+  private long issueCount = 0;
+  @GuardedBy("this")
+  private long processingTimeMs = 0;
+  @GuardedBy("this")
+  private boolean started = false;
+
+  StreamingIssueListener(Project project, SonarLintJob job) {
+    this.project = project;
+    this.job = job;
+  }
+
+  @Override
+  public synchronized void handle(Issue issue) {
+    rawIssueCount++;
+    ClientInputFile inputFile = issue.getInputFile();
+    if (inputFile == null || !(inputFile.getClientObject() instanceof VirtualFile)) {
+      // project level issues are not displayed
+      return;
+    }
+    pendingIssues.computeIfAbsent(inputFile.getClientObject(), f -> new ArrayList<>()).add(issue);
+  }
+
+  /**
+   * Processes the issues of files whose analysis is complete.
+   */
+  void filesCompleted(Collection<VirtualFile> files, AnalysisResults results) {
+    synchronized (this) {
+      failedAnalysisFiles.addAll(results.failedAnalysisFiles());
+    }
+    IssueProcessor processor = SonarLintUtils.getService(project, IssueProcessor.class);
+    startJob(processor);
+    List<VirtualFile> completed = new ArrayList<>(files);
+    for (int i = 0; i < completed.size(); i += BATCH_SIZE) {
+      List<VirtualFile> batch = completed.subList(i, Math.min(i + BATCH_SIZE, completed.size()));
+      List<Issue> batchIssues = takePendingIssues(batch);
+      long batchStart = System.currentTimeMillis();
+      Map<VirtualFile, Collection<LiveIssue>> processed = processor.processFiles(batch, batchIssues, results.failedAnalysisFiles());
+      synchronized (this) {
+        processingTimeMs += System.currentTimeMillis() - batchStart;
+        processed.forEach((file, issues) -> {
+          if (!issues.isEmpty()) {
+            filesWithIssues.add(file);
+            issueCount += issues.size();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Called once all files of the job were completed.
+   */
+  void finish(ProgressIndicator indicator) {
+    Set<VirtualFile> jobFilesWithIssues;
+    List<ClientInputFile> failed;
+    synchronized (this) {
+      // issues reported on files that are not part of the job are ignored
+      pendingIssues.clear();
+      jobFilesWithIssues = new HashSet<>(filesWithIssues);
+      failed = new ArrayList<>(failedAnalysisFiles);
+      if (!IssueProcessor.asVirtualFiles(failed).containsAll(job.allFiles().collect(toList()))) {
+        logFoundIssues();
+      }
+    }
+    IssueProcessor processor = SonarLintUtils.getService(project, IssueProcessor.class);
+    startJob(processor);
+    processor.completeJob(job, indicator, jobFilesWithIssues, failed);
+  }
+
+  /**
+   * Clears the issues of the files excluded from the job before any issue of the job is stored. Held under the monitor, so that
+   * no other module starts processing its files before.
+   */
+  private synchronized void startJob(IssueProcessor processor) {
+    if (!started) {
+      started = true;
+      processor.startJob(job);
+    }
+  }
+
+  private synchronized List<Issue> takePendingIssues(Collection<VirtualFile> files) {
+    List<Issue> issues = new ArrayList<>();
+    for (VirtualFile f : files) {
+      issues.addAll(pendingIssues.getOrDefault(f, Collections.emptyList()));
+      pendingIssues.remove(f);
+    }
+    return issues;
+  }
+
+  @GuardedBy("this")
+  private void logFoundIssues() {
+    SonarLintConsole console = SonarLintConsole.get(project);
+    String issueStr = SonarLintUtils.pluralize("issue", rawIssueCount);
+    console.debug(String.format("Processed %d %s in %d ms", rawIssueCount, issueStr, processingTimeMs));
+
+    String end = SonarLintUtils.pluralize("issue", issueCount);
+    console.info("Found " + issueCount + " " + end);
+  }
+}
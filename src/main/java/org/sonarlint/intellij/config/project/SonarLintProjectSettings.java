@@ -32,6 +32,10 @@ import javax.annotation.Nullable;
 
 @State(name = "SonarLintProjectSettings", storages = {@Storage("sonarlint.xml")})
 public final class SonarLintProjectSettings implements PersistentStateComponent<SonarLintProjectSettings> {
+  public static final int DEFAULT_AUTO_TRIGGER_DELAY_MS = 2000;
+  public static final int DEFAULT_ISSUE_CACHE_MAX_SIZE_MB = 64;
+  public static final int DEFAULT_SERVER_ISSUES_BATCH_SIZE = 200;
+  public static final int DEFAULT_SERVER_ISSUES_BATCH_WINDOW_MS = 500;
 
   private boolean verboseEnabled = false;
   private boolean analysisLogsEnabled = false;
@@ -40,6 +44,12 @@ public final class SonarLintProjectSettings implements PersistentStateComponent<
   private String serverId = null;
   private String projectKey = null;
   private List<String> fileExclusions = new ArrayList<>();
+  private int maxParallelModuleAnalyses = defaultParallelModuleAnalyses();
+  private int autoTriggerDelayMs = DEFAULT_AUTO_TRIGGER_DELAY_MS;
+  private boolean adaptiveAutoTriggerDelay = true;
+  private int issueCacheMaxSizeMb = DEFAULT_ISSUE_CACHE_MAX_SIZE_MB;
+  private int serverIssuesBatchSize = DEFAULT_SERVER_ISSUES_BATCH_SIZE;
+  private int serverIssuesBatchWindowMs = DEFAULT_SERVER_ISSUES_BATCH_WINDOW_MS;
 
   /**
    * Constructor called by the XML serialization and deserialization (no args).
@@ -126,5 +136,74 @@ public final class SonarLintProjectSettings implements PersistentStateComponent<
     this.fileExclusions = new ArrayList<>(fileExclusions);
   }
 
+  /**
+   * Maximum number of modules analyzed concurrently by a single analysis job.
+   */
+  public int getMaxParallelModuleAnalyses() {
+    return maxParallelModuleAnalyses;
+  }
+
+  public void setMaxParallelModuleAnalyses(int maxParallelModuleAnalyses) {
+    this.maxParallelModuleAnalyses = Math.max(1, maxParallelModuleAnalyses);
+  }
+
+  /**
+   * Time without modification after which an edited file is automatically analyzed.
+   */
+  public int getAutoTriggerDelayMs() {
+    return autoTriggerDelayMs;
+  }
+
+  public void setAutoTriggerDelayMs(int autoTriggerDelayMs) {
+    this.autoTriggerDelayMs = Math.max(0, autoTriggerDelayMs);
+  }
+
+  /**
+   * Whether the delay before automatically analyzing an edited file adapts to how long the analysis of that file usually takes.
+   */
+  public boolean isAdaptiveAutoTriggerDelay() {
+    return adaptiveAutoTriggerDelay;
+  }
+
+  public void setAdaptiveAutoTriggerDelay(boolean adaptiveAutoTriggerDelay) {
+    this.adaptiveAutoTriggerDelay = adaptiveAutoTriggerDelay;
+  }
+
+  /**
+   * Memory budget of the in-memory cache of issues. Issues of files evicted from it are persisted on disk.
+   */
+  public int getIssueCacheMaxSizeMb() {
+    return issueCacheMaxSizeMb;
+  }
+
+  public void setIssueCacheMaxSizeMb(int issueCacheMaxSizeMb) {
+    this.issueCacheMaxSizeMb = Math.max(1, issueCacheMaxSizeMb);
+  }
+
+  /**
+   * Maximum number of files whose issues are matched with server issues before listeners are notified.
+   */
+  public int getServerIssuesBatchSize() {
+    return serverIssuesBatchSize;
+  }
+
+  public void setServerIssuesBatchSize(int serverIssuesBatchSize) {
+    this.serverIssuesBatchSize = Math.max(1, serverIssuesBatchSize);
+  }
+
+  /**
+   * Maximum time a file waits for its batch to fill up before its issues are matched with server issues.
+   */
+  public int getServerIssuesBatchWindowMs() {
+    return serverIssuesBatchWindowMs;
+  }
+
+  public void setServerIssuesBatchWindowMs(int serverIssuesBatchWindowMs) {
+    this.serverIssuesBatchWindowMs = Math.max(0, serverIssuesBatchWindowMs);
+  }
+
+  private static int defaultParallelModuleAnalyses() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
 
 }
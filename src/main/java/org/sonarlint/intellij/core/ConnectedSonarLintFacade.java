@@ -42,7 +42,9 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedRuleDetails;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
+import org.sonarsource.sonarlint.core.client.api.connected.GlobalStorageStatus;
 import org.sonarsource.sonarlint.core.client.api.connected.ProjectBinding;
+import org.sonarsource.sonarlint.core.client.api.connected.ProjectStorageStatus;
 
 class ConnectedSonarLintFacade extends SonarLintFacade {
   private final ConnectedSonarLintEngine sonarlint;
@@ -88,6 +90,16 @@ class ConnectedSonarLintFacade extends SonarLintFacade {
     return sonarlint.getPluginDetails();
   }
 
+  @Override
+  public String getRulesFingerprint() {
+    String projectKey = SonarLintUtils.getService(project, SonarLintProjectSettings.class).getProjectKey();
+    GlobalStorageStatus globalStorageStatus = sonarlint.getGlobalStorageStatus();
+    ProjectStorageStatus projectStorageStatus = projectKey != null ? sonarlint.getProjectStorageStatus(projectKey) : null;
+    return "connected:" + projectKey
+      + ":" + (globalStorageStatus != null ? globalStorageStatus.getLastUpdateDate().getTime() : "")
+      + ":" + (projectStorageStatus != null ? projectStorageStatus.getLastUpdateDate().getTime() : "");
+  }
+
   @Override
   public ConnectedRuleDetails ruleDetails(String ruleKey) {
     return sonarlint.getActiveRuleDetails(ruleKey, SonarLintUtils.getService(project, SonarLintProjectSettings.class).getProjectKey());
@@ -0,0 +1,109 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+
+/**
+ * Groups the server issues fetched for files, so that they are matched (and listeners notified) once per batch instead of once per file.
+ * A batch is matched as soon as it is full, or when the time window started by its first file is over.
+ * If the same file is added twice to a batch, only the latest server issues are kept.
+ */
+@ThreadSafe
+class ServerIssueBatcher {
+  private final Consumer<Map<VirtualFile, Collection<Trackable>>> matcher;
+  private final ScheduledExecutorService scheduler;
+  private final IntSupplier batchSize;
+  private final IntSupplier windowMs;
+
+  @GuardedBy("this")
+  private Map<VirtualFile, Collection<Trackable>> pending = new LinkedHashMap<>();
+  @GuardedBy("this")
+  private ScheduledFuture<?> scheduledFlush;
+
+  ServerIssueBatcher(Consumer<Map<VirtualFile, Collection<Trackable>>> matcher, ScheduledExecutorService scheduler, IntSupplier batchSize,
+    IntSupplier windowMs) {
+    this.matcher = matcher;
+    this.scheduler = scheduler;
+    this.batchSize = batchSize;
+    this.windowMs = windowMs;
+  }
+
+  void add(VirtualFile file, Collection<Trackable> serverIssues) {
+    Map<VirtualFile, Collection<Trackable>> batch = null;
+    synchronized (this) {
+      pending.put(file, serverIssues);
+      if (pending.size() >= batchSize.getAsInt()) {
+        batch = drain();
+      } else if (scheduledFlush == null) {
+        scheduledFlush = scheduler.schedule(this::flush, windowMs.getAsInt(), TimeUnit.MILLISECONDS);
+      }
+    }
+    if (batch != null) {
+      matcher.accept(batch);
+    }
+  }
+
+  /**
+   * Matches the pending files right away, in the calling thread.
+   */
+  void flush() {
+    Map<VirtualFile, Collection<Trackable>> batch;
+    synchronized (this) {
+      batch = drain();
+    }
+    if (!batch.isEmpty()) {
+      matcher.accept(batch);
+    }
+  }
+
+  /**
+   * Forgets the pending files without matching them.
+   */
+  synchronized void clear() {
+    drain();
+  }
+
+  synchronized int pendingCount() {
+    return pending.size();
+  }
+
+  @GuardedBy("this")
+  private Map<VirtualFile, Collection<Trackable>> drain() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    Map<VirtualFile, Collection<Trackable>> batch = pending;
+    pending = new LinkedHashMap<>();
+    return batch;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Runs the downloads and matching of server issues with a fixed number of threads. Unlike a pool with a bounded queue, tasks are
+ * never rejected while it is running. Instead:
+ * <ul>
+ *   <li>waiting tasks run by priority, and in submission order for the same priority</li>
+ *   <li>a task submitted with the key of a task still waiting to run is collapsed into it, raising its priority if needed</li>
+ *   <li>callers are expected to check {@link #getWaitingCount()} and submit coarser tasks when too many are waiting</li>
+ * </ul>
+ */
+@ThreadSafe
+class ServerIssueExecutor {
+  /**
+   * In decreasing order of priority.
+   */
+  enum Priority {
+    VISIBLE, OPEN, BACKGROUND
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final Runnable onIdle;
+  private final AtomicLong sequence = new AtomicLong();
+  private final LongAdder queuedCount = new LongAdder();
+  private final LongAdder coalescedCount = new LongAdder();
+  @GuardedBy("this")
+  private final Map<Object, Task> waiting = new HashMap<>();
+  @GuardedBy("this")
+  private int running = 0;
+
+  /**
+   * @param onIdle called each time the last running task completes while no other task is waiting
+   */
+  ServerIssueExecutor(int threads, Runnable onIdle) {
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+    this.onIdle = onIdle;
+  }
+
+  /**
+   * Submits a task, unless a task with the same key is still waiting to run, in which case the future of that task is returned.
+   *
+   * @throws RejectedExecutionException if the executor was shut down
+   */
+  Future<Void> submit(Object key, Priority priority, Runnable runnable) {
+    Task task;
+    synchronized (this) {
+      Task existing = waiting.get(key);
+      if (existing != null && !existing.isCancelled()) {
+        coalescedCount.increment();
+        if (priority.compareTo(existing.priority) < 0 && executor.getQueue().remove(existing)) {
+          existing.priority = priority;
+          executor.execute(existing);
+        }
+        return existing;
+      }
+      task = new Task(key, priority, runnable);
+      waiting.put(key, task);
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        waiting.remove(key, task);
+      }
+      throw e;
+    }
+    queuedCount.increment();
+    return task;
+  }
+
+  synchronized int getWaitingCount() {
+    return waiting.size();
+  }
+
+  long getQueuedCount() {
+    return queuedCount.sum();
+  }
+
+  long getCoalescedCount() {
+    return coalescedCount.sum();
+  }
+
+  /**
+   * Stops the threads, and cancels the tasks still waiting. Returns the number of cancelled tasks.
+   */
+  int shutdown() {
+    List<Runnable> notRun = executor.shutdownNow();
+    notRun.forEach(r -> ((Future<?>) r).cancel(false));
+    synchronized (this) {
+      waiting.clear();
+    }
+    return notRun.size();
+  }
+
+  private class Task extends FutureTask<Void> implements Comparable<Task> {
+    private final Object key;
+    private final long order;
+    private volatile Priority priority;
+
+    private Task(Object key, Priority priority, Runnable runnable) {
+      super(runnable, null);
+      this.key = key;
+      this.priority = priority;
+      this.order = sequence.getAndIncrement();
+    }
+
+    @Override
+    public void run() {
+      synchronized (ServerIssueExecutor.this) {
+        waiting.remove(key, this);
+        running++;
+      }
+      try {
+        super.run();
+      } finally {
+        boolean idle;
+        synchronized (ServerIssueExecutor.this) {
+          running--;
+          idle = running == 0 && waiting.isEmpty();
+        }
+        if (idle) {
+          onIdle.run();
+        }
+      }
+    }
+
+    @Override
+    public int compareTo(Task o) {
+      int cmp = priority.compareTo(o.priority);
+      return cmp != 0 ? cmp : Long.compare(order, o.order);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Chooses between downloading the server issues of each file and downloading all the server issues of the project, based on an
+ * estimation of how long each would take:
+ * <ul>
+ *   <li>per file: one request per file, {@code parallelism} at a time, each taking the measured average request time</li>
+ *   <li>whole project: the measured average time of previous downloads of the project, which grows with its number of issues</li>
+ * </ul>
+ * Downloading the whole project also renews its snapshot, which saves requests in later analyses. This is worth more the older the
+ * snapshot is, so the estimation of per file downloads is weighted by up to twice as much when there is no snapshot or it is old.
+ */
+@ThreadSafe
+class ServerIssueFetchStrategy {
+  static final long DEFAULT_FILE_REQUEST_MS = 500;
+  static final long DEFAULT_PROJECT_DOWNLOAD_MS = 2_000;
+  static final long SNAPSHOT_FULL_VALUE_AGE_MS = TimeUnit.HOURS.toMillis(1);
+  private static final double SMOOTHING = 0.3;
+
+  private final int parallelism;
+  @GuardedBy("this")
+  private double fileRequestMs = DEFAULT_FILE_REQUEST_MS;
+  @GuardedBy("this")
+  private double projectDownloadMs = DEFAULT_PROJECT_DOWNLOAD_MS;
+
+  ServerIssueFetchStrategy(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  synchronized void recordFileRequest(long durationMs) {
+    fileRequestMs += SMOOTHING * (durationMs - fileRequestMs);
+  }
+
+  synchronized void recordProjectDownload(long durationMs) {
+    projectDownloadMs += SMOOTHING * (durationMs - projectDownloadMs);
+  }
+
+  /**
+   * @param snapshotAgeMs age of the snapshot of the project, or a negative value if there is none
+   */
+  synchronized Decision decide(int numFiles, long snapshotAgeMs) {
+    long perFileEstimate = (long) (Math.ceil((double) numFiles / parallelism) * fileRequestMs);
+    long projectEstimate = (long) projectDownloadMs;
+    double snapshotValue = snapshotAgeMs < 0 ? 1.0 : Math.min(1.0, (double) snapshotAgeMs / SNAPSHOT_FULL_VALUE_AGE_MS);
+    boolean downloadProject = projectEstimate <= perFileEstimate * (1.0 + snapshotValue);
+    return new Decision(downloadProject, numFiles, (long) fileRequestMs, perFileEstimate, projectEstimate, snapshotAgeMs);
+  }
+
+  static class Decision {
+    private final boolean downloadProject;
+    private final int numFiles;
+    private final long fileRequestMs;
+    private final long perFileEstimate;
+    private final long projectEstimate;
+    private final long snapshotAgeMs;
+
+    private Decision(boolean downloadProject, int numFiles, long fileRequestMs, long perFileEstimate, long projectEstimate, long snapshotAgeMs) {
+      this.downloadProject = downloadProject;
+      this.numFiles = numFiles;
+      this.fileRequestMs = fileRequestMs;
+      this.perFileEstimate = perFileEstimate;
+      this.projectEstimate = projectEstimate;
+      this.snapshotAgeMs = snapshotAgeMs;
+    }
+
+    boolean isDownloadProject() {
+      return downloadProject;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s (%d files at %dms per request: %dms, whole project: %dms, snapshot age: %s)",
+        downloadProject ? "download whole project" : "download per file", numFiles, fileRequestMs, perFileEstimate, projectEstimate,
+        snapshotAgeMs < 0 ? "none" : (TimeUnit.MILLISECONDS.toSeconds(snapshotAgeMs) + "s"));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.intellij.ide.util.PropertiesComponent;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of the snapshot of the server issues of a whole project, which is downloaded in the storage of the connected engine.
+ * While a snapshot exists, the server issues of files are read from the storage instead of being downloaded file per file.
+ * A snapshot older than {@link #MAX_AGE_MS} is still used, but should be refreshed in the background.
+ * The time of the last download is persisted with the project, since the storage survives restarts. It is dropped when the binding,
+ * its connection or the storage of the project are updated.
+ */
+@ThreadSafe
+class ServerIssueSnapshot {
+  static final long MAX_AGE_MS = TimeUnit.MINUTES.toMillis(10);
+  private static final String LAST_SYNC_PROPERTY_PREFIX = "SonarLint.serverIssues.lastSync.";
+
+  private final PropertiesComponent properties;
+  private final LongSupplier clock;
+
+  ServerIssueSnapshot(PropertiesComponent properties, LongSupplier clock) {
+    this.properties = properties;
+    this.clock = clock;
+  }
+
+  /**
+   * Time of the start of the last successful download of all the server issues of the project, or null if there is no snapshot.
+   */
+  @CheckForNull
+  Long getLastSync(String serverId, String projectKey) {
+    String value = properties.getValue(propertyName(serverId, projectKey));
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Age of the snapshot in milliseconds, or -1 if there is no snapshot.
+   */
+  long getAge(String serverId, String projectKey) {
+    Long lastSync = getLastSync(serverId, projectKey);
+    return lastSync != null ? Math.max(0, clock.getAsLong() - lastSync) : -1;
+  }
+
+  boolean isStale(String serverId, String projectKey) {
+    long age = getAge(serverId, projectKey);
+    return age < 0 || age > MAX_AGE_MS;
+  }
+
+  long now() {
+    return clock.getAsLong();
+  }
+
+  /**
+   * @param startTime time at which the download started, so that issues changed during the download are fetched by the next refresh
+   */
+  void markSynced(String serverId, String projectKey, long startTime) {
+    properties.setValue(propertyName(serverId, projectKey), Long.toString(startTime));
+  }
+
+  void invalidate(String serverId, String projectKey) {
+    properties.unsetValue(propertyName(serverId, projectKey));
+  }
+
+  private static String propertyName(String serverId, String projectKey) {
+    return LAST_SYNC_PROPERTY_PREFIX + serverId + "/" + projectKey;
+  }
+}
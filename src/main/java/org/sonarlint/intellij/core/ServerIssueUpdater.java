@@ -19,36 +19,45 @@
  */
 package org.sonarlint.intellij.core;
 
+import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
-import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
 import org.sonarlint.intellij.config.global.SonarQubeServer;
 import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.exception.InvalidBindingException;
 import org.sonarlint.intellij.issue.IssueManager;
 import org.sonarlint.intellij.issue.ServerIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.messages.GlobalConfigurationListener;
+import org.sonarlint.intellij.messages.ProjectConfigurationListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 import org.sonarlint.intellij.util.SonarLintUtils;
@@ -64,23 +73,50 @@ public class ServerIssueUpdater implements Disposable {
 
   private static final int THREADS_NUM = 5;
   private static final int QUEUE_LIMIT = 100;
-  private static final int FETCH_ALL_ISSUES_THRESHOLD = 10;
   private static final int CONNECTION_TIMEOUT = 5_000;
   private static final int READ_TIMEOUT = 2 * 60_000;
+  private static final ScheduledExecutorService BATCH_SCHEDULER = AppExecutorUtil.createBoundedScheduledExecutorService("SonarLint server issue matching", 1);
   private final Project myProject;
 
-  private final ExecutorService executorService;
-
+  private final ServerIssueExecutor executor;
+  private final ServerIssueBatcher batcher;
+  private final ServerIssueSnapshot snapshot;
+  private final ServerIssueFetchStrategy fetchStrategy = new ServerIssueFetchStrategy(THREADS_NUM);
+  private final LongAdder degradedCount = new LongAdder();
+  // files to match once the server issues of the whole project are downloaded by the task waiting in the executor, if any
+  @GuardedBy("this")
+  private Map<Module, Set<VirtualFile>> filesForProjectDownload = new HashMap<>();
 
   public ServerIssueUpdater(Project project) {
     myProject = project;
+    this.snapshot = new ServerIssueSnapshot(PropertiesComponent.getInstance(project), System::currentTimeMillis);
+    SonarLintProjectSettings settings = SonarLintUtils.getService(project, SonarLintProjectSettings.class);
+    this.batcher = new ServerIssueBatcher(this::matchBatch, BATCH_SCHEDULER, settings::getServerIssuesBatchSize, settings::getServerIssuesBatchWindowMs);
+    // once there is nothing left to download, matching doesn't wait for the time window of the batch
+    this.executor = new ServerIssueExecutor(THREADS_NUM, batcher::flush);
+    MessageBusConnection busConnection = project.getMessageBus().connect(this);
+    busConnection.subscribe(ProjectConfigurationListener.TOPIC, this::invalidateSnapshot);
+    busConnection.subscribe(GlobalConfigurationListener.TOPIC, new GlobalConfigurationListener.Adapter() {
+      @Override
+      public void applied(SonarLintGlobalSettings globalSettings) {
+        // the connection of the binding may have changed
+        invalidateSnapshot(SonarLintUtils.getService(project, SonarLintProjectSettings.class));
+      }
+    });
+  }
 
-    // Equivalent to Executors.newFixedThreadPool(THREADS_NUM), but instead of the default unlimited LinkedBlockingQueue,
-    // we use ArrayBlockingQueue with a cap. This means that if QUEUE_LIMIT tasks are already queued (and THREADS_NUM being executed),
-    // new tasks will be rejected with RejectedExecutionException.
-    // http://www.nurkiewicz.com/2014/11/executorservice-10-tips-and-tricks.html
-    final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_LIMIT);
-    this.executorService = new ThreadPoolExecutor(THREADS_NUM, THREADS_NUM, 0L, TimeUnit.MILLISECONDS, queue);
+  /**
+   * Drops the snapshot of the server issues of a project, once the storage of the project was updated: the storage may not hold
+   * the server issues of the snapshot anymore.
+   */
+  public void invalidateSnapshot(String serverId, String projectKey) {
+    snapshot.invalidate(serverId, projectKey);
+  }
+
+  private void invalidateSnapshot(SonarLintProjectSettings settings) {
+    if (settings.getServerId() != null && settings.getProjectKey() != null) {
+      invalidateSnapshot(settings.getServerId(), settings.getProjectKey());
+    }
   }
 
   public void fetchAndMatchServerIssues(Map<Module, Collection<VirtualFile>> filesPerModule, ProgressIndicator indicator, boolean waitForCompletion) {
@@ -95,12 +131,26 @@ public class ServerIssueUpdater implements Disposable {
       SonarQubeServer server = projectBindingManager.getSonarQubeServer();
       ConnectedSonarLintEngine engine = projectBindingManager.getConnectedEngine();
       String projectKey = projectSettings.getProjectKey();
+      String serverId = server.getName();
 
       int numFiles = filesPerModule.values().stream().mapToInt(Collection::size).sum();
-      boolean downloadAll = numFiles >= FETCH_ALL_ISSUES_THRESHOLD;
+      long snapshotAge = snapshot.getAge(serverId, projectKey);
+      boolean useSnapshot = snapshotAge >= 0;
+      // a recent snapshot is used as is, otherwise server issues are downloaded (in the background if there is a snapshot)
+      boolean download = !useSnapshot || snapshot.isStale(serverId, projectKey);
+      boolean downloadAll = false;
+      SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
+      if (download) {
+        ServerIssueFetchStrategy.Decision decision = fetchStrategy.decide(numFiles, snapshotAge);
+        console.debug("Server issues fetch strategy: " + decision);
+        downloadAll = decision.isDownloadProject();
+      }
       String msg;
 
-      if (downloadAll) {
+      if (useSnapshot) {
+        msg = "Matching server issues in " + numFiles + SonarLintUtils.pluralize(" file", numFiles)
+          + " with the project snapshot (" + TimeUnit.MILLISECONDS.toSeconds(snapshotAge) + "s old)";
+      } else if (downloadAll) {
         msg = "Fetching all server issues";
       } else {
         msg = "Fetching server issues in " + numFiles + SonarLintUtils.pluralize(" file", numFiles);
@@ -108,21 +158,48 @@ public class ServerIssueUpdater implements Disposable {
       if (waitForCompletion) {
         msg += " (waiting for results)";
       }
-      SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
       console.debug(msg);
       indicator.setText(msg);
 
       // submit tasks
-      List<Future<Void>> updateTasks = fetchAndMatchServerIssues(projectKey, filesPerModule, server, engine, downloadAll);
+      FilePriorities priorities = new FilePriorities();
+      List<Future<Void>> updateTasks = new LinkedList<>();
+      if (useSnapshot) {
+        updateTasks.add(matchWithSnapshot(filesPerModule, server, engine, priorities));
+        if (downloadAll) {
+          downloadAndMatchAllServerIssues(projectKey, filesPerModule, server, engine, priorities);
+        } else if (download) {
+          // not waited for: the files are matched again once their issues are downloaded
+          fetchAndMatchServerIssues(projectKey, filesPerModule, server, engine, priorities);
+        }
+      } else if (downloadAll) {
+        updateTasks.add(downloadAndMatchAllServerIssues(projectKey, filesPerModule, server, engine, priorities));
+      } else {
+        updateTasks.addAll(fetchAndMatchServerIssues(projectKey, filesPerModule, server, engine, priorities));
+      }
+      console.debug("Server issue tasks: " + getStats());
 
       if (waitForCompletion) {
         waitForTasks(updateTasks);
+        batcher.flush();
       }
     } catch (InvalidBindingException e) {
       // ignore, do nothing
+    } catch (RejectedExecutionException e) {
+      // the project is being closed
+      LOGGER.debug("fetch and match server issues rejected", e);
     }
   }
 
+  /**
+   * Number of tasks queued and collapsed into waiting tasks, and of files whose issues were downloaded with the whole project because
+   * too many tasks were waiting, since the project was opened.
+   */
+  public String getStats() {
+    return String.format("%d queued, %d coalesced, %d files degraded to project downloads, %d waiting", executor.getQueuedCount(),
+      executor.getCoalescedCount(), degradedCount.sum(), executor.getWaitingCount());
+  }
+
   private static void waitForTasks(List<Future<Void>> updateTasks) {
     for (Future<Void> f : updateTasks) {
       try {
@@ -136,38 +213,65 @@ public class ServerIssueUpdater implements Disposable {
     }
   }
 
-  private List<Future<Void>> fetchAndMatchServerIssues(String projectKey, Map<Module, Collection<VirtualFile>> filesPerModule,
-    SonarQubeServer server, ConnectedSonarLintEngine engine, boolean downloadAll) {
-    List<Future<Void>> futureList = new LinkedList<>();
+  /**
+   * Downloads all the server issues of the project, and then matches the files.
+   * If a download of the project is already waiting to run, the files are added to it instead. If the project was downloaded since
+   * the task was submitted, it is not downloaded again.
+   */
+  private Future<Void> downloadAndMatchAllServerIssues(String projectKey, Map<Module, ? extends Collection<VirtualFile>> filesPerModule, SonarQubeServer server,
+    ConnectedSonarLintEngine engine, FilePriorities priorities) {
+    synchronized (this) {
+      filesPerModule.forEach((module, files) -> filesForProjectDownload.computeIfAbsent(module, m -> new LinkedHashSet<>()).addAll(files));
+    }
+    IssueUpdater issueUpdater = new IssueUpdater(server, engine);
+    long submitTime = snapshot.now();
 
-    if (!downloadAll) {
-      for (Map.Entry<Module, Collection<VirtualFile>> e : filesPerModule.entrySet()) {
-        futureList.addAll(fetchAndMatchServerIssues(projectKey, e.getKey(), e.getValue(), server, engine));
+    Runnable task = () -> {
+      Map<Module, Set<VirtualFile>> files;
+      synchronized (this) {
+        files = filesForProjectDownload;
+        filesForProjectDownload = new HashMap<>();
       }
-    } else {
-      futureList.addAll(downloadAndMatchAllServerIssues(projectKey, filesPerModule, server, engine));
-    }
-    return futureList;
+      if (files.isEmpty()) {
+        // already matched by a download that started after this task was submitted
+        return;
+      }
+      Long lastSync = snapshot.getLastSync(server.getName(), projectKey);
+      if (lastSync == null || lastSync < submitTime) {
+        issueUpdater.downloadAllServerIssues(projectKey);
+      }
+      matchFromStorage(issueUpdater, files);
+    };
+
+    return executor.submit("project:" + projectKey, priorities.highest(filesPerModule), task);
   }
 
-  private List<Future<Void>> downloadAndMatchAllServerIssues(String projectKey, Map<Module, Collection<VirtualFile>> filesPerModule, SonarQubeServer server,
-    ConnectedSonarLintEngine engine) {
+  private Future<Void> matchWithSnapshot(Map<Module, Collection<VirtualFile>> filesPerModule, SonarQubeServer server,
+    ConnectedSonarLintEngine engine, FilePriorities priorities) {
     IssueUpdater issueUpdater = new IssueUpdater(server, engine);
+    Runnable task = () -> matchFromStorage(issueUpdater, filesPerModule);
+    // each request matches its own files
+    return executor.submit(new Object(), priorities.highest(filesPerModule), task);
+  }
 
-    Runnable task = () -> {
-      issueUpdater.downloadAllServerIssues(projectKey);
-
-      for (Map.Entry<Module, Collection<VirtualFile>> e : filesPerModule.entrySet()) {
-        ProjectBinding binding = getProjectBinding(e.getKey());
-        Map<VirtualFile, String> relativePathPerFile = getRelativePaths(e.getKey().getProject(), e.getValue());
+  private void matchFromStorage(IssueUpdater issueUpdater, Map<Module, ? extends Collection<VirtualFile>> filesPerModule) {
+    for (Map.Entry<Module, ? extends Collection<VirtualFile>> e : filesPerModule.entrySet()) {
+      ProjectBinding binding = getProjectBinding(e.getKey());
+      Map<VirtualFile, String> relativePathPerFile = getRelativePaths(e.getKey().getProject(), e.getValue());
 
-        for (Map.Entry<VirtualFile, String> entry : relativePathPerFile.entrySet()) {
-          issueUpdater.fetchAndMatchFile(binding, entry.getKey(), entry.getValue());
-        }
+      for (Map.Entry<VirtualFile, String> entry : relativePathPerFile.entrySet()) {
+        issueUpdater.fetchAndMatchFile(binding, entry.getKey(), entry.getValue());
       }
-    };
+    }
+    batcher.flush();
+  }
 
-    return Collections.singletonList(submit(task, projectKey, null));
+  ServerIssueSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  ServerIssueFetchStrategy getFetchStrategy() {
+    return fetchStrategy;
   }
 
   private ProjectBinding getProjectBinding(Module module) {
@@ -175,15 +279,37 @@ public class ServerIssueUpdater implements Disposable {
     return moduleBindingManager.getBinding();
   }
 
-  private List<Future<Void>> fetchAndMatchServerIssues(String projectKey, Module module, Collection<VirtualFile> files, SonarQubeServer server, ConnectedSonarLintEngine engine) {
+  /**
+   * Submits one task per file, or a download of the whole project for the files that don't fit in the queue.
+   */
+  private List<Future<Void>> fetchAndMatchServerIssues(String projectKey, Map<Module, Collection<VirtualFile>> filesPerModule,
+    SonarQubeServer server, ConnectedSonarLintEngine engine, FilePriorities priorities) {
     List<Future<Void>> futureList = new LinkedList<>();
-    ProjectBinding binding = getProjectBinding(module);
-    Map<VirtualFile, String> relativePathPerFile = getRelativePaths(module.getProject(), files);
+    Map<Module, Collection<VirtualFile>> overflow = new HashMap<>();
     IssueUpdater issueUpdater = new IssueUpdater(server, engine);
 
-    for (Map.Entry<VirtualFile, String> e : relativePathPerFile.entrySet()) {
-      Runnable task = () -> issueUpdater.downloadAndMatchFile(binding, e.getKey(), e.getValue());
-      futureList.add(submit(task, projectKey, e.getValue()));
+    for (Map.Entry<Module, Collection<VirtualFile>> e : filesPerModule.entrySet()) {
+      Module module = e.getKey();
+      ProjectBinding binding = getProjectBinding(module);
+      Map<VirtualFile, String> relativePathPerFile = getRelativePaths(module.getProject(), e.getValue());
+
+      for (Map.Entry<VirtualFile, String> fileEntry : relativePathPerFile.entrySet()) {
+        VirtualFile file = fileEntry.getKey();
+        if (executor.getWaitingCount() >= QUEUE_LIMIT) {
+          overflow.computeIfAbsent(module, m -> new ArrayList<>()).add(file);
+          continue;
+        }
+        Runnable task = () -> issueUpdater.downloadAndMatchFile(binding, file, fileEntry.getValue());
+        futureList.add(executor.submit(file, priorities.of(file), task));
+      }
+    }
+
+    if (!overflow.isEmpty()) {
+      int numOverflow = overflow.values().stream().mapToInt(Collection::size).sum();
+      degradedCount.add(numOverflow);
+      SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
+      console.debug("Too many server issue requests waiting, fetching all server issues for " + numOverflow + SonarLintUtils.pluralize(" file", numOverflow));
+      futureList.add(downloadAndMatchAllServerIssues(projectKey, overflow, server, engine, priorities));
     }
     return futureList;
   }
@@ -202,20 +328,52 @@ public class ServerIssueUpdater implements Disposable {
     });
   }
 
-  private Future<Void> submit(Runnable task, String projectKey, @Nullable String moduleRelativePath) {
+  private void matchBatch(Map<VirtualFile, Collection<Trackable>> serverIssuesPerFile) {
     try {
-      return this.executorService.submit(task, null);
-    } catch (RejectedExecutionException e) {
-      LOGGER.debug("fetch and match server issues rejected for projectKey=" + projectKey + ", filepath=" + moduleRelativePath, e);
-      return CompletableFuture.completedFuture(null);
+      IssueManager issueManager = SonarLintUtils.getService(myProject, IssueManager.class);
+      issueManager.matchWithServerIssues(serverIssuesPerFile);
+    } catch (Throwable t) {
+      // note: without catching Throwable, any exceptions raised in the thread will not be visible
+      SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
+      console.error("error while matching server issues", t);
     }
   }
 
   @Override
   public void dispose() {
-    List<Runnable> rejected = executorService.shutdownNow();
-    if (!rejected.isEmpty()) {
-      LOGGER.debug("rejected " + rejected.size() + " pending tasks");
+    batcher.clear();
+    int cancelled = executor.shutdown();
+    if (cancelled > 0) {
+      LOGGER.debug("cancelled " + cancelled + " pending tasks");
+    }
+  }
+
+  /**
+   * Files selected in an editor are matched first, then files open in an editor, then the other files.
+   */
+  private class FilePriorities {
+    private final Set<VirtualFile> visible;
+    private final Set<VirtualFile> open;
+
+    private FilePriorities() {
+      FileEditorManager editorManager = FileEditorManager.getInstance(myProject);
+      visible = new HashSet<>(Arrays.asList(editorManager.getSelectedFiles()));
+      open = new HashSet<>(Arrays.asList(editorManager.getOpenFiles()));
+    }
+
+    private ServerIssueExecutor.Priority of(VirtualFile file) {
+      if (visible.contains(file)) {
+        return ServerIssueExecutor.Priority.VISIBLE;
+      }
+      return open.contains(file) ? ServerIssueExecutor.Priority.OPEN : ServerIssueExecutor.Priority.BACKGROUND;
+    }
+
+    private ServerIssueExecutor.Priority highest(Map<Module, ? extends Collection<VirtualFile>> filesPerModule) {
+      return filesPerModule.values().stream()
+        .flatMap(Collection::stream)
+        .map(this::of)
+        .min(Comparator.naturalOrder())
+        .orElse(ServerIssueExecutor.Priority.BACKGROUND);
     }
   }
 
@@ -238,14 +396,22 @@ public class ServerIssueUpdater implements Disposable {
       matchFile(virtualFile, serverIssues);
     }
 
-    public void downloadAllServerIssues(String projectKey) {
+    /**
+     * Returns whether the download succeeded, in which case the storage holds a new snapshot of the server issues of the project.
+     */
+    public boolean downloadAllServerIssues(String projectKey) {
       try {
+        long start = snapshot.now();
         ServerConfiguration serverConfiguration = SonarLintUtils.getServerConfiguration(server, CONNECTION_TIMEOUT, READ_TIMEOUT);
         LOGGER.debug("fetchServerIssues projectKey=" + projectKey);
         engine.downloadServerIssues(serverConfiguration, projectKey);
+        fetchStrategy.recordProjectDownload(snapshot.now() - start);
+        snapshot.markSynced(server.getName(), projectKey, start);
+        return true;
       } catch (DownloadException e) {
         SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
         console.info(e.getMessage());
+        return false;
       }
     }
 
@@ -256,8 +422,7 @@ public class ServerIssueUpdater implements Disposable {
           .collect(Collectors.toList());
 
         if (!serverIssuesTrackable.isEmpty()) {
-          IssueManager issueManager = SonarLintUtils.getService(myProject, IssueManager.class);
-          issueManager.matchWithServerIssues(virtualFile, serverIssuesTrackable);
+          batcher.add(virtualFile, serverIssuesTrackable);
         }
       } catch (Throwable t) {
         // note: without catching Throwable, any exceptions raised in the thread will not be visible
@@ -268,9 +433,12 @@ public class ServerIssueUpdater implements Disposable {
 
     private List<ServerIssue> fetchServerIssuesForFile(ProjectBinding projectBinding, String relativePath) {
       try {
+        long start = System.currentTimeMillis();
         ServerConfiguration serverConfiguration = SonarLintUtils.getServerConfiguration(server, CONNECTION_TIMEOUT, READ_TIMEOUT);
         LOGGER.debug("fetchServerIssues projectKey=" + projectBinding.projectKey() + ", filepath=" + relativePath);
-        return engine.downloadServerIssues(serverConfiguration, projectBinding, relativePath);
+        List<ServerIssue> serverIssues = engine.downloadServerIssues(serverConfiguration, projectBinding, relativePath);
+        fetchStrategy.recordFileRequest(System.currentTimeMillis() - start);
+        return serverIssues;
       } catch (DownloadException e) {
         SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
         console.info(e.getMessage());
@@ -69,6 +69,11 @@ public abstract class SonarLintFacade {
 
   public abstract Collection<PluginDetails> getLoadedAnalyzers();
 
+  /**
+   * Identifies the set of active rules and their parameters. It changes whenever the rules applied by an analysis might have changed.
+   */
+  public abstract String getRulesFingerprint();
+
   @CheckForNull
   public String getRuleName(String ruleKey) {
     RuleDetails details = ruleDetails(ruleKey);
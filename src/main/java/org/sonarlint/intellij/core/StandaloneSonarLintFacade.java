@@ -30,6 +30,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
 import org.sonarlint.intellij.ui.SonarLintConsole;
@@ -97,6 +98,15 @@ final class StandaloneSonarLintFacade extends SonarLintFacade {
     return sonarlint.getPluginDetails();
   }
 
+  @Override
+  public String getRulesFingerprint() {
+    SonarLintGlobalSettings globalSettings = SonarLintUtils.getService(SonarLintGlobalSettings.class);
+    StringBuilder builder = new StringBuilder("standalone");
+    new TreeMap<>(globalSettings.getRulesByKey()).forEach((k, v) -> builder.append('\n').append(k).append(':').append(v.isActive())
+      .append(new TreeMap<>(v.getParams())));
+    return builder.toString();
+  }
+
   @Override
   public StandaloneRuleDetails ruleDetails(String ruleKey) {
     return sonarlint.getRuleDetails(ruleKey).orElse(null);
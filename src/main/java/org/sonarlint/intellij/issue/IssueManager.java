@@ -31,7 +31,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -57,11 +61,22 @@ public class IssueManager {
   private final MessageBus messageBus;
   private final Project myProject;
 
-  private final Lock matchingInProgress = new ReentrantLock();
+  /**
+   * Tracking of issues is serialized per file: files with the same hash share a lock, so that different files can be tracked
+   * concurrently without keeping a lock per file.
+   */
+  static final int LOCK_STRIPES = 32;
+  private final Lock[] fileLocks = new Lock[LOCK_STRIPES];
+  private final LongAdder lockAcquisitions = new LongAdder();
+  private final LongAdder lockWaitNanos = new LongAdder();
+  private final AtomicLong maxLockWaitNanos = new AtomicLong();
 
   public IssueManager(Project project) {
     this.messageBus = project.getMessageBus();
     myProject = project;
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      fileLocks[i] = new ReentrantLock();
+    }
   }
 
   public void clear() {
@@ -133,34 +148,96 @@ public class IssueManager {
   }
 
   void store(VirtualFile file, final Collection<LiveIssue> rawIssues) {
-    boolean firstAnalysis = !wasAnalyzed(file);
-
-    // this will also delete all existing issues in the file
-    if (firstAnalysis) {
-      // don't set creation date, as we don't know when the issue was actually created (SLI-86)
-      getCache().save(file, rawIssues);
-    } else {
-      matchWithPreviousIssues(file, rawIssues);
-    }
+    withFileLock(file, () -> {
+      boolean firstAnalysis = !wasAnalyzed(file);
+
+      // this will also delete all existing issues in the file
+      if (firstAnalysis) {
+        // don't set creation date, as we don't know when the issue was actually created (SLI-86)
+        getCache().save(file, rawIssues);
+      } else {
+        matchWithPreviousIssues(file, rawIssues);
+      }
+    });
   }
 
   private void matchWithPreviousIssues(VirtualFile file, Collection<LiveIssue> rawIssues) {
-    matchingInProgress.lock();
     Input<Trackable> baseInput = () -> getPreviousIssues(file);
     Input<LiveIssue> rawInput = () -> rawIssues;
     updateTrackedIssues(file, baseInput, rawInput, false);
-    matchingInProgress.unlock();
   }
 
   public void matchWithServerIssues(VirtualFile file, final Collection<Trackable> serverIssues) {
-    matchingInProgress.lock();
-    Collection<LiveIssue> previousIssues = getForFile(file);
-    Input<Trackable> baseInput = () -> serverIssues;
-    Input<LiveIssue> rawInput = () -> previousIssues;
-
-    updateTrackedIssues(file, baseInput, rawInput, true);
-    matchingInProgress.unlock();
-    messageBus.syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).fileChanged(file, getCache().getLive(file));
+    matchWithServerIssues(Collections.singletonMap(file, serverIssues));
+  }
+
+  /**
+   * Matches the issues of several files with their server issues, and notifies the listeners once for all of them.
+   * A failure to match a file doesn't prevent the other files from being matched: the first failure is rethrown at the end.
+   */
+  public void matchWithServerIssues(Map<VirtualFile, ? extends Collection<Trackable>> serverIssuesPerFile) {
+    Map<VirtualFile, Collection<LiveIssue>> changed = new LinkedHashMap<>();
+    RuntimeException failure = null;
+    for (Map.Entry<VirtualFile, ? extends Collection<Trackable>> e : serverIssuesPerFile.entrySet()) {
+      VirtualFile file = e.getKey();
+      try {
+        withFileLock(file, () -> {
+          Collection<LiveIssue> previousIssues = getForFile(file);
+          Input<Trackable> baseInput = e::getValue;
+          Input<LiveIssue> rawInput = () -> previousIssues;
+
+          updateTrackedIssues(file, baseInput, rawInput, true);
+          // read under the lock of the file, so that it is not replaced by a concurrent analysis before being published
+          Collection<LiveIssue> matched = getCache().getLive(file);
+          if (matched != null) {
+            changed.put(file, matched);
+          }
+        });
+      } catch (RuntimeException ex) {
+        if (failure == null) {
+          failure = ex;
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (!changed.isEmpty()) {
+      messageBus.syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).filesChanged(changed);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void withFileLock(VirtualFile file, Runnable runnable) {
+    Lock lock = fileLocks[stripe(file)];
+    long start = System.nanoTime();
+    lock.lock();
+    try {
+      long waited = System.nanoTime() - start;
+      lockAcquisitions.increment();
+      lockWaitNanos.add(waited);
+      maxLockWaitNanos.accumulateAndGet(waited, Math::max);
+      runnable.run();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  static int stripe(VirtualFile file) {
+    int hash = file.hashCode();
+    // spread the high bits, like HashMap does
+    return ((hash ^ (hash >>> 16)) & 0x7fffffff) % LOCK_STRIPES;
+  }
+
+  /**
+   * Time spent waiting for the lock of a file before tracking its issues, since the project was opened.
+   */
+  public String getLockWaitStats() {
+    long acquisitions = lockAcquisitions.sum();
+    long totalMs = TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.sum());
+    return String.format("%d acquisitions, %dms total wait, %dms max wait", acquisitions, totalMs,
+      TimeUnit.NANOSECONDS.toMillis(maxLockWaitNanos.get()));
   }
 
   private <T extends Trackable> void updateTrackedIssues(VirtualFile file, Input<T> baseInput, Input<LiveIssue> rawInput, boolean isServerIssueMatching) {
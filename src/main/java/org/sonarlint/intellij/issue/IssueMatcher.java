@@ -55,11 +55,17 @@ public class IssueMatcher {
    * <b>Can only be called with getLive access</b>.
    */
   public RangeMarker match(PsiFile file, IssueLocation issueLocation) throws NoMatchException {
+    return match(file, PsiDocumentManager.getInstance(project).getDocument(file), issueLocation);
+  }
+
+  /**
+   * Same as {@link #match(PsiFile, IssueLocation)}, with the document of the file already resolved by the caller, so that it can be
+   * shared by all issues of the file.
+   */
+  public RangeMarker match(PsiFile file, @Nullable Document doc, IssueLocation issueLocation) throws NoMatchException {
     ApplicationManager.getApplication().assertReadAccessAllowed();
     Preconditions.checkArgument(issueLocation.getStartLine() != null);
 
-    PsiDocumentManager docManager = PsiDocumentManager.getInstance(project);
-    Document doc = docManager.getDocument(file);
     if (doc == null) {
       throw new NoMatchException("No document found for file: " + file.getName());
     }
@@ -19,13 +19,19 @@
  */
 package org.sonarlint.intellij.issue;
 
-import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,11 +42,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonarlint.intellij.analysis.AnalysisCallback;
 import org.sonarlint.intellij.analysis.SonarLintJob;
 import org.sonarlint.intellij.core.ServerIssueUpdater;
-import org.sonarlint.intellij.trigger.TriggerType;
+import org.sonarlint.intellij.issue.persistence.LiveIssueCache;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
@@ -53,34 +62,55 @@ public class IssueProcessor {
   private static final Logger LOGGER = Logger.getInstance(IssueProcessor.class);
   private final IssueMatcher matcher;
   private final Project myProject;
+  private final AtomicLong maxReadActionMs = new AtomicLong();
 
   public IssueProcessor(Project project) {
     this.matcher = new IssueMatcher(project);
     this.myProject = project;
   }
 
-  public void process(final SonarLintJob job, ProgressIndicator indicator, final Collection<Issue> rawIssues, Collection<ClientInputFile> failedAnalysisFiles) {
-    long start = System.currentTimeMillis();
+  /**
+   * Transforms, tracks and stores the issues of files whose analysis is complete, and notifies the UI about them.
+   *
+   * @param analyzed  files whose analysis is complete. All their issues must be part of rawIssues.
+   * @return the issues stored for each of the files that were refreshed
+   */
+  public Map<VirtualFile, Collection<LiveIssue>> processFiles(Collection<VirtualFile> analyzed, Collection<Issue> rawIssues,
+    Collection<ClientInputFile> failedAnalysisFiles) {
     IssueManager manager = SonarLintUtils.getService(myProject, IssueManager.class);
-    Map<VirtualFile, Collection<LiveIssue>> transformedIssues = ReadAction.compute(() -> {
-      manager.clear(job.filesToClearIssues());
-      Map<VirtualFile, Collection<LiveIssue>> issues = transformIssues(rawIssues, job.allFiles().collect(toList()), failedAnalysisFiles);
-      // this might be updated later after tracking with server issues
-      manager.store(issues);
-      return issues;
-    });
+    Map<VirtualFile, Collection<LiveIssue>> issues = transformIssues(rawIssues, analyzed, failedAnalysisFiles);
+    // this might be updated later after tracking with server issues
+    manager.store(issues);
+    return issues;
+  }
 
-    Set<VirtualFile> failedVirtualFiles = asVirtualFiles(failedAnalysisFiles);
-    if (!failedVirtualFiles.containsAll(job.allFiles().collect(toList()))) {
-      logFoundIssuesIfAny(rawIssues, start, transformedIssues);
-    }
+  /**
+   * Clears the issues of the files of the job that are not analyzed anymore. Called before the issues of the first files of the job
+   * are processed, or when the job completes if no file was processed.
+   */
+  public void startJob(SonarLintJob job) {
+    IssueManager manager = SonarLintUtils.getService(myProject, IssueManager.class);
+    manager.clear(job.filesToClearIssues());
+  }
 
-    if (shouldUpdateServerIssues(job.trigger())) {
+  /**
+   * Called once the issues of all the files of the job were processed.
+   *
+   * @param filesWithIssues files of the job in which issues were found
+   */
+  public void completeJob(SonarLintJob job, ProgressIndicator indicator, Collection<VirtualFile> filesWithIssues,
+    Collection<ClientInputFile> failedAnalysisFiles) {
+    IssueManager manager = SonarLintUtils.getService(myProject, IssueManager.class);
+    SonarLintConsole.get(myProject).debug("Longest read action while processing issues: " + maxReadActionMs.getAndSet(0) + "ms");
+    SonarLintConsole.get(myProject).debug("Live issue cache: " + SonarLintUtils.getService(myProject, LiveIssueCache.class).getStats());
+    SonarLintConsole.get(myProject).debug("Issue tracking locks: " + manager.getLockWaitStats());
+
+    if (job.trigger().shouldUpdateServerIssues()) {
       Map<Module, Collection<VirtualFile>> filesWithIssuesPerModule = new LinkedHashMap<>();
 
       for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
         Collection<VirtualFile> moduleFilesWithIssues = e.getValue().stream()
-          .filter(f -> !transformedIssues.getOrDefault(f, Collections.emptyList()).isEmpty())
+          .filter(filesWithIssues::contains)
           .collect(toList());
         if (!moduleFilesWithIssues.isEmpty()) {
           filesWithIssuesPerModule.put(e.getKey(), moduleFilesWithIssues);
@@ -95,40 +125,14 @@ public class IssueProcessor {
 
     AnalysisCallback callback = job.callback();
     if (callback != null) {
-      callback.onSuccess(failedVirtualFiles);
+      callback.onSuccess(asVirtualFiles(failedAnalysisFiles));
     }
   }
 
-  private static Set<VirtualFile> asVirtualFiles(Collection<ClientInputFile> failedAnalysisFiles) {
+  public static Set<VirtualFile> asVirtualFiles(Collection<ClientInputFile> failedAnalysisFiles) {
     return failedAnalysisFiles.stream().map(f -> (VirtualFile) f.getClientObject()).collect(Collectors.toSet());
   }
 
-  private void logFoundIssuesIfAny(Collection<Issue> rawIssues, long start, Map<VirtualFile, Collection<LiveIssue>> transformedIssues) {
-    String issueStr = SonarLintUtils.pluralize("issue", rawIssues.size());
-    SonarLintConsole console = SonarLintConsole.get(myProject);
-    console.debug(String.format("Processed %d %s in %d ms", rawIssues.size(), issueStr, System.currentTimeMillis() - start));
-
-    long issuesToShow = transformedIssues.values().stream()
-      .mapToLong(Collection::size)
-      .sum();
-
-    String end = SonarLintUtils.pluralize("issue", issuesToShow);
-    console.info("Found " + issuesToShow + " " + end);
-  }
-
-  private static boolean shouldUpdateServerIssues(TriggerType trigger) {
-    switch (trigger) {
-      case ACTION:
-      case CONFIG_CHANGE:
-      case BINDING_UPDATE:
-      case CHECK_IN:
-      case EDITOR_OPEN:
-        return true;
-      default:
-        return false;
-    }
-  }
-
   private Map<VirtualFile, Collection<LiveIssue>> removeFailedFiles(Collection<VirtualFile> analyzed, Collection<ClientInputFile> failedAnalysisFiles) {
     Map<VirtualFile, Collection<LiveIssue>> map = new HashMap<>();
     Set<VirtualFile> failedVirtualFiles = asVirtualFiles(failedAnalysisFiles);
@@ -145,12 +149,14 @@ public class IssueProcessor {
   }
 
   /**
-   * Transforms issues and organizes them per file
+   * Transforms issues and organizes them per file.
+   * Each file is transformed in its own read action, which gives way to write actions, so that the read lock isn't held for long.
    */
   private Map<VirtualFile, Collection<LiveIssue>> transformIssues(Collection<Issue> issues, Collection<VirtualFile> analyzed,
     Collection<ClientInputFile> failedAnalysisFiles) {
 
     Map<VirtualFile, Collection<LiveIssue>> map = removeFailedFiles(analyzed, failedAnalysisFiles);
+    Map<VirtualFile, List<Issue>> issuesPerFile = new LinkedHashMap<>();
 
     for (Issue issue : issues) {
       ClientInputFile inputFile = issue.getInputFile();
@@ -159,48 +165,114 @@ public class IssueProcessor {
         continue;
       }
       VirtualFile vFile = inputFile.getClientObject();
-      if (!vFile.isValid() || !map.containsKey(vFile)) {
-        // file is no longer valid (might have been deleted meanwhile) or there has been an error matching an issue in it
-        continue;
+      if (map.containsKey(vFile)) {
+        issuesPerFile.computeIfAbsent(vFile, f -> new ArrayList<>()).add(issue);
       }
-      try {
-        LiveIssue toStore = transformIssue(issue, inputFile);
-        map.get(vFile).add(toStore);
-      } catch (IssueMatcher.NoMatchException e) {
-        // File content is likely to have changed during the analysis, should be fixed in next analysis
-        SonarLintConsole.get(myProject).debug("Failed to find location of issue for file: '" + vFile.getName() + "'. The file won't be refreshed - " + e.getMessage());
-        map.remove(vFile);
-      } catch (Exception e) {
-        LOGGER.error("Error finding location for issue", e);
+    }
+
+    for (Map.Entry<VirtualFile, List<Issue>> e : issuesPerFile.entrySet()) {
+      Collection<LiveIssue> fileIssues = computeInShortReadAction(() -> transformFileIssues(e.getKey(), e.getValue()));
+      if (fileIssues != null) {
+        map.get(e.getKey()).addAll(fileIssues);
+      } else {
+        map.remove(e.getKey());
       }
     }
 
     return map;
   }
 
-  private LiveIssue transformIssue(Issue issue, ClientInputFile inputFile) throws IssueMatcher.NoMatchException {
-    PsiFile psiFile = matcher.findFile(inputFile.getClientObject());
+  /**
+   * Runs a read action that is canceled and restarted if a write action is requested meanwhile, so that it never blocks the UI.
+   */
+  private <T> T computeInShortReadAction(Computable<T> computable) {
+    if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+      return timedCompute(computable);
+    }
+    Ref<T> result = new Ref<>();
+    while (!ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> result.set(timedCompute(computable)))) {
+      ProgressIndicatorUtils.yieldToPendingWriteActions();
+    }
+    return result.get();
+  }
+
+  private <T> T timedCompute(Computable<T> computable) {
+    long start = System.currentTimeMillis();
+    try {
+      return computable.compute();
+    } finally {
+      long duration = System.currentTimeMillis() - start;
+      maxReadActionMs.accumulateAndGet(duration, Math::max);
+    }
+  }
+
+  /**
+   * The PSI file and its document are resolved only once for all the issues of the file. <b>Must be called with read access</b>.
+   *
+   * @return null if the issues couldn't be located in the file, meaning it shouldn't be refreshed.
+   */
+  @CheckForNull
+  private Collection<LiveIssue> transformFileIssues(VirtualFile vFile, List<Issue> issues) {
+    if (!vFile.isValid()) {
+      // file is no longer valid (might have been deleted meanwhile)
+      return Collections.emptyList();
+    }
+    List<LiveIssue> transformed = new ArrayList<>(issues.size());
+    // disposed if the issues are discarded, for example when the read action is restarted
+    List<RangeMarker> createdMarkers = new ArrayList<>();
+    try {
+      PsiFile psiFile = matcher.findFile(vFile);
+      Document document = PsiDocumentManager.getInstance(myProject).getDocument(psiFile);
+      for (Issue issue : issues) {
+        try {
+          transformed.add(transformIssue(issue, psiFile, document, createdMarkers));
+        } catch (ProcessCanceledException e) {
+          // a write action is pending, the read action will be restarted
+          throw e;
+        } catch (RuntimeException e) {
+          LOGGER.error("Error finding location for issue", e);
+        }
+      }
+    } catch (IssueMatcher.NoMatchException e) {
+      createdMarkers.forEach(RangeMarker::dispose);
+      // File content is likely to have changed during the analysis, should be fixed in next analysis
+      SonarLintConsole.get(myProject).debug("Failed to find location of issue for file: '" + vFile.getName() + "'. The file won't be refreshed - " + e.getMessage());
+      return null;
+    } catch (ProcessCanceledException e) {
+      createdMarkers.forEach(RangeMarker::dispose);
+      throw e;
+    }
+    return transformed;
+  }
+
+  private LiveIssue transformIssue(Issue issue, PsiFile psiFile, @Nullable Document document, List<RangeMarker> createdMarkers)
+    throws IssueMatcher.NoMatchException {
     if (issue.getStartLine() != null) {
-      RangeMarker rangeMarker = matcher.match(psiFile, issue);
-      List<LiveIssue.Flow> flows = transformFlows(psiFile, issue.flows(), issue.getRuleKey());
+      RangeMarker rangeMarker = matcher.match(psiFile, document, issue);
+      createdMarkers.add(rangeMarker);
+      List<LiveIssue.Flow> flows = transformFlows(psiFile, document, issue.flows(), issue.getRuleKey(), createdMarkers);
       return new LiveIssue(issue, psiFile, rangeMarker, flows);
     } else {
       return new LiveIssue(issue, psiFile);
     }
   }
 
-  private List<LiveIssue.Flow> transformFlows(PsiFile psiFile, List<Issue.Flow> flows, String rule) {
+  private List<LiveIssue.Flow> transformFlows(PsiFile psiFile, @Nullable Document document, List<Issue.Flow> flows, String rule,
+    List<RangeMarker> createdMarkers) {
     List<LiveIssue.Flow> transformedFlows = new LinkedList<>();
 
     for (Issue.Flow f : flows) {
       List<LiveIssue.IssueLocation> newLocations = new LinkedList<>();
       for (IssueLocation loc : f.locations()) {
         try {
-          RangeMarker range = matcher.match(psiFile, loc);
+          RangeMarker range = matcher.match(psiFile, document, loc);
+          createdMarkers.add(range);
           newLocations.add(new LiveIssue.IssueLocation(range, loc.getMessage()));
         } catch (IssueMatcher.NoMatchException e) {
           // File content is likely to have changed during the analysis, should be fixed in next analysis
           SonarLintConsole.get(myProject).debug("Failed to find secondary location of issue for file: '" + psiFile.getName() + "'. The location won't be displayed - " + e.getMessage());
+        } catch (ProcessCanceledException e) {
+          throw e;
         } catch (Exception e) {
           LOGGER.error("Error finding secondary location for issue", e, rule,
             String.valueOf(loc.getStartLine()), String.valueOf(loc.getStartLineOffset()), String.valueOf(loc.getEndLine()), String.valueOf(loc.getEndLineOffset()));
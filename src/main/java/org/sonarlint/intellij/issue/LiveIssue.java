@@ -22,30 +22,25 @@ package org.sonarlint.intellij.issue;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiFile;
-import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.util.StringInterner;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 public class LiveIssue implements Trackable {
   private static final AtomicLong UID_GEN = new AtomicLong();
-  private static final MessageDigest MD5_DIGEST = DigestUtils.getMd5Digest();
 
   private final long uid;
   private final RangeMarker range;
   private final PsiFile psiFile;
   private final Integer textRangeHash;
   private final Integer lineHash;
+  private final Integer column;
   private final String ruleName;
   private final String message;
   private final String ruleKey;
@@ -65,11 +60,12 @@ public class LiveIssue implements Trackable {
 
   public LiveIssue(Issue issue, PsiFile psiFile, @Nullable RangeMarker range, List<Flow> flows) {
     this.range = range;
-    this.message = issue.getMessage();
-    this.ruleKey = issue.getRuleKey();
-    this.ruleName = issue.getRuleName();
-    this.severity = issue.getSeverity();
-    this.type = issue.getType();
+    // shared by all the issues of the same rule
+    this.message = StringInterner.intern(issue.getMessage());
+    this.ruleKey = StringInterner.intern(issue.getRuleKey());
+    this.ruleName = StringInterner.intern(issue.getRuleName());
+    this.severity = StringInterner.intern(issue.getSeverity());
+    this.type = StringInterner.intern(issue.getType());
     this.psiFile = psiFile;
     this.assignee = "";
     this.uid = UID_GEN.getAndIncrement();
@@ -77,22 +73,21 @@ public class LiveIssue implements Trackable {
 
     if (range != null) {
       Document document = range.getDocument();
-      this.textRangeHash = checksum(document.getText(new TextRange(range.getStartOffset(), range.getEndOffset())));
+      CharSequence text = document.getImmutableCharSequence();
+      this.textRangeHash = TextChecksum.checksum(text, range.getStartOffset(), range.getEndOffset());
 
-      int line = range.getDocument().getLineNumber(range.getStartOffset());
+      int line = document.getLineNumber(range.getStartOffset());
       int lineStartOffset = document.getLineStartOffset(line);
       int lineEndOffset = document.getLineEndOffset(line);
-      this.lineHash = checksum(document.getText(new TextRange(lineStartOffset, lineEndOffset)));
+      this.lineHash = TextChecksum.checksum(text, lineStartOffset, lineEndOffset);
+      this.column = range.getStartOffset() - lineStartOffset;
     } else {
       this.textRangeHash = null;
       this.lineHash = null;
+      this.column = null;
     }
   }
 
-  private static int checksum(String content) {
-    return Hex.encodeHexString(MD5_DIGEST.digest(content.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode();
-  }
-
   public boolean isValid() {
     if (!psiFile.isValid()) {
       return false;
@@ -132,6 +127,12 @@ public class LiveIssue implements Trackable {
     return lineHash;
   }
 
+  @CheckForNull
+  @Override
+  public Integer getColumn() {
+    return column;
+  }
+
   @Override
   public String getRuleKey() {
     return ruleKey;
@@ -193,15 +194,15 @@ public class LiveIssue implements Trackable {
   }
 
   public void setAssignee(String assignee) {
-    this.assignee = assignee;
+    this.assignee = StringInterner.intern(assignee);
   }
 
   public void setSeverity(String severity) {
-    this.severity = severity;
+    this.severity = StringInterner.intern(severity);
   }
 
   public void setType(@Nullable String type) {
-    this.type = type;
+    this.type = StringInterner.intern(type);
   }
 
   public List<Flow> flows() {
@@ -19,25 +19,66 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.Collections;
+import java.util.List;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarlint.intellij.util.StringInterner;
 
 public class LocalIssueTrackable implements Trackable {
-  private final Sonarlint.Issues.Issue issue;
+  @Nullable
+  private final ByteString serialized;
+  private final List<String> strings;
+  @Nullable
+  private volatile Fields fields;
 
   public LocalIssueTrackable(Sonarlint.Issues.Issue issue) {
-    this.issue = issue;
+    this(issue, Collections.emptyList());
+  }
+
+  /**
+   * @param strings string table of the {@link Sonarlint.Issues} containing the issue
+   */
+  public LocalIssueTrackable(Sonarlint.Issues.Issue issue, List<String> strings) {
+    this.serialized = null;
+    this.strings = strings;
+    this.fields = new Fields(issue, strings);
+  }
+
+  /**
+   * The issue is decoded the first time one of its fields is accessed.
+   *
+   * @param strings string table of the {@link Sonarlint.Issues} containing the issue
+   */
+  public LocalIssueTrackable(ByteString serialized, List<String> strings) {
+    this.serialized = serialized;
+    this.strings = strings;
+  }
+
+  private Fields fields() {
+    Fields decoded = fields;
+    if (decoded == null) {
+      try {
+        decoded = new Fields(Sonarlint.Issues.Issue.parseFrom(serialized), strings);
+      } catch (InvalidProtocolBufferException e) {
+        throw new IllegalStateException("Failed to read issue", e);
+      }
+      fields = decoded;
+    }
+    return decoded;
   }
 
   @CheckForNull
   @Override public Integer getLine() {
-    return issue.getLine() != 0 ? issue.getLine() : null;
+    return fields().line != 0 ? fields().line : null;
   }
 
   @Override public String getMessage() {
-    return issue.getMessage();
+    return fields().message;
   }
 
   @CheckForNull
@@ -47,29 +88,29 @@ public class LocalIssueTrackable implements Trackable {
 
   @CheckForNull
   @Override public Integer getLineHash() {
-    return issue.getChecksum();
+    return fields().checksum;
   }
 
   @Override public String getRuleKey() {
-    return issue.getRuleKey();
+    return fields().ruleKey;
   }
 
   @CheckForNull
   @Override public String getServerIssueKey() {
-    return !issue.getServerIssueKey().isEmpty() ? issue.getServerIssueKey() : null;
+    return !fields().serverIssueKey.isEmpty() ? fields().serverIssueKey : null;
   }
 
   @CheckForNull
   @Override public Long getCreationDate() {
-    return issue.getCreationDate() != 0 ? issue.getCreationDate() : null;
+    return fields().creationDate != 0 ? fields().creationDate : null;
   }
 
   @Override public boolean isResolved() {
-    return issue.getResolved();
+    return fields().resolved;
   }
 
   @Override public String getAssignee() {
-    return issue.getAssignee();
+    return fields().assignee;
   }
 
   @Override public String getSeverity() {
@@ -79,4 +120,33 @@ public class LocalIssueTrackable implements Trackable {
   @Nullable @Override public String getType() {
     throw new UnsupportedOperationException();
   }
+
+  /**
+   * Decoded fields, with strings resolved from the string table or interned
+   */
+  private static class Fields {
+    private final String serverIssueKey;
+    private final String ruleKey;
+    private final int line;
+    private final String message;
+    private final int checksum;
+    private final String assignee;
+    private final long creationDate;
+    private final boolean resolved;
+
+    private Fields(Sonarlint.Issues.Issue issue, List<String> strings) {
+      this.serverIssueKey = issue.getServerIssueKey();
+      this.ruleKey = resolve(issue.getRuleKeyRef(), issue.getRuleKey(), strings);
+      this.line = issue.getLine();
+      this.message = resolve(issue.getMessageRef(), issue.getMessage(), strings);
+      this.checksum = issue.getChecksum();
+      this.assignee = resolve(issue.getAssigneeRef(), issue.getAssignee(), strings);
+      this.creationDate = issue.getCreationDate();
+      this.resolved = issue.getResolved();
+    }
+
+    private static String resolve(int ref, String inline, List<String> strings) {
+      return ref > 0 ? strings.get(ref - 1) : StringInterner.intern(inline);
+    }
+  }
 }
@@ -0,0 +1,142 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Computes the checksums used to track issues (line hash and text range hash), without copying the text.
+ * The value is the same as {@code Hex.encodeHexString(md5(text.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode()}, which is what is
+ * persisted in the issue store, and also how the checksums of server issues are compared.
+ * Thread-safe: each thread gets its own digest and buffers.
+ */
+public final class TextChecksum {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final int BUFFER_SIZE = 1024;
+  private static final byte REPLACEMENT = '?';
+  private static final ThreadLocal<TextChecksum> INSTANCE = ThreadLocal.withInitial(TextChecksum::new);
+
+  private final MessageDigest digest = DigestUtils.getMd5Digest();
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final byte[] md5 = new byte[digest.getDigestLength()];
+  private int length = 0;
+
+  private TextChecksum() {
+    // only used through the static methods
+  }
+
+  public static int checksum(CharSequence text) {
+    return checksum(text, 0, text.length());
+  }
+
+  /**
+   * Checksum of the characters between start (inclusive) and end (exclusive), ignoring whitespaces.
+   */
+  public static int checksum(CharSequence text, int start, int end) {
+    return INSTANCE.get().compute(text, start, end);
+  }
+
+  private int compute(CharSequence text, int start, int end) {
+    digest.reset();
+    length = 0;
+    char pendingHighSurrogate = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (isWhitespace(c)) {
+        // removing whitespaces may join surrogates that were separated, like String.replaceAll does
+        continue;
+      }
+      if (pendingHighSurrogate != 0) {
+        char high = pendingHighSurrogate;
+        pendingHighSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          encodeCodePoint(Character.toCodePoint(high, c));
+          continue;
+        }
+        // lone surrogates are replaced, like String.getBytes does
+        write(REPLACEMENT);
+      }
+      if (Character.isHighSurrogate(c)) {
+        pendingHighSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        write(REPLACEMENT);
+      } else {
+        encodeCodePoint(c);
+      }
+    }
+    if (pendingHighSurrogate != 0) {
+      write(REPLACEMENT);
+    }
+    digest.update(buffer, 0, length);
+    try {
+      digest.digest(md5, 0, md5.length);
+    } catch (DigestException e) {
+      throw new IllegalStateException(e);
+    }
+    return hexHashCode(md5);
+  }
+
+  /**
+   * Same as the regex {@code [\s]}, without the {@link java.util.regex.Pattern#UNICODE_CHARACTER_CLASS} flag.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private void encodeCodePoint(int cp) {
+    if (cp < 0x80) {
+      write((byte) cp);
+    } else if (cp < 0x800) {
+      write((byte) (0xC0 | (cp >> 6)));
+      write((byte) (0x80 | (cp & 0x3F)));
+    } else if (cp < 0x10000) {
+      write((byte) (0xE0 | (cp >> 12)));
+      write((byte) (0x80 | ((cp >> 6) & 0x3F)));
+      write((byte) (0x80 | (cp & 0x3F)));
+    } else {
+      write((byte) (0xF0 | (cp >> 18)));
+      write((byte) (0x80 | ((cp >> 12) & 0x3F)));
+      write((byte) (0x80 | ((cp >> 6) & 0x3F)));
+      write((byte) (0x80 | (cp & 0x3F)));
+    }
+  }
+
+  private void write(byte b) {
+    if (length == buffer.length) {
+      digest.update(buffer, 0, length);
+      length = 0;
+    }
+    buffer[length++] = b;
+  }
+
+  /**
+   * Hash code of the lowercase hexadecimal representation of the bytes, without creating it.
+   */
+  private static int hexHashCode(byte[] bytes) {
+    int h = 0;
+    for (byte b : bytes) {
+      h = 31 * h + HEX[(b >> 4) & 0xF];
+      h = 31 * h + HEX[b & 0xF];
+    }
+    return h;
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+/**
+ * Persists the issues found in each file, together with the hash of the analyzed content and a fingerprint of the analysis
+ * configuration (rules, analyzer properties and analyzer versions). As long as both are unchanged, the issues can be replayed instead
+ * of analyzing the file again.
+ * There is a single entry per file, keyed by its path relative to the project, in an {@link AppendLogObjectStore} like the local
+ * issue store. The store is opened the first time it is used.
+ * Entries are read and decoded without locking, so that the modules analyzed in parallel don't wait for each other, while writes
+ * to the store are serialized.
+ */
+public class AnalysisResultCache implements Disposable {
+  private static final Logger LOGGER = Logger.getInstance(AnalysisResultCache.class);
+  static final String LOG_FILENAME = "analysis.log";
+  private static final Reader<Sonarlint.AnalysisCacheEntry> READER = is -> {
+    try {
+      return Sonarlint.AnalysisCacheEntry.parseFrom(is);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read analysis cache entry", e);
+    }
+  };
+  private static final Writer<Sonarlint.AnalysisCacheEntry> WRITER = (os, entry) -> {
+    try {
+      entry.writeTo(os);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to save analysis cache entry", e);
+    }
+  };
+
+  private final Project myProject;
+  private final StoreKeyValidator<String> validator;
+  /**
+   * Opened lazily, see {@link #getStore()}
+   */
+  @GuardedBy("this")
+  @Nullable
+  private volatile PersistentStore<String, Sonarlint.AnalysisCacheEntry> store;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public AnalysisResultCache(Project project) {
+    myProject = project;
+    validator = new PathStoreKeyValidator(project.getBaseDir());
+  }
+
+  @GuardedBy("this")
+  private PersistentStore<String, Sonarlint.AnalysisCacheEntry> getStore() {
+    if (store == null) {
+      // the former layout, with one file per source file
+      FileUtils.deleteRecursively(getSonarLintDir().resolve("analysiscache"));
+      store = new AppendLogObjectStore<>(getBasePath().resolve(LOG_FILENAME), READER, WRITER, validator);
+    }
+    return store;
+  }
+
+  private Path getBasePath() {
+    return getSonarLintDir().resolve("analysisresults");
+  }
+
+  private Path getSonarLintDir() {
+    return new File(myProject.getBasePath(), Project.DIRECTORY_STORE_FOLDER).toPath().resolve("sonarlint");
+  }
+
+  /**
+   * Computes the fingerprint of everything, other than the content of the files, that can change the issues found by an analysis.
+   */
+  public static String configurationFingerprint(String rulesFingerprint, Map<String, String> analysisProps, Collection<PluginDetails> analyzers) {
+    StringBuilder builder = new StringBuilder().append(rulesFingerprint).append('\n');
+    new TreeMap<>(analysisProps).forEach((k, v) -> builder.append(k).append('=').append(v).append('\n'));
+    analyzers.stream()
+      .sorted(Comparator.comparing(PluginDetails::key))
+      .forEach(p -> builder.append(p.key()).append(':').append(p.version()).append('\n'));
+    return DigestUtils.md5Hex(builder.toString());
+  }
+
+  /**
+   * Hash of what the engine sees of the file: its content, but also its path, charset and whether it's a test file.
+   */
+  @CheckForNull
+  public static String contentHash(ClientInputFile inputFile) {
+    try (InputStream is = inputFile.inputStream()) {
+      String content = DigestUtils.md5Hex(is);
+      return DigestUtils.md5Hex(inputFile.relativePath() + '\n' + inputFile.isTest() + '\n' + inputFile.getCharset() + '\n' + content);
+    } catch (IOException e) {
+      LOGGER.debug("Failed to hash content of " + inputFile.getPath(), e);
+      return null;
+    }
+  }
+
+  /**
+   * If the file was already analyzed with the same content and configuration, sends the issues found back then to the listener.
+   *
+   * @return the language of the file if the cached result was replayed, or empty on cache miss.
+   */
+  public Optional<String> replay(ClientInputFile inputFile, String contentHash, String configurationFingerprint, IssueListener listener) {
+    Optional<Sonarlint.AnalysisCacheEntry> entry = read(inputFile.relativePath());
+    if (entry.isPresent() && entry.get().getContentHash().equals(contentHash) && entry.get().getConfigurationFingerprint().equals(configurationFingerprint)) {
+      hits.incrementAndGet();
+      entry.get().getIssueList().forEach(i -> listener.handle(new CachedIssue(i, inputFile)));
+      return Optional.of(entry.get().getLanguage());
+    }
+    misses.incrementAndGet();
+    return Optional.empty();
+  }
+
+  public void save(ClientInputFile inputFile, String contentHash, String configurationFingerprint, @CheckForNull String language,
+    Collection<Issue> issues) {
+    Sonarlint.AnalysisCacheEntry.Builder builder = Sonarlint.AnalysisCacheEntry.newBuilder()
+      .setContentHash(contentHash)
+      .setConfigurationFingerprint(configurationFingerprint);
+    if (language != null) {
+      builder.setLanguage(language);
+    }
+    issues.forEach(i -> builder.addIssue(CachedIssue.transform(i)));
+    try {
+      synchronized (this) {
+        getStore().write(inputFile.relativePath(), builder.build());
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Failed to save analysis results of " + inputFile.relativePath(), e);
+    }
+  }
+
+  private Optional<Sonarlint.AnalysisCacheEntry> read(String key) {
+    try {
+      ByteBuffer bytes = readBytes(key);
+      return bytes != null ? Optional.of(Sonarlint.AnalysisCacheEntry.parseFrom(bytes)) : Optional.empty();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.debug("Failed to read analysis results of " + key, e);
+      return Optional.empty();
+    }
+  }
+
+  @CheckForNull
+  private ByteBuffer readBytes(String key) throws IOException {
+    PersistentStore<String, Sonarlint.AnalysisCacheEntry> current = store;
+    if (current != null && current.supportsConcurrentReads()) {
+      // lock-free, readers don't wait for writers nor for each other
+      try {
+        return current.readBytes(key);
+      } catch (ClosedChannelException e) {
+        // the store was cleared meanwhile, it will be reopened
+      }
+    }
+    synchronized (this) {
+      return getStore().readBytes(key);
+    }
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  /**
+   * Deletes the entries of files that don't exist anymore.
+   */
+  public synchronized void clean() {
+    try {
+      getStore().deleteInvalid();
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to clean analysis results", e);
+    }
+  }
+
+  public synchronized void clear() {
+    closeStore();
+    FileUtils.deleteRecursively(getBasePath());
+  }
+
+  @Override
+  public synchronized void dispose() {
+    closeStore();
+  }
+
+  @GuardedBy("this")
+  private void closeStore() {
+    if (store == null) {
+      return;
+    }
+    try {
+      store.close();
+    } catch (IOException e) {
+      LOGGER.warn("Failed to close analysis results", e);
+    }
+    store = null;
+  }
+}
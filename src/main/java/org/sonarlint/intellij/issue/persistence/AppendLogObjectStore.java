@@ -0,0 +1,506 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.GuardedBy;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+
+/**
+ * A store keeping all the values in a single append-only log file, with an in-memory index of the position of the latest value
+ * of each key. Overwritten and deleted values are left in the log until it is compacted, which happens when they take more
+ * space than the live values.
+ * <p>
+ * Each record is made of the length and UTF-8 bytes of the key, followed by the length and bytes of the value, or by
+ * {@link #TOMBSTONE} when the key was deleted. A truncated record at the end of the log, left by a crash, is discarded on opening.
+ * <p>
+ * Compaction writes a new generation of the log, named after the log file with a numeric suffix, and the highest generation
+ * is used on opening. Older generations are deleted as soon as possible: they can't be deleted while they are still mapped
+ * on some platforms.
+ * <p>
+ * Writes must not be concurrent, but reads can be done concurrently with each other and with writes, without locking.
+ * The log is mapped in memory by chunks of {@link #MAPPED_CHUNK_SIZE}, each chunk being mapped once it is complete, and values
+ * that are not contained in a complete chunk are read from the file. Nothing is mapped on Windows, where a mapped file can't be
+ * deleted until the mapping is garbage collected.
+ */
+class AppendLogObjectStore<V> implements PersistentStore<String, V> {
+  private static final Logger LOGGER = Logger.getInstance(AppendLogObjectStore.class);
+  private static final int MAGIC = 0x534c4c31;
+  private static final int HEADER_SIZE = 4;
+  private static final int TOMBSTONE = -1;
+  private static final int MAX_KEY_LENGTH = 64 * 1024;
+  static final long MIN_GARBAGE_TO_COMPACT = 1024 * 1024;
+  static final long MAPPED_CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final boolean MAPPING_SUPPORTED = !SystemInfo.isWindows;
+
+  private final Path logPath;
+  private final Reader<V> reader;
+  private final Writer<V> writer;
+  private final StoreKeyValidator<String> validator;
+  private final long minGarbageToCompact;
+  private volatile Segment segment;
+  private long liveBytes = 0;
+  private long garbageBytes = 0;
+
+  AppendLogObjectStore(Path logPath, Reader<V> reader, Writer<V> writer, StoreKeyValidator<String> validator) {
+    this(logPath, reader, writer, validator, MIN_GARBAGE_TO_COMPACT);
+  }
+
+  AppendLogObjectStore(Path logPath, Reader<V> reader, Writer<V> writer, StoreKeyValidator<String> validator, long minGarbageToCompact) {
+    this.logPath = logPath;
+    this.reader = reader;
+    this.writer = writer;
+    this.validator = validator;
+    this.minGarbageToCompact = minGarbageToCompact;
+    try {
+      open();
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to open local issue store " + logPath, e);
+    }
+  }
+
+  private void open() throws IOException {
+    Files.createDirectories(logPath.getParent());
+    int generation = findLatestGeneration();
+    deleteOtherGenerations(generation);
+    // left by an interrupted compaction
+    deleteQuietly(compactedPath());
+    Segment opened = new Segment(generation, FileChannel.open(generationPath(generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE));
+    segment = opened;
+    FileChannel channel = opened.channel;
+    if (channel.size() < HEADER_SIZE) {
+      reset(opened);
+      return;
+    }
+    long validLength = load(opened);
+    if (validLength < channel.size()) {
+      LOGGER.warn(String.format("Discarding %d trailing bytes of local issue store %s", channel.size() - validLength, opened.path));
+      channel.truncate(validLength);
+    }
+  }
+
+  private Path generationPath(int generation) {
+    return generation == 0 ? logPath : logPath.resolveSibling(logPath.getFileName() + "." + generation);
+  }
+
+  private Path compactedPath() {
+    return logPath.resolveSibling(logPath.getFileName() + ".compact");
+  }
+
+  private int findLatestGeneration() throws IOException {
+    int latest = 0;
+    String prefix = logPath.getFileName() + ".";
+    try (DirectoryStream<Path> siblings = Files.newDirectoryStream(logPath.getParent(), prefix + "*")) {
+      for (Path sibling : siblings) {
+        String suffix = sibling.getFileName().toString().substring(prefix.length());
+        if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit) && suffix.length() < 10) {
+          latest = Math.max(latest, Integer.parseInt(suffix));
+        }
+      }
+    }
+    return latest;
+  }
+
+  private void deleteOtherGenerations(int generation) {
+    for (int i = 0; i < generation; i++) {
+      deleteQuietly(generationPath(i));
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      // it will be deleted the next time the store is opened
+      LOGGER.debug("Unable to delete " + path, e);
+    }
+  }
+
+  private void reset(Segment target) throws IOException {
+    target.index.clear();
+    liveBytes = 0;
+    garbageBytes = 0;
+    target.channel.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+    header.flip();
+    writeFully(target.channel, header, 0);
+  }
+
+  /**
+   * Reads the whole log to rebuild the index.
+   *
+   * @return the length of the log up to the last complete record
+   */
+  private long load(Segment target) throws IOException {
+    InputStream stream = new BufferedInputStream(Channels.newInputStream(target.channel.position(0)), 64 * 1024);
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) {
+      LOGGER.warn("Unknown format of local issue store " + target.path + ", starting from an empty store");
+      reset(target);
+      return HEADER_SIZE;
+    }
+    long position = HEADER_SIZE;
+    try {
+      while (true) {
+        int keyLength = in.readInt();
+        if (keyLength < 0 || keyLength > MAX_KEY_LENGTH) {
+          break;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        in.readFully(keyBytes);
+        int valueLength = in.readInt();
+        if (valueLength >= 0) {
+          skipFully(in, valueLength);
+        } else if (valueLength != TOMBSTONE) {
+          break;
+        }
+        long recordPosition = position;
+        position += recordSize(keyLength, valueLength);
+        String key = new String(keyBytes, StandardCharsets.UTF_8);
+        if (valueLength == TOMBSTONE) {
+          remove(target, key);
+          garbageBytes += recordSize(keyLength, valueLength);
+        } else {
+          put(target, key, new Location(recordPosition + recordSize(keyLength, 0), valueLength, recordSize(keyLength, valueLength)));
+        }
+      }
+    } catch (EOFException e) {
+      // last record is incomplete
+    }
+    return position;
+  }
+
+  private static void skipFully(DataInputStream in, int length) throws IOException {
+    int remaining = length;
+    while (remaining > 0) {
+      int skipped = in.skipBytes(remaining);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      remaining -= skipped;
+    }
+  }
+
+  @Override
+  public Optional<V> read(String key) throws IOException {
+    ByteBuffer bytes = readBytes(key);
+    if (bytes == null) {
+      return Optional.empty();
+    }
+    byte[] array = new byte[bytes.remaining()];
+    bytes.get(array);
+    return Optional.of(reader.apply(new ByteArrayInputStream(array)));
+  }
+
+  /**
+   * Returns a read-only view of the latest value of a key, without copying it. Can be called from any thread.
+   */
+  @CheckForNull
+  @Override
+  public ByteBuffer readBytes(String key) throws IOException {
+    while (true) {
+      Segment current = segment;
+      Location location = current.index.get(key);
+      if (location == null) {
+        return null;
+      }
+      try {
+        return current.slice(location);
+      } catch (ClosedChannelException e) {
+        if (current == segment) {
+          throw e;
+        }
+        // the log was compacted meanwhile, read from the new generation
+      }
+    }
+  }
+
+  @Override
+  public boolean contains(String key) {
+    return segment.index.containsKey(key);
+  }
+
+  @Override
+  public Collection<String> keys() {
+    return new ArrayList<>(segment.index.keySet());
+  }
+
+  @Override
+  public void write(String key, V value) throws IOException {
+    ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+    writer.accept(valueBytes, value);
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int valueLength = valueBytes.size();
+
+    ByteBuffer record = ByteBuffer.allocate((int) recordSize(keyBytes.length, valueLength));
+    record.putInt(keyBytes.length).put(keyBytes).putInt(valueLength).put(valueBytes.toByteArray());
+    record.flip();
+    Segment current = segment;
+    long position = current.channel.size();
+    writeFully(current.channel, record, position);
+    // only published once written, so that readers never see a partial value
+    put(current, key, new Location(position + recordSize(keyBytes.length, 0), valueLength, recordSize(keyBytes.length, valueLength)));
+    compactIfNeeded();
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    Segment current = segment;
+    if (!current.index.containsKey(key)) {
+      return;
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate((int) recordSize(keyBytes.length, TOMBSTONE));
+    record.putInt(keyBytes.length).put(keyBytes).putInt(TOMBSTONE);
+    record.flip();
+    writeFully(current.channel, record, current.channel.size());
+    remove(current, key);
+    garbageBytes += record.capacity();
+    compactIfNeeded();
+  }
+
+  @Override
+  public void deleteInvalid() {
+    int counter = 0;
+    for (String key : keys()) {
+      if (!validator.apply(key)) {
+        try {
+          delete(key);
+          counter++;
+        } catch (IOException e) {
+          LOGGER.warn("Failed to delete entry in the store", e);
+        }
+      }
+    }
+    LOGGER.debug(String.format("%d entries removed from the store", counter));
+  }
+
+  @Override
+  public boolean supportsConcurrentReads() {
+    return true;
+  }
+
+  private void put(Segment target, String key, Location location) {
+    remove(target, key);
+    target.index.put(key, location);
+    liveBytes += location.recordSize;
+  }
+
+  private void remove(Segment target, String key) {
+    Location previous = target.index.remove(key);
+    if (previous != null) {
+      liveBytes -= previous.recordSize;
+      garbageBytes += previous.recordSize;
+    }
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (garbageBytes >= minGarbageToCompact && garbageBytes > liveBytes) {
+      compact();
+    }
+  }
+
+  /**
+   * Writes the latest value of each key in a new generation of the log, then switches to it.
+   * Readers still using the previous generation keep reading it until they are done.
+   */
+  void compact() throws IOException {
+    long start = System.currentTimeMillis();
+    Segment current = segment;
+    long sizeBefore = current.channel.size();
+    Path compactedPath = compactedPath();
+    Map<String, Location> compactedIndex = new ConcurrentHashMap<>();
+    try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+      header.flip();
+      writeFully(compacted, header, 0);
+      long position = HEADER_SIZE;
+      // transferTo() appends at the current position of the target
+      compacted.position(position);
+      for (Map.Entry<String, Location> entry : current.index.entrySet()) {
+        Location location = entry.getValue();
+        long recordPosition = location.valuePosition + location.valueLength - location.recordSize;
+        long copied = 0;
+        while (copied < location.recordSize) {
+          copied += current.channel.transferTo(recordPosition + copied, location.recordSize - copied, compacted);
+        }
+        compactedIndex.put(entry.getKey(), new Location(position + location.recordSize - location.valueLength, location.valueLength,
+          location.recordSize));
+        position += location.recordSize;
+      }
+      compacted.force(true);
+    }
+    int nextGeneration = current.generation + 1;
+    Path nextPath = generationPath(nextGeneration);
+    try {
+      Files.move(compactedPath, nextPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(compactedPath, nextPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+    Segment next = new Segment(nextGeneration, FileChannel.open(nextPath, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    next.index.putAll(compactedIndex);
+    segment = next;
+    garbageBytes = 0;
+    current.channel.close();
+    deleteQuietly(current.path);
+    LOGGER.debug(String.format("Local issue store compacted from %d to %d bytes in %dms", sizeBefore, next.channel.size(),
+      System.currentTimeMillis() - start));
+  }
+
+  long garbageBytes() {
+    return garbageBytes;
+  }
+
+  long size() throws IOException {
+    return segment.channel.size();
+  }
+
+  int mappedChunks() {
+    return segment.mappedChunks();
+  }
+
+  @Override
+  public void close() throws IOException {
+    segment.channel.close();
+  }
+
+  private static long recordSize(int keyLength, int valueLength) {
+    return 4L + keyLength + 4L + Math.max(0, valueLength);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      offset += channel.write(buffer, offset);
+    }
+  }
+
+  /**
+   * One generation of the log, with the index of the values it contains.
+   */
+  private class Segment {
+    private final int generation;
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    /**
+     * Mappings of the complete chunks of the log, by index of chunk. A mapping stays valid even after the channel is closed.
+     */
+    @GuardedBy("this")
+    private final Map<Long, MappedByteBuffer> chunks = new HashMap<>();
+
+    private Segment(int generation, FileChannel channel) {
+      this.generation = generation;
+      this.path = generationPath(generation);
+      this.channel = channel;
+    }
+
+    private ByteBuffer slice(Location location) throws IOException {
+      long chunkIndex = location.valuePosition / MAPPED_CHUNK_SIZE;
+      long chunkStart = chunkIndex * MAPPED_CHUNK_SIZE;
+      long end = location.valuePosition + location.valueLength;
+      MappedByteBuffer chunk = end <= chunkStart + MAPPED_CHUNK_SIZE ? chunk(chunkIndex) : null;
+      if (chunk == null) {
+        return read(location);
+      }
+      ByteBuffer view = chunk.duplicate();
+      view.position((int) (location.valuePosition - chunkStart));
+      view.limit((int) (end - chunkStart));
+      return view.slice().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer read(Location location) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(location.valueLength);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, location.valuePosition + buffer.position()) < 0) {
+          throw new EOFException("Local issue store " + path + " is truncated");
+        }
+      }
+      buffer.flip();
+      return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the mapping of a chunk, or null if the chunk is not complete yet or if mapping is not supported
+     */
+    @CheckForNull
+    private synchronized MappedByteBuffer chunk(long chunkIndex) throws IOException {
+      if (!MAPPING_SUPPORTED) {
+        return null;
+      }
+      MappedByteBuffer chunk = chunks.get(chunkIndex);
+      if (chunk == null) {
+        long chunkStart = chunkIndex * MAPPED_CHUNK_SIZE;
+        if (channel.size() < chunkStart + MAPPED_CHUNK_SIZE) {
+          return null;
+        }
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, MAPPED_CHUNK_SIZE);
+        chunks.put(chunkIndex, chunk);
+      }
+      return chunk;
+    }
+
+    private synchronized int mappedChunks() {
+      return chunks.size();
+    }
+  }
+
+  private static class Location {
+    private final long valuePosition;
+    private final int valueLength;
+    private final long recordSize;
+
+    private Location(long valuePosition, int valueLength, long recordSize) {
+      this.valuePosition = valuePosition;
+      this.valueLength = valueLength;
+      this.recordSize = recordSize;
+    }
+  }
+}
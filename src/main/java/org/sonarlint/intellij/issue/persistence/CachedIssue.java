@@ -0,0 +1,105 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+
+/**
+ * An issue of the {@link AnalysisResultCache}, replayed as if it was raised by the engine on the given input file.
+ */
+class CachedIssue extends CachedLocation implements Issue {
+  private final Sonarlint.AnalysisCacheEntry.Issue issue;
+
+  CachedIssue(Sonarlint.AnalysisCacheEntry.Issue issue, ClientInputFile inputFile) {
+    super(issue.getLocation(), inputFile);
+    this.issue = issue;
+  }
+
+  @Override
+  public String getSeverity() {
+    return issue.getSeverity();
+  }
+
+  @CheckForNull
+  @Override
+  public String getType() {
+    return emptyToNull(issue.getType());
+  }
+
+  @Override
+  public String getRuleKey() {
+    return issue.getRuleKey();
+  }
+
+  @Override
+  public String getRuleName() {
+    return issue.getRuleName();
+  }
+
+  @Override
+  public List<Flow> flows() {
+    return issue.getFlowList().stream()
+      .map(f -> (Flow) () -> f.getLocationList().stream()
+        .map(l -> (IssueLocation) new CachedLocation(l, getInputFile()))
+        .collect(Collectors.toList()))
+      .collect(Collectors.toList());
+  }
+
+  static Sonarlint.AnalysisCacheEntry.Issue transform(Issue issue) {
+    Sonarlint.AnalysisCacheEntry.Issue.Builder builder = Sonarlint.AnalysisCacheEntry.Issue.newBuilder()
+      .setRuleKey(issue.getRuleKey())
+      .setSeverity(issue.getSeverity())
+      .setLocation(transform((IssueLocation) issue));
+    if (issue.getRuleName() != null) {
+      builder.setRuleName(issue.getRuleName());
+    }
+    if (issue.getType() != null) {
+      builder.setType(issue.getType());
+    }
+    for (Issue.Flow flow : issue.flows()) {
+      Sonarlint.AnalysisCacheEntry.Flow.Builder flowBuilder = Sonarlint.AnalysisCacheEntry.Flow.newBuilder();
+      flow.locations().forEach(l -> flowBuilder.addLocation(transform(l)));
+      builder.addFlow(flowBuilder);
+    }
+    return builder.build();
+  }
+
+  private static Sonarlint.AnalysisCacheEntry.Location transform(IssueLocation location) {
+    Sonarlint.AnalysisCacheEntry.Location.Builder builder = Sonarlint.AnalysisCacheEntry.Location.newBuilder()
+      .setStartLine(nullToUnknown(location.getStartLine()))
+      .setStartLineOffset(nullToUnknown(location.getStartLineOffset()))
+      .setEndLine(nullToUnknown(location.getEndLine()))
+      .setEndLineOffset(nullToUnknown(location.getEndLineOffset()));
+    if (location.getMessage() != null) {
+      builder.setMessage(location.getMessage());
+    }
+    return builder.build();
+  }
+
+  private static int nullToUnknown(@CheckForNull Integer value) {
+    return value != null ? value : -1;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import javax.annotation.CheckForNull;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+
+class CachedLocation implements IssueLocation {
+  private final Sonarlint.AnalysisCacheEntry.Location location;
+  private final ClientInputFile inputFile;
+
+  CachedLocation(Sonarlint.AnalysisCacheEntry.Location location, ClientInputFile inputFile) {
+    this.location = location;
+    this.inputFile = inputFile;
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getStartLine() {
+    return unknownToNull(location.getStartLine());
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getStartLineOffset() {
+    return unknownToNull(location.getStartLineOffset());
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getEndLine() {
+    return unknownToNull(location.getEndLine());
+  }
+
+  @CheckForNull
+  @Override
+  public Integer getEndLineOffset() {
+    return unknownToNull(location.getEndLineOffset());
+  }
+
+  @CheckForNull
+  @Override
+  public String getMessage() {
+    return emptyToNull(location.getMessage());
+  }
+
+  @Override
+  public ClientInputFile getInputFile() {
+    return inputFile;
+  }
+
+  @CheckForNull
+  private static Integer unknownToNull(int value) {
+    return value >= 0 ? value : null;
+  }
+
+  @CheckForNull
+  static String emptyToNull(String value) {
+    return value.isEmpty() ? null : value;
+  }
+}
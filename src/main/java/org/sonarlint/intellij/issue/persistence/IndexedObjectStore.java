@@ -24,11 +24,12 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Optional;
-import org.sonarsource.sonarlint.core.client.api.connected.objectstore.ObjectStore;
+import javax.annotation.CheckForNull;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.PathMapper;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
@@ -39,7 +40,7 @@ import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
  * @param <K> type of the key to store by and used when reading back; must be hashable
  * @param <V> type of the value to store
  */
-class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
+class IndexedObjectStore<K, V> implements PersistentStore<K, V> {
   private static final Logger LOGGER = Logger.getInstance(IndexedObjectStore.class);
   private final StoreIndex<K> index;
   private final PathMapper<K> pathMapper;
@@ -66,14 +67,31 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
     }
   }
 
+  @CheckForNull
+  @Override
+  public ByteBuffer readBytes(K key) throws IOException {
+    Path path = pathMapper.apply(key);
+    if (!path.toFile().exists()) {
+      return null;
+    }
+    return ByteBuffer.wrap(Files.readAllBytes(path));
+  }
+
+  @Override
   public boolean contains(K key) {
     Path path = pathMapper.apply(key);
     return path.toFile().exists();
   }
 
+  @Override
+  public Collection<K> keys() {
+    return index.keys();
+  }
+
   /**
    * Deletes all entries in the index are no longer valid.
    */
+  @Override
   public void deleteInvalid() {
     int counter = 0;
     Collection<K> keys;
@@ -116,4 +134,9 @@ class IndexedObjectStore<K, V> implements ObjectStore<K, V> {
       writer.accept(out, value);
     }
   }
+
+  @Override
+  public void close() {
+    // nothing to release
+  }
 }
@@ -19,114 +19,495 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarlint.intellij.util.StringInterner;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.HashingPathMapper;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.PathMapper;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
 import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
 
-public class IssuePersistence {
+/**
+ * Persists the issues of each file.
+ * Writes and deletions are queued and done in the background by a single I/O thread, so that callers never wait for the disk,
+ * unless the queue is full. Successive writes of the same key are coalesced. Reads take the pending writes into account.
+ * {@link #flush()} waits for all pending writes to be done.
+ */
+@ThreadSafe
+public class IssuePersistence implements Disposable {
+  private static final Logger LOGGER = Logger.getInstance(IssuePersistence.class);
+  static final int MAX_PENDING_WRITES = 1_000;
+  static final String LEGACY_STORE_PROPERTY = "sonarlint.issuestore.legacy";
+  static final String LOG_FILENAME = "issues.log";
+  private static final int ISSUE_TAG = lengthDelimitedTag(Sonarlint.Issues.ISSUE_FIELD_NUMBER);
+  private static final int STRING_TAG = lengthDelimitedTag(Sonarlint.Issues.STRINGS_FIELD_NUMBER);
+  static final Reader<Sonarlint.Issues> READER = is -> {
+    try {
+      return Sonarlint.Issues.parseFrom(is);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read issues", e);
+    }
+  };
+  static final Writer<Sonarlint.Issues> WRITER = (os, issues) -> {
+    try {
+      issues.writeTo(os);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to save issues", e);
+    }
+  };
+
   private final Path storeBasePath;
-  private final IndexedObjectStore<String, Sonarlint.Issues> store;
+  private final StoreKeyValidator<String> validator;
+  /**
+   * Opened lazily, see {@link #getStore()}
+   */
+  @Nullable
+  private volatile PersistentStore<String, Sonarlint.Issues> store;
+  private final Object storeLock = new Object();
   private final Project myProject;
 
+  /**
+   * Writes (or deletions, when the value is null) not done yet, in the order they were requested. An entry is only removed once it was
+   * written, so that reads never see stale data.
+   */
+  @GuardedBy("this")
+  private final LinkedHashMap<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+  @GuardedBy("this")
+  private boolean writerScheduled = false;
+  @GuardedBy("this")
+  private long coalescedWrites = 0;
+  @GuardedBy("this")
+  private long failedWrites = 0;
+  private final ExecutorService ioExecutor = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+    Thread t = new Thread(r, "SonarLint issue store writer");
+    t.setDaemon(true);
+    return t;
+  });
+
   protected IssuePersistence(Project project) {
     myProject = project;
-
+    validator = new PathStoreKeyValidator(project.getBaseDir());
     storeBasePath = getBasePath();
-    FileUtils.mkdirs(storeBasePath);
-    StoreIndex<String> index = new StringStoreIndex(storeBasePath);
-    PathMapper<String> mapper = new HashingPathMapper(storeBasePath, 2);
-    StoreKeyValidator<String> validator = new PathStoreKeyValidator(project.getBaseDir());
-    Reader<Sonarlint.Issues> reader = is -> {
-      try {
-        return Sonarlint.Issues.parseFrom(is);
-      } catch (IOException e) {
-        throw new IllegalStateException("Failed to read issues", e);
+  }
+
+  /**
+   * Opens the store if it is not opened yet. It is done lazily, so that creating this service never touches the disk.
+   * Usually the store is opened in the background by {@link org.sonarlint.intellij.tasks.IssueStoreCleanupTask} when the project is opened.
+   */
+  public void open() {
+    synchronized (storeLock) {
+      getStore();
+    }
+  }
+
+  @GuardedBy("storeLock")
+  private PersistentStore<String, Sonarlint.Issues> getStore() {
+    if (store == null) {
+      long start = System.currentTimeMillis();
+      store = openStore();
+      LOGGER.debug(String.format("Local issue store opened in %dms", System.currentTimeMillis() - start));
+    }
+    return store;
+  }
+
+  /**
+   * By default, issues are stored in a single append-only log. The former layout, with one file per source file, can be
+   * used by setting the system property {@value #LEGACY_STORE_PROPERTY} to true.
+   */
+  @GuardedBy("storeLock")
+  private PersistentStore<String, Sonarlint.Issues> openStore() {
+    if (useLegacyStore()) {
+      return openLegacyStore(storeBasePath);
+    }
+    AppendLogObjectStore<Sonarlint.Issues> logStore = new AppendLogObjectStore<>(storeBasePath.resolve(LOG_FILENAME), READER, WRITER,
+      validator);
+    migrateLegacyStore(logStore);
+    return logStore;
+  }
+
+  private PersistentStore<String, Sonarlint.Issues> openLegacyStore(Path basePath) {
+    FileUtils.mkdirs(basePath);
+    StoreIndex<String> index = new StringStoreIndex(basePath);
+    PathMapper<String> mapper = new HashingPathMapper(basePath, 2);
+    return new IndexedObjectStore<>(index, mapper, READER, WRITER, validator);
+  }
+
+  /**
+   * Moves the issues stored with the former layout into the log, then deletes the former store.
+   * If the migration fails, the former store is kept so that it can be retried the next time the store is opened. Entries already in
+   * the log, migrated before the failure or saved since then, are not overwritten.
+   */
+  private void migrateLegacyStore(PersistentStore<String, Sonarlint.Issues> target) {
+    Path legacyBasePath = getLegacyBasePath();
+    if (!legacyBasePath.resolve(StringStoreIndex.INDEX_FILENAME).toFile().exists()) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    int migrated = 0;
+    try (PersistentStore<String, Sonarlint.Issues> legacyStore = openLegacyStore(legacyBasePath)) {
+      for (String key : legacyStore.keys()) {
+        if (target.contains(key)) {
+          continue;
+        }
+        Optional<Sonarlint.Issues> issues = validator.apply(key) ? legacyStore.read(key) : Optional.empty();
+        if (issues.isPresent()) {
+          target.write(key, issues.get());
+          migrated++;
+        }
       }
-    };
-    Writer<Sonarlint.Issues> writer = (os, issues) -> {
-      try {
-        issues.writeTo(os);
-      } catch (IOException e) {
-        throw new IllegalStateException("Failed to save issues", e);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn(String.format("Failed to migrate the local issue store after %d entries, it will be retried the next time it is opened",
+        migrated), e);
+      return;
+    }
+    FileUtils.deleteRecursively(legacyBasePath);
+    LOGGER.info(String.format("Migrated %d entries of the local issue store in %dms", migrated, System.currentTimeMillis() - start));
+  }
+
+  public boolean contains(String key) {
+    synchronized (this) {
+      PendingWrite pending = pendingWrites.get(key);
+      if (pending != null) {
+        return pending.issues != null;
       }
-    };
-    store = new IndexedObjectStore<>(index, mapper, reader, writer, validator);
-    store.deleteInvalid();
+    }
+    PersistentStore<String, Sonarlint.Issues> current = store;
+    if (current != null && current.supportsConcurrentReads()) {
+      return current.contains(key);
+    }
+    synchronized (storeLock) {
+      return getStore().contains(key);
+    }
   }
 
-  public synchronized boolean contains(String key) {
-    return store.contains(key);
+  /**
+   * Queues the issues to be written. Only blocks if too many writes are pending.
+   */
+  public void save(String key, Collection<? extends Trackable> issues) {
+    // converted right away, so that what is written is the state of the issues at the time of the call
+    enqueue(key, new PendingWrite(key, transform(issues)));
   }
 
-  public synchronized void save(String key, Collection<? extends Trackable> issues) throws IOException {
-    store.write(key, transform(issues));
+  /**
+   * Queues the deletion of the issues of a key.
+   */
+  public void clear(String key) {
+    enqueue(key, new PendingWrite(key, null));
   }
 
-  public synchronized void clear(String key) throws IOException {
-    store.delete(key);
+  @CheckForNull
+  public Collection<LocalIssueTrackable> read(String key) throws IOException {
+    synchronized (this) {
+      PendingWrite pending = pendingWrites.get(key);
+      if (pending != null) {
+        return pending.issues != null ? transform(pending.issues) : null;
+      }
+    }
+    ByteBuffer bytes = readStoredBytes(key);
+    return bytes != null ? decode(bytes) : null;
+  }
+
+  private static int lengthDelimitedTag(int fieldNumber) {
+    return (fieldNumber << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
   }
 
   @CheckForNull
-  public synchronized Collection<LocalIssueTrackable> read(String key) throws IOException {
-    Optional<Sonarlint.Issues> issues = store.read(key);
-    return issues.map(IssuePersistence::transform).orElse(null);
+  private ByteBuffer readStoredBytes(String key) throws IOException {
+    PersistentStore<String, Sonarlint.Issues> current = store;
+    if (current != null && current.supportsConcurrentReads()) {
+      // lock-free, readers don't wait for the writer thread nor for each other
+      try {
+        return current.readBytes(key);
+      } catch (ClosedChannelException e) {
+        // the store was closed meanwhile, it will be reopened
+      }
+    }
+    synchronized (storeLock) {
+      return getStore().readBytes(key);
+    }
+  }
+
+  /**
+   * Splits a serialized {@link Sonarlint.Issues} into its issues, without decoding them: each issue is decoded the first time one
+   * of its fields is accessed. When the buffer is a memory mapping, the issues reference it without copying.
+   */
+  static Collection<LocalIssueTrackable> decode(ByteBuffer bytes) throws IOException {
+    CodedInputStream input = CodedInputStream.newInstance(bytes);
+    input.enableAliasing(true);
+    List<LocalIssueTrackable> issues = new ArrayList<>();
+    // filled before any issue is decoded
+    List<String> strings = new ArrayList<>();
+    while (true) {
+      int tag = input.readTag();
+      if (tag == 0) {
+        return issues;
+      }
+      if (tag == ISSUE_TAG) {
+        issues.add(new LocalIssueTrackable(input.readBytes(), strings));
+      } else if (tag == STRING_TAG) {
+        strings.add(StringInterner.intern(input.readStringRequireUtf8()));
+      } else if (!input.skipField(tag)) {
+        return issues;
+      }
+    }
+  }
+
+  /**
+   * Waits until all the writes queued so far are on disk.
+   */
+  public void flush() {
+    long start = System.currentTimeMillis();
+    synchronized (this) {
+      while (!pendingWrites.isEmpty()) {
+        scheduleWriter();
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          LOGGER.warn("Interrupted while waiting for issues to be persisted");
+          return;
+        }
+      }
+      LOGGER.debug(String.format("Issue store flushed in %dms (coalesced writes: %d, failed writes: %d)",
+        System.currentTimeMillis() - start, coalescedWrites, failedWrites));
+    }
   }
 
   private Path getBasePath() {
+    if (useLegacyStore()) {
+      return getLegacyBasePath();
+    }
+    return getSonarLintDir().resolve("issues");
+  }
+
+  private Path getLegacyBasePath() {
+    return getSonarLintDir().resolve("issuestore");
+  }
+
+  private Path getSonarLintDir() {
     Path ideaDir = new File(myProject.getBasePath(), Project.DIRECTORY_STORE_FOLDER).toPath();
-    return ideaDir.resolve("sonarlint").resolve("issuestore");
+    return ideaDir.resolve("sonarlint");
+  }
+
+  private static boolean useLegacyStore() {
+    return "true".equals(System.getProperty(LEGACY_STORE_PROPERTY));
   }
 
-  public synchronized void clean() {
-    store.deleteInvalid();
+  /**
+   * Deletes the entries of files that don't exist anymore.
+   * Keys are validated without holding the store, and deletions are queued like any other write.
+   *
+   * @return the number of entries deleted
+   */
+  public int clean(ProgressIndicator indicator) {
+    Collection<String> keys;
+    synchronized (storeLock) {
+      keys = getStore().keys();
+    }
+    int deleted = 0;
+    for (String key : keys) {
+      indicator.checkCanceled();
+      if (!validator.apply(key)) {
+        clear(key);
+        deleted++;
+      }
+    }
+    LOGGER.debug(String.format("%d entries removed from the store", deleted));
+    return deleted;
+  }
+
+  public void clear() {
+    synchronized (this) {
+      pendingWrites.clear();
+      notifyAll();
+    }
+    synchronized (storeLock) {
+      closeStore();
+      FileUtils.deleteRecursively(storeBasePath);
+    }
+  }
+
+  /**
+   * Called when the project is closed. Pending writes are done before releasing the store.
+   */
+  @Override
+  public void dispose() {
+    flush();
+    ioExecutor.shutdown();
+    synchronized (storeLock) {
+      closeStore();
+    }
   }
 
-  public synchronized void clear() {
-    FileUtils.deleteRecursively(storeBasePath);
-    FileUtils.mkdirs(storeBasePath);
+  @GuardedBy("storeLock")
+  private void closeStore() {
+    if (store == null) {
+      return;
+    }
+    try {
+      store.close();
+    } catch (IOException e) {
+      LOGGER.warn("Failed to close the local issue store", e);
+    }
+    store = null;
+  }
+
+  synchronized long coalescedWrites() {
+    return coalescedWrites;
+  }
+
+  synchronized long failedWrites() {
+    return failedWrites;
+  }
+
+  private synchronized void enqueue(String key, PendingWrite write) {
+    while (pendingWrites.size() >= MAX_PENDING_WRITES && !pendingWrites.containsKey(key)) {
+      scheduleWriter();
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    // re-insert to keep the order of requests
+    if (pendingWrites.remove(key) != null) {
+      coalescedWrites++;
+    }
+    pendingWrites.put(key, write);
+    scheduleWriter();
+  }
+
+  @GuardedBy("this")
+  private void scheduleWriter() {
+    if (!writerScheduled && !pendingWrites.isEmpty()) {
+      writerScheduled = true;
+      ioExecutor.submit(this::writePending);
+    }
+  }
+
+  /**
+   * Runs in the writer thread, which is the only one to write, so the order of writes is kept.
+   */
+  private void writePending() {
+    while (true) {
+      PendingWrite next;
+      synchronized (this) {
+        Iterator<PendingWrite> it = pendingWrites.values().iterator();
+        if (!it.hasNext()) {
+          writerScheduled = false;
+          notifyAll();
+          return;
+        }
+        next = it.next();
+      }
+      boolean success = write(next);
+      synchronized (this) {
+        // it may have been replaced meanwhile by a newer write
+        pendingWrites.remove(next.key, next);
+        if (!success) {
+          failedWrites++;
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  private boolean write(PendingWrite pending) {
+    try {
+      synchronized (storeLock) {
+        if (!isPending(pending)) {
+          // replaced by a newer write, or dropped by clear()
+          return true;
+        }
+        if (pending.issues != null) {
+          getStore().write(pending.key, pending.issues);
+        } else {
+          getStore().delete(pending.key);
+        }
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Failed to persist issues for " + pending.key, e);
+      return false;
+    }
+  }
+
+  private synchronized boolean isPending(PendingWrite pending) {
+    return pendingWrites.get(pending.key) == pending;
+  }
+
+  private static class PendingWrite {
+    private final String key;
+    @Nullable
+    private final Sonarlint.Issues issues;
+
+    private PendingWrite(String key, @Nullable Sonarlint.Issues issues) {
+      this.key = key;
+      this.issues = issues;
+    }
   }
 
   private static Collection<LocalIssueTrackable> transform(Sonarlint.Issues protoIssues) {
+    List<String> strings = protoIssues.getStringsList().stream()
+      .map(StringInterner::intern)
+      .collect(Collectors.toList());
     return protoIssues.getIssueList().stream()
-      .map(IssuePersistence::transform)
+      .map(issue -> new LocalIssueTrackable(issue, strings))
       .collect(Collectors.toList());
   }
 
+  /**
+   * Rule keys, messages and assignees are written once in the string table of the file, and referenced by the issues.
+   */
   private static Sonarlint.Issues transform(Collection<? extends Trackable> localIssues) {
     Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder();
+    Map<String, Integer> stringRefs = new LinkedHashMap<>();
     localIssues.stream()
-      .map(IssuePersistence::transform)
+      .map(issue -> transform(issue, stringRefs))
       .forEach(builder::addIssue);
+    builder.addAllStrings(stringRefs.keySet());
 
     return builder.build();
   }
 
-  private static LocalIssueTrackable transform(Sonarlint.Issues.Issue issue) {
-    return new LocalIssueTrackable(issue);
-  }
-
-  @CheckForNull
-  private static Sonarlint.Issues.Issue transform(Trackable localIssue) {
+  private static Sonarlint.Issues.Issue transform(Trackable localIssue, Map<String, Integer> stringRefs) {
     Sonarlint.Issues.Issue.Builder builder = Sonarlint.Issues.Issue.newBuilder()
-      .setRuleKey(localIssue.getRuleKey())
-      .setMessage(localIssue.getMessage())
+      .setRuleKeyRef(ref(localIssue.getRuleKey(), stringRefs))
+      .setMessageRef(ref(localIssue.getMessage(), stringRefs))
       .setResolved(localIssue.isResolved());
 
-    if (localIssue.getAssignee() != null) {
-      builder.setAssignee(localIssue.getAssignee());
+    if (localIssue.getAssignee() != null && !localIssue.getAssignee().isEmpty()) {
+      builder.setAssigneeRef(ref(localIssue.getAssignee(), stringRefs));
     }
     if (localIssue.getCreationDate() != null) {
       builder.setCreationDate(localIssue.getCreationDate());
@@ -142,4 +523,8 @@ public class IssuePersistence {
     }
     return builder.build();
   }
+
+  private static int ref(String str, Map<String, Integer> stringRefs) {
+    return stringRefs.computeIfAbsent(str, s -> stringRefs.size() + 1);
+  }
 }
@@ -22,121 +22,331 @@ package org.sonarlint.intellij.issue.persistence;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
-import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.issue.LiveIssue;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
+/**
+ * Keeps the issues of the most recently used files in memory.
+ * The cache is bounded by the estimated memory retained by the issues, see {@link #weigh(Collection)}, and by a maximum
+ * number of files. When a bound is exceeded, the entries accessed the longest time ago are removed and then queued to be persisted.
+ * Issues are converted and queued outside of the monitor of the cache, since it needs a read action and may wait for the disk when
+ * too many writes are pending: readers of the cache never wait for the persistence.
+ */
 public class LiveIssueCache {
   private static final Logger LOGGER = Logger.getInstance(LiveIssueCache.class);
   static final int DEFAULT_MAX_ENTRIES = 10_000;
-  private final Map<VirtualFile, Collection<LiveIssue>> cache;
+
+  // rough estimations, in bytes, of the memory retained by each part of an entry
+  static final int ENTRY_OVERHEAD = 128;
+  static final int ISSUE_OVERHEAD = 160;
+  static final int RANGE_MARKER_OVERHEAD = 96;
+  static final int FLOW_OVERHEAD = 48;
+  static final int LOCATION_OVERHEAD = 32;
+  static final int STRING_OVERHEAD = 40;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<VirtualFile, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
   private final Project project;
   private final int maxEntries;
+  private final LongSupplier maxWeight;
+
+  /**
+   * Entries evicted but not queued to be persisted yet. They are still returned by {@link #getLive(VirtualFile)}, so that they are
+   * not read from the store before being written to it.
+   */
+  @GuardedBy("this")
+  private final Map<VirtualFile, Entry> evicted = new HashMap<>();
+  // keeps the order of the writes and deletions queued for a file, when they are queued outside of the monitor of the cache
+  private final Object persistLock = new Object();
+
+  @GuardedBy("this")
+  private long weight = 0;
+  @GuardedBy("this")
+  private long hitCount = 0;
+  @GuardedBy("this")
+  private long missCount = 0;
+  @GuardedBy("this")
+  private long evictionCount = 0;
 
   public LiveIssueCache(Project project) {
-    this(project, DEFAULT_MAX_ENTRIES);
+    this(project, DEFAULT_MAX_ENTRIES,
+      () -> SonarLintUtils.getService(project, SonarLintProjectSettings.class).getIssueCacheMaxSizeMb() * 1024L * 1024L);
   }
 
-  LiveIssueCache(Project project, int maxEntries) {
+  LiveIssueCache(Project project, int maxEntries, LongSupplier maxWeight) {
     this.project = project;
     this.maxEntries = maxEntries;
-    this.cache = new LimitedSizeLinkedHashMap();
+    this.maxWeight = maxWeight;
   }
 
   /**
-   * Keeps a maximum number of entries in the map. On insertion, if the limit is passed, the entry accessed the longest time ago
-   * is flushed into cache and removed from the map.
+   * Read issues from a file that are cached. On cache miss, it won't fallback to the persistent store.
    */
-  private class LimitedSizeLinkedHashMap extends LinkedHashMap<VirtualFile, Collection<LiveIssue>> {
-    LimitedSizeLinkedHashMap() {
-      super(maxEntries, 0.75f, true);
+  @CheckForNull
+  public synchronized Collection<LiveIssue> getLive(VirtualFile virtualFile) {
+    Entry entry = cache.get(virtualFile);
+    if (entry == null) {
+      entry = evicted.get(virtualFile);
     }
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.issues;
+  }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<VirtualFile, Collection<LiveIssue>> eldest) {
-      if (size() <= maxEntries) {
-        return false;
-      }
-
-      if (eldest.getKey().isValid()) {
-        String key = createKey(eldest.getKey());
-        try {
-          LOGGER.debug("Persisting issues for " + key);
-          IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
-          store.save(key, eldest.getValue());
-        } catch (IOException e) {
-          throw new IllegalStateException(String.format("Error persisting issues for %s", key), e);
-        }
+  public void save(VirtualFile virtualFile, Collection<LiveIssue> issues) {
+    List<Map.Entry<VirtualFile, Entry>> toPersist;
+    synchronized (this) {
+      Entry entry = new Entry(Collections.unmodifiableCollection(issues), weigh(issues));
+      Entry previous = cache.put(virtualFile, entry);
+      if (previous != null) {
+        weight -= previous.weight;
       }
-      return true;
+      weight += entry.weight;
+      // superseded by the new issues
+      evicted.remove(virtualFile);
+      toPersist = evictIfNeeded();
     }
+    persistEvicted(toPersist);
   }
 
   /**
-   * Read issues from a file that are cached. On cache miss, it won't fallback to the persistent store.
+   * Removes the entries accessed the longest time ago until the cache is within its bounds.
+   * The most recent entry is always kept, even if it exceeds the bounds on its own.
+   *
+   * @return the removed entries, to be persisted with {@link #persistEvicted(List)} once the monitor is released
    */
-  @CheckForNull
-  public synchronized Collection<LiveIssue> getLive(VirtualFile virtualFile) {
-    return cache.get(virtualFile);
+  @GuardedBy("this")
+  private List<Map.Entry<VirtualFile, Entry>> evictIfNeeded() {
+    long max = maxWeight.getAsLong();
+    List<Map.Entry<VirtualFile, Entry>> removed = new ArrayList<>();
+    Iterator<Map.Entry<VirtualFile, Entry>> it = cache.entrySet().iterator();
+    while ((weight > max || cache.size() > maxEntries) && cache.size() > 1) {
+      Map.Entry<VirtualFile, Entry> eldest = it.next();
+      it.remove();
+      weight -= eldest.getValue().weight;
+      evictionCount++;
+      LOGGER.debug("Evicting issues of " + eldest.getKey().getPath());
+      evicted.put(eldest.getKey(), eldest.getValue());
+      removed.add(new AbstractMap.SimpleImmutableEntry<>(eldest.getKey(), eldest.getValue()));
+    }
+    return removed;
   }
 
-  public synchronized void save(VirtualFile virtualFile, Collection<LiveIssue> issues) {
-    cache.put(virtualFile, Collections.unmodifiableCollection(issues));
+  private void persistEvicted(List<Map.Entry<VirtualFile, Entry>> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    synchronized (persistLock) {
+      for (Map.Entry<VirtualFile, Entry> e : entries) {
+        synchronized (this) {
+          // skipped if the file was cleared or saved again meanwhile
+          if (!evicted.remove(e.getKey(), e.getValue())) {
+            continue;
+          }
+        }
+        persist(e.getKey(), e.getValue().issues);
+      }
+    }
+  }
+
+  private void persist(VirtualFile virtualFile, Collection<LiveIssue> issues) {
+    if (!virtualFile.isValid()) {
+      return;
+    }
+    String key = createKey(virtualFile);
+    if (key != null) {
+      IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
+      store.save(key, issues);
+    }
   }
 
   /**
-   * Flushes all cached entries to disk.
-   * It does not clear the cache.
+   * Flushes all cached entries to disk, and waits until they are written.
+   * It does not clear the cache. The entries are persisted and waited for outside of the monitor of the cache, so that it remains
+   * usable meanwhile.
    */
-  public synchronized void flushAll() {
+  public void flushAll() {
     LOGGER.debug("Persisting all issues");
-    cache.forEach((virtualFile, trackableIssues) -> {
-      if (virtualFile.isValid()) {
-        String key = createKey(virtualFile);
-        try {
-          IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
-          store.save(key, trackableIssues);
-        } catch (IOException e) {
-          throw new IllegalStateException("Failed to flush cache", e);
+    IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
+    List<Map.Entry<VirtualFile, Entry>> toPersist;
+    synchronized (this) {
+      toPersist = new ArrayList<>(cache.size());
+      cache.forEach((virtualFile, entry) -> toPersist.add(new AbstractMap.SimpleImmutableEntry<>(virtualFile, entry)));
+    }
+    synchronized (persistLock) {
+      for (Map.Entry<VirtualFile, Entry> e : toPersist) {
+        if (contains(e.getKey())) {
+          persist(e.getKey(), e.getValue().issues);
         }
       }
-    });
+    }
+    persistEvicted(evictedEntries());
+    store.flush();
   }
 
+  private synchronized List<Map.Entry<VirtualFile, Entry>> evictedEntries() {
+    return evicted.entrySet().stream()
+      .map(e -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()))
+      .collect(Collectors.toList());
+  }
 
   /**
    * Clear cache and underlying persistent store
    */
-  public synchronized void clear() {
-    IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
-    store.clear();
-    cache.clear();
+  public void clear() {
+    synchronized (persistLock) {
+      synchronized (this) {
+        cache.clear();
+        evicted.clear();
+        weight = 0;
+      }
+      SonarLintUtils.getService(project, IssuePersistence.class).clear();
+    }
   }
 
-  public synchronized void clear(VirtualFile virtualFile) {
+  public void clear(VirtualFile virtualFile) {
     String key = createKey(virtualFile);
-    if (key != null) {
-      cache.remove(virtualFile);
-      try {
-        IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
-        store.clear(key);
-      } catch (IOException e) {
-        throw new IllegalStateException("Failed to clear cache", e);
+    if (key == null) {
+      return;
+    }
+    synchronized (this) {
+      Entry removed = cache.remove(virtualFile);
+      if (removed != null) {
+        weight -= removed.weight;
       }
+      evicted.remove(virtualFile);
+    }
+    synchronized (persistLock) {
+      SonarLintUtils.getService(project, IssuePersistence.class).clear(key);
     }
   }
 
   public synchronized boolean contains(VirtualFile virtualFile) {
-    return getLive(virtualFile) != null;
+    return cache.containsKey(virtualFile);
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(cache.size(), weight, maxWeight.getAsLong(), hitCount, missCount, evictionCount);
   }
 
   private String createKey(VirtualFile virtualFile) {
     return SonarLintAppUtils.getRelativePathForAnalysis(this.project, virtualFile);
   }
+
+  /**
+   * Estimates the memory retained by the issues of a file: the issues themselves, their messages, their flows and the
+   * range markers of the issues and of all the flow locations. The PSI file is shared with the IDE and is not accounted for.
+   */
+  static long weigh(Collection<LiveIssue> issues) {
+    long total = ENTRY_OVERHEAD;
+    for (LiveIssue issue : issues) {
+      total += ISSUE_OVERHEAD + weigh(issue.getMessage());
+      if (issue.getRange() != null) {
+        total += RANGE_MARKER_OVERHEAD;
+      }
+      List<LiveIssue.Flow> flows = issue.flows();
+      if (flows == null) {
+        continue;
+      }
+      for (LiveIssue.Flow flow : flows) {
+        total += FLOW_OVERHEAD;
+        for (LiveIssue.IssueLocation location : flow.locations()) {
+          total += LOCATION_OVERHEAD + RANGE_MARKER_OVERHEAD + weigh(location.message());
+        }
+      }
+    }
+    return total;
+  }
+
+  private static long weigh(@Nullable String str) {
+    return str == null ? 0 : (STRING_OVERHEAD + 2L * str.length());
+  }
+
+  private static class Entry {
+    private final Collection<LiveIssue> issues;
+    private final long weight;
+
+    private Entry(Collection<LiveIssue> issues, long weight) {
+      this.issues = issues;
+      this.weight = weight;
+    }
+  }
+
+  public static class Stats {
+    private final int size;
+    private final long weight;
+    private final long maxWeight;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+
+    Stats(int size, long weight, long maxWeight, long hitCount, long missCount, long evictionCount) {
+      this.size = size;
+      this.weight = weight;
+      this.maxWeight = maxWeight;
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+    }
+
+    /**
+     * Number of files in the cache
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Estimated memory retained by the cache, in bytes
+     */
+    public long weight() {
+      return weight;
+    }
+
+    public long maxWeight() {
+      return maxWeight;
+    }
+
+    public long hitCount() {
+      return hitCount;
+    }
+
+    public long missCount() {
+      return missCount;
+    }
+
+    public double hitRatio() {
+      long requests = hitCount + missCount;
+      return requests == 0 ? 1.0 : ((double) hitCount / requests);
+    }
+
+    public long evictionCount() {
+      return evictionCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d files, %dKB of %dKB, hit ratio %.2f, %d evictions",
+        size, weight / 1024, maxWeight / 1024, hitRatio(), evictionCount);
+    }
+  }
 }
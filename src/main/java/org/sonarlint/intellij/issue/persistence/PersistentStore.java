@@ -0,0 +1,55 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import javax.annotation.CheckForNull;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.ObjectStore;
+
+/**
+ * Backend of the local issue store.
+ * Implementations are not required to be thread-safe.
+ */
+interface PersistentStore<K, V> extends ObjectStore<K, V>, Closeable {
+  boolean contains(K key);
+
+  /**
+   * Reads the serialized value of a key, without decoding it.
+   */
+  @CheckForNull
+  ByteBuffer readBytes(K key) throws IOException;
+
+  /**
+   * Whether {@link #readBytes(Object)} and {@link #contains(Object)} can be called concurrently with any other method.
+   */
+  default boolean supportsConcurrentReads() {
+    return false;
+  }
+
+  Collection<K> keys();
+
+  /**
+   * Deletes all entries that are no longer valid.
+   */
+  void deleteInvalid();
+}
@@ -0,0 +1,109 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to strictly positive int values, used to avoid boxing and key objects while
+ * tracking. A value of 0 means that the key is absent.
+ */
+final class LongIntMap {
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  LongIntMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * @return the value associated to the key, or 0 if there is none
+   */
+  int get(long key) {
+    int idx = index(key);
+    while (values[idx] != 0) {
+      if (keys[idx] == key) {
+        return values[idx];
+      }
+      idx = (idx + 1) & mask;
+    }
+    return 0;
+  }
+
+  void put(long key, int value) {
+    if (value <= 0) {
+      throw new IllegalArgumentException("Values must be strictly positive: " + value);
+    }
+    int idx = index(key);
+    while (values[idx] != 0) {
+      if (keys[idx] == key) {
+        values[idx] = value;
+        return;
+      }
+      idx = (idx + 1) & mask;
+    }
+    keys[idx] = key;
+    values[idx] = value;
+    size++;
+    if (size * 2 > values.length) {
+      rehash();
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    Arrays.fill(values, 0);
+    size = 0;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldValues.length * 2);
+    size = 0;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != 0) {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  private int index(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
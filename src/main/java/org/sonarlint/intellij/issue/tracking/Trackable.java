@@ -39,6 +39,15 @@ public interface Trackable {
   @CheckForNull
   Integer getLineHash();
 
+  /**
+   * The offset of the start of the issue in its line, starting with 0. Null means that it's unknown,
+   * which is the case of issues that were persisted or that come from the server.
+   */
+  @CheckForNull
+  default Integer getColumn() {
+    return null;
+  }
+
   String getRuleKey();
 
   @CheckForNull
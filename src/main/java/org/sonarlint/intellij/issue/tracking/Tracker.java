@@ -20,391 +20,293 @@
 package org.sonarlint.intellij.issue.tracking;
 
 import com.intellij.openapi.application.ApplicationManager;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
+/**
+ * Matches raw issues with base issues in several passes, each one with a less restrictive search key.
+ * The fields of the issues are read once and interned to ints, so that search keys are packed in primitive longs, and only the issues
+ * that are still unmatched are visited by each pass.
+ * When several bases share the search key of a raw issue (typically many issues of the same rule on the same line), the best
+ * candidate is selected based on message, text range hash and column. Only the first {@link #MAX_CANDIDATES} candidates are
+ * compared, to keep the cost linear on pathological files.
+ */
 public class Tracker<RAW extends Trackable, BASE extends Trackable> {
+  private static final long NO_KEY = -1L;
+  static final int MAX_CANDIDATES = 16;
+  private static final int SAME_MESSAGE_SCORE = 4;
+  private static final int SAME_TEXT_RANGE_HASH_SCORE = 2;
+  private static final int SAME_COLUMN_SCORE = 1;
+  private static final int MAX_SCORE = SAME_MESSAGE_SCORE + SAME_TEXT_RANGE_HASH_SCORE + SAME_COLUMN_SCORE;
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
     return ApplicationManager.getApplication().<Tracking<RAW, BASE>>runReadAction(() -> {
       Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+      if (tracking.isComplete() || tracking.bases().isEmpty()) {
+        return tracking;
+      }
+
+      Interner interner = new Interner(tracking.raws().size() + tracking.bases().size());
+      Fields rawFields = new Fields(tracking.raws(), interner);
+      Fields baseFields = new Fields(tracking.bases(), interner);
+      Matcher matcher = new Matcher(tracking.bases().size());
 
       // 1. match issues with same rule, same line and same text range hash, but not necessarily with same message
-      match(tracking, LineAndTextRangeHashKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.LINE_AND_TEXT_RANGE_HASH);
 
       // 2. match issues with same rule, same message and same text range hash
-      match(tracking, TextRangeHashAndMessageKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.TEXT_RANGE_HASH_AND_MESSAGE);
 
       // 3. match issues with same rule, same line and same message
-      match(tracking, LineAndMessageKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.LINE_AND_MESSAGE);
 
       // 4. match issues with same rule and same text range hash but different line and different message.
       // See SONAR-2812
-      match(tracking, TextRangeHashKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.TEXT_RANGE_HASH);
 
       // 5. match issues with same rule, same line and same line hash
-      match(tracking, LineAndLineHashKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.LINE_AND_LINE_HASH);
 
       // 6. match issues with same rule and same same line hash
-      match(tracking, LineHashKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.LINE_HASH);
 
       // 7. match issues with same server issue key
-      match(tracking, ServerIssueSearchKeyFactory.INSTANCE);
+      matcher.match(tracking, rawFields, baseFields, SearchKey.SERVER_ISSUE_KEY);
 
       return tracking;
     });
   }
 
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
-    if (tracking.isComplete()) {
-      return;
+  /**
+   * Groups the unmatched bases per search key, in buckets that keep their original order, and matches each unmatched raw with the
+   * best base of its bucket. Buffers are reused by all passes.
+   */
+  private static class Matcher {
+    private final LongIntMap buckets;
+    private final int[] head;
+    private final int[] tail;
+    private final int[] next;
+
+    Matcher(int numBases) {
+      buckets = new LongIntMap(numBases);
+      head = new int[numBases];
+      tail = new int[numBases];
+      next = new int[numBases];
     }
 
-    Map<SearchKey, List<BASE>> baseSearch = new HashMap<>();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      SearchKey searchKey = factory.apply(base);
-      if (!baseSearch.containsKey(searchKey)) {
-        baseSearch.put(searchKey, new ArrayList<>());
+    <RAW extends Trackable, BASE extends Trackable> void match(Tracking<RAW, BASE> tracking, Fields rawFields, Fields baseFields,
+      SearchKey searchKey) {
+      if (tracking.isComplete() || tracking.unmatchedBaseCount() == 0) {
+        return;
       }
-      baseSearch.get(searchKey).add(base);
-    }
 
-    for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.apply(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (bases != null && !bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
-        tracking.match(raw, match);
-        baseSearch.get(rawKey).remove(match);
+      buckets.clear();
+      int numBuckets = 0;
+      int[] bases = tracking.unmatchedBaseIndexes();
+      for (int i = 0; i < tracking.unmatchedBaseCount(); i++) {
+        int base = bases[i];
+        long key = searchKey.of(baseFields, base);
+        if (key == NO_KEY) {
+          continue;
+        }
+        int bucket = buckets.get(key) - 1;
+        if (bucket < 0) {
+          bucket = numBuckets++;
+          buckets.put(key, bucket + 1);
+          head[bucket] = base;
+        } else {
+          next[tail[bucket]] = base;
+        }
+        tail[bucket] = base;
+        next[base] = -1;
       }
-    }
-  }
-
-  private interface SearchKey {
-  }
-
-  @FunctionalInterface
-  private interface SearchKeyFactory extends Function<Trackable, SearchKey> {
-    @Override
-    SearchKey apply(Trackable trackable);
-  }
 
-  private static class LineAndTextRangeHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer textRangeHash;
-    private final Integer line;
-
-    LineAndTextRangeHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.textRangeHash = trackable.getTextRangeHash();
-    }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      int[] raws = tracking.unmatchedRawIndexes();
+      for (int i = 0; i < tracking.unmatchedRawCount(); i++) {
+        int raw = raws[i];
+        long key = searchKey.of(rawFields, raw);
+        int bucket = key != NO_KEY ? (buckets.get(key) - 1) : -1;
+        if (bucket >= 0 && head[bucket] >= 0) {
+          tracking.match(raw, takeBestCandidate(bucket, rawFields, raw, baseFields));
+        }
       }
-      LineAndTextRangeHashKey that = (LineAndTextRangeHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(textRangeHash, that.textRangeHash)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum LineAndTextRangeHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndTextRangeHashKey(t);
-    }
-  }
-
-  private static class LineAndLineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer line;
-    private final Integer lineHash;
-
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = trackable.getLineHash();
+      tracking.compact();
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    /**
+     * Removes from the bucket and returns the candidate with the highest score. On equal scores, the first one wins.
+     */
+    private int takeBestCandidate(int bucket, Fields rawFields, int raw, Fields baseFields) {
+      int best = head[bucket];
+      int bestScore = score(rawFields, raw, baseFields, best);
+      int previousOfBest = -1;
+      int previous = best;
+      int candidate = next[best];
+      for (int visited = 1; candidate >= 0 && visited < MAX_CANDIDATES && bestScore < MAX_SCORE; visited++) {
+        int candidateScore = score(rawFields, raw, baseFields, candidate);
+        if (candidateScore > bestScore) {
+          best = candidate;
+          bestScore = candidateScore;
+          previousOfBest = previous;
+        }
+        previous = candidate;
+        candidate = next[candidate];
       }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
-      }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndLineHashKey(t);
-    }
-  }
 
-  private static class LineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer lineHash;
-
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = trackable.getLineHash();
+      if (previousOfBest < 0) {
+        head[bucket] = next[best];
+      } else {
+        next[previousOfBest] = next[best];
+      }
+      return best;
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    private static int score(Fields rawFields, int raw, Fields baseFields, int base) {
+      int score = 0;
+      if (rawFields.message[raw] == baseFields.message[base]) {
+        score += SAME_MESSAGE_SCORE;
       }
-      if (o == null) {
-        return false;
+      if (rawFields.textRangeHash[raw] == baseFields.textRangeHash[base]) {
+        score += SAME_TEXT_RANGE_HASH_SCORE;
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      if (rawFields.column[raw] >= 0 && rawFields.column[raw] == baseFields.column[base]) {
+        score += SAME_COLUMN_SCORE;
       }
-      LineHashKey that = (LineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineHashKey(t);
+      return score;
     }
   }
 
-  private static class TextRangeHashAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer textRangeHash;
-
-    TextRangeHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.textRangeHash = trackable.getTextRangeHash();
-    }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+  private enum SearchKey {
+    LINE_AND_TEXT_RANGE_HASH {
+      @Override
+      long of(Fields f, int i) {
+        return pack(f.interner.pair(f.rule[i], f.line[i]), f.textRangeHash[i]);
       }
-      if (o == null) {
-        return false;
+    },
+    TEXT_RANGE_HASH_AND_MESSAGE {
+      @Override
+      long of(Fields f, int i) {
+        return pack(f.interner.pair(f.rule[i], f.message[i]), f.textRangeHash[i]);
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+    },
+    LINE_AND_MESSAGE {
+      @Override
+      long of(Fields f, int i) {
+        return pack(f.interner.pair(f.rule[i], f.line[i]), f.message[i]);
       }
-      TextRangeHashAndMessageKey that = (TextRangeHashAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(textRangeHash, that.textRangeHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      return result;
-    }
-  }
-
-  private enum TextRangeHashAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new TextRangeHashAndMessageKey(t);
-    }
-  }
-
-  private static class LineAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer line;
-
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
-    }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    },
+    TEXT_RANGE_HASH {
+      @Override
+      long of(Fields f, int i) {
+        return pack(f.rule[i], f.textRangeHash[i]);
       }
-      if (o == null) {
-        return false;
+    },
+    LINE_AND_LINE_HASH {
+      @Override
+      long of(Fields f, int i) {
+        return pack(f.interner.pair(f.rule[i], f.line[i]), f.lineHash[i]);
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+    },
+    LINE_HASH {
+      @Override
+      long of(Fields f, int i) {
+        return pack(f.rule[i], f.lineHash[i]);
       }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
-    }
-  }
+    },
+    SERVER_ISSUE_KEY {
+      @Override
+      long of(Fields f, int i) {
+        // issues without server issue key never match
+        return f.serverIssueKey[i] != 0 ? f.serverIssueKey[i] : NO_KEY;
+      }
+    };
 
-  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+    /**
+     * @return the search key of the i-th trackable, or {@link #NO_KEY} if it can't be matched by this key
+     */
+    abstract long of(Fields fields, int i);
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndMessageKey(t);
+    private static long pack(int id1, int id2) {
+      return ((long) id1 << 32) | (id2 & 0xFFFFFFFFL);
     }
   }
 
-  private static class TextRangeHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer textRangeHash;
-
-    TextRangeHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.textRangeHash = trackable.getTextRangeHash();
-    }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
+  /**
+   * The fields of the trackables used in search keys, read once and interned.
+   */
+  private static class Fields {
+    private final Interner interner;
+    private final int[] rule;
+    private final int[] line;
+    private final int[] textRangeHash;
+    private final int[] lineHash;
+    private final int[] message;
+    private final int[] serverIssueKey;
+    // not interned, -1 when unknown
+    private final int[] column;
+
+    Fields(List<? extends Trackable> trackables, Interner interner) {
+      this.interner = interner;
+      int size = trackables.size();
+      rule = new int[size];
+      line = new int[size];
+      textRangeHash = new int[size];
+      lineHash = new int[size];
+      message = new int[size];
+      serverIssueKey = new int[size];
+      column = new int[size];
+      for (int i = 0; i < size; i++) {
+        Trackable t = trackables.get(i);
+        rule[i] = interner.intern(t.getRuleKey());
+        line[i] = interner.intern(t.getLine());
+        textRangeHash[i] = interner.intern(t.getTextRangeHash());
+        lineHash[i] = interner.intern(t.getLineHash());
+        message[i] = interner.intern(t.getMessage());
+        String key = t.getServerIssueKey();
+        serverIssueKey[i] = SonarLintUtils.isBlank(key) ? 0 : interner.intern(key);
+        Integer col = t.getColumn();
+        column[i] = col != null ? col : -1;
       }
-      TextRangeHashKey that = (TextRangeHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(textRangeHash, that.textRangeHash)
-        && ruleKey.equals(that.ruleKey);
-    }
-
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      return result;
     }
   }
 
-  private enum TextRangeHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new TextRangeHashKey(t);
+  /**
+   * Gives a strictly positive id to each distinct value, including null. Ids are only compared for the same field.
+   */
+  private static class Interner {
+    private static final long NULL_VALUE = Long.MIN_VALUE;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final LongIntMap values;
+    private final LongIntMap pairs;
+    private int nextId = 1;
+
+    Interner(int expectedSize) {
+      values = new LongIntMap(expectedSize);
+      pairs = new LongIntMap(expectedSize);
     }
-  }
-
-  private static class ServerIssueSearchKey implements SearchKey {
-    private final String serverIssueKey;
 
-    ServerIssueSearchKey(Trackable trackable) {
-      serverIssueKey = trackable.getServerIssueKey();
+    int intern(@Nullable String value) {
+      return strings.computeIfAbsent(value, v -> nextId++);
     }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
-      }
-
-      ServerIssueSearchKey that = (ServerIssueSearchKey) o;
-
-      return !SonarLintUtils.isBlank(serverIssueKey) && !SonarLintUtils.isBlank(that.serverIssueKey) && serverIssueKey.equals(that.serverIssueKey);
+    int intern(@Nullable Integer value) {
+      return intern(values, value != null ? value : NULL_VALUE);
     }
 
-    @Override
-    public int hashCode() {
-      return serverIssueKey != null ? serverIssueKey.hashCode() : 0;
+    int pair(int id1, int id2) {
+      return intern(pairs, SearchKey.pack(id1, id2));
     }
-  }
 
-  private enum ServerIssueSearchKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable trackable) {
-      return new ServerIssueSearchKey(trackable);
+    private int intern(LongIntMap map, long key) {
+      int id = map.get(key);
+      if (id == 0) {
+        id = nextId++;
+        map.put(key, id);
+      }
+      return id;
     }
   }
 }
@@ -20,7 +20,6 @@
 package org.sonarlint.intellij.issue.tracking;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,24 +32,50 @@ public class Tracking<RAW extends Trackable, BASE extends Trackable> {
   private final IdentityHashMap<RAW, BASE> rawToBase = new IdentityHashMap<>();
   private final IdentityHashMap<BASE, RAW> baseToRaw = new IdentityHashMap<>();
 
-  private final Collection<RAW> raws;
-  private final Collection<BASE> bases;
+  private final List<RAW> raws;
+  private final List<BASE> bases;
+
+  /**
+   * Indexes of the raws and bases that are not matched yet, in their original order. Matched entries are only removed when
+   * {@link #compact()} is called, so that they can be iterated while matching.
+   */
+  private final int[] unmatchedRaws;
+  private final int[] unmatchedBases;
+  private final boolean[] rawMatched;
+  private final boolean[] baseMatched;
+  private int unmatchedRawCount;
+  private int unmatchedBaseCount;
 
   public Tracking(Input<RAW> rawInput, Input<BASE> baseInput) {
-    this.raws = rawInput.getIssues();
-    this.bases = baseInput.getIssues();
+    this.raws = new ArrayList<>(rawInput.getIssues());
+    this.bases = new ArrayList<>(baseInput.getIssues());
+    this.unmatchedRaws = identity(raws.size());
+    this.unmatchedBases = identity(bases.size());
+    this.rawMatched = new boolean[raws.size()];
+    this.baseMatched = new boolean[bases.size()];
+    this.unmatchedRawCount = raws.size();
+    this.unmatchedBaseCount = bases.size();
+  }
+
+  private static int[] identity(int size) {
+    int[] array = new int[size];
+    for (int i = 0; i < size; i++) {
+      array[i] = i;
+    }
+    return array;
   }
 
   /**
    * Returns an Iterable to be traversed when matching issues. That means
-   * that the traversal does not fail if method {@link #match(Trackable, Trackable)}
+   * that the traversal does not fail if method {@link #match(int, int)}
    * is called.
    */
   public Iterable<RAW> getUnmatchedRaws() {
-    List<RAW> result = new ArrayList<>();
-    for (RAW r : raws) {
-      if (!rawToBase.containsKey(r)) {
-        result.add(r);
+    List<RAW> result = new ArrayList<>(unmatchedRawCount);
+    for (int i = 0; i < unmatchedRawCount; i++) {
+      int idx = unmatchedRaws[i];
+      if (!rawMatched[idx]) {
+        result.add(raws.get(idx));
       }
     }
     return result;
@@ -68,10 +93,11 @@ public class Tracking<RAW extends Trackable, BASE extends Trackable> {
    * The base issues that are not matched by a raw issue and that need to be closed.
    */
   public Iterable<BASE> getUnmatchedBases() {
-    List<BASE> result = new ArrayList<>();
-    for (BASE b : bases) {
-      if (!baseToRaw.containsKey(b)) {
-        result.add(b);
+    List<BASE> result = new ArrayList<>(unmatchedBaseCount);
+    for (int i = 0; i < unmatchedBaseCount; i++) {
+      int idx = unmatchedBases[i];
+      if (!baseMatched[idx]) {
+        result.add(bases.get(idx));
       }
     }
     return result;
@@ -81,11 +107,63 @@ public class Tracking<RAW extends Trackable, BASE extends Trackable> {
     return !baseToRaw.containsKey(base);
   }
 
-  void match(RAW raw, BASE base) {
+  List<RAW> raws() {
+    return raws;
+  }
+
+  List<BASE> bases() {
+    return bases;
+  }
+
+  /**
+   * Indexes of the unmatched raws, only the first {@link #unmatchedRawCount()} entries are relevant.
+   */
+  int[] unmatchedRawIndexes() {
+    return unmatchedRaws;
+  }
+
+  int unmatchedRawCount() {
+    return unmatchedRawCount;
+  }
+
+  /**
+   * Indexes of the unmatched bases, only the first {@link #unmatchedBaseCount()} entries are relevant.
+   */
+  int[] unmatchedBaseIndexes() {
+    return unmatchedBases;
+  }
+
+  int unmatchedBaseCount() {
+    return unmatchedBaseCount;
+  }
+
+  void match(int rawIndex, int baseIndex) {
+    RAW raw = raws.get(rawIndex);
+    BASE base = bases.get(baseIndex);
+    rawMatched[rawIndex] = true;
+    baseMatched[baseIndex] = true;
     rawToBase.put(raw, base);
     baseToRaw.put(base, raw);
   }
 
+  /**
+   * Removes the entries matched since the last call from the unmatched indexes, keeping their order.
+   */
+  void compact() {
+    unmatchedRawCount = compact(unmatchedRaws, unmatchedRawCount, rawMatched);
+    unmatchedBaseCount = compact(unmatchedBases, unmatchedBaseCount, baseMatched);
+  }
+
+  private static int compact(int[] indexes, int count, boolean[] matched) {
+    int newCount = 0;
+    for (int i = 0; i < count; i++) {
+      if (!matched[indexes[i]]) {
+        indexes[newCount++] = indexes[i];
+      }
+    }
+    return newCount;
+  }
+
   boolean isComplete() {
     return rawToBase.size() == raws.size();
   }
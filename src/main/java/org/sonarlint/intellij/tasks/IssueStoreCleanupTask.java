@@ -0,0 +1,68 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.tasks;
+
+import com.intellij.openapi.progress.PerformInBackgroundOption;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.sonarlint.intellij.issue.persistence.AnalysisResultCache;
+import org.sonarlint.intellij.issue.persistence.IssuePersistence;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarlint.intellij.util.SonarLintUtils;
+
+/**
+ * Opens the local issue store of a project and removes the entries of files that don't exist anymore, in the issue store and in the
+ * cached analysis results.
+ * If cancelled, the remaining entries are kept until the next time the project is opened.
+ */
+public class IssueStoreCleanupTask extends Task.Backgroundable {
+  public IssueStoreCleanupTask(Project project) {
+    super(project, "SonarLint: cleaning local issue store", true, PerformInBackgroundOption.ALWAYS_BACKGROUND);
+  }
+
+  @Override
+  public void run(@NotNull ProgressIndicator indicator) {
+    Project project = getProject();
+    IssuePersistence store = SonarLintUtils.getService(project, IssuePersistence.class);
+    indicator.setIndeterminate(true);
+
+    long start = System.currentTimeMillis();
+    store.open();
+    long openTime = System.currentTimeMillis() - start;
+
+    indicator.checkCanceled();
+    start = System.currentTimeMillis();
+    int deleted = store.clean(indicator);
+    SonarLintConsole.get(project).debug(String.format("Local issue store opened in %dms, %d invalid entries removed in %dms",
+      openTime, deleted, System.currentTimeMillis() - start));
+
+    indicator.checkCanceled();
+    start = System.currentTimeMillis();
+    SonarLintUtils.getService(project, AnalysisResultCache.class).clean();
+    SonarLintConsole.get(project).debug(String.format("Cached analysis results cleaned in %dms", System.currentTimeMillis() - start));
+  }
+
+  @Override
+  public void onCancel() {
+    SonarLintConsole.get(getProject()).debug("Cleaning of the local issue store was cancelled");
+  }
+}
@@ -39,6 +39,7 @@ import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.config.global.SonarQubeServer;
 import org.sonarlint.intellij.core.ModuleBindingManager;
+import org.sonarlint.intellij.core.ServerIssueUpdater;
 import org.sonarlint.intellij.issue.IssueManager;
 import org.sonarlint.intellij.trigger.SonarLintSubmitter;
 import org.sonarlint.intellij.trigger.TriggerType;
@@ -176,6 +177,9 @@ public class ServerUpdateTask {
   private void updateProject(ServerConfiguration serverConfiguration, String projectKey, List<Project> projects, TaskProgressMonitor monitor) {
     engine.updateProject(serverConfiguration, projectKey, monitor);
     GlobalLogOutput.get().log("Project '" + projectKey + "' in server binding '" + server.getName() + "' updated", LogOutput.Level.INFO);
+    projects.stream()
+      .filter(p -> !p.isDisposed())
+      .forEach(p -> SonarLintUtils.getService(p, ServerIssueUpdater.class).invalidateSnapshot(server.getName(), projectKey));
     projects.forEach(this::updateModules);
     projects.forEach(ServerUpdateTask::analyzeOpenFiles);
   }
@@ -20,38 +20,52 @@
 package org.sonarlint.intellij.trigger;
 
 import com.intellij.openapi.Disposable;
-import com.intellij.openapi.components.AbstractProjectComponent;
 import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import org.sonarlint.intellij.analysis.SonarLintJob;
+import org.sonarlint.intellij.analysis.SonarLintJobManager;
 import org.sonarlint.intellij.config.global.SonarLintGlobalSettings;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
+/**
+ * Triggers the analysis of a file once it wasn't modified for a while.
+ * A single scheduler is shared by all projects, and nothing runs while no file is modified: each modified file has its own deadline,
+ * which is pushed back by further modifications. The length of the quiet period is configured per project and, if enabled, adapts
+ * to the time it usually takes to analyze the file.
+ */
 @ThreadSafe
 public class EditorChangeTrigger implements DocumentListener, Disposable {
-  private static final int DEFAULT_TIMER_MS = 2000;
+  private static final ScheduledExecutorService SCHEDULER = AppExecutorUtil.createBoundedScheduledExecutorService("SonarLint auto-trigger", 1);
 
   // entries in this map mean that the file is "dirty"
   private final Map<VirtualFile, Long> eventMap = new ConcurrentHashMap<>();
-  private final EventWatcher watcher;
-  private final int timerMs = DEFAULT_TIMER_MS;
+  @GuardedBy("this")
+  private final Map<VirtualFile, ScheduledFuture<?>> deadlines = new HashMap<>();
+  private final Map<SonarLintJob, Long> runningJobs = new ConcurrentHashMap<>();
+  private final QuietPeriodEstimator estimator = new QuietPeriodEstimator();
   private final Project myProject;
 
   public EditorChangeTrigger(Project project) {
     myProject = project;
-    watcher = new EventWatcher();
   }
 
   public void onProjectOpened() {
@@ -61,9 +75,14 @@ public class EditorChangeTrigger implements DocumentListener, Disposable {
         @Override
         public void started(SonarLintJob job) {
           removeFiles(job.allFiles());
+          runningJobs.put(job, System.currentTimeMillis());
+        }
+
+        @Override
+        public void ended(SonarLintJob job) {
+          recordAnalysisTime(job);
         }
       });
-    watcher.start();
     EditorFactory.getInstance().getEventMulticaster().addDocumentListener(this);
   }
 
@@ -89,79 +108,91 @@ public class EditorChangeTrigger implements DocumentListener, Disposable {
     }
 
     eventMap.put(file, System.currentTimeMillis());
+    scheduleIfNeeded(file, quietPeriodMs(file));
+    SonarLintUtils.getService(myProject, SonarLintJobManager.class).cancelStaleBackgroundJobs(file);
   }
 
   /**
    * Marks a file as launched, resetting its state to unchanged
    */
   public void removeFiles(Stream<VirtualFile> files) {
-    files.forEach(eventMap::remove);
+    files.forEach(f -> {
+      eventMap.remove(f);
+      cancelDeadline(f);
+    });
   }
 
   Map<VirtualFile, Long> getEvents() {
     return Collections.unmodifiableMap(eventMap);
   }
 
-  private class EventWatcher extends Thread {
+  long quietPeriodMs(VirtualFile file) {
+    SonarLintProjectSettings settings = SonarLintUtils.getService(myProject, SonarLintProjectSettings.class);
+    long configured = settings.getAutoTriggerDelayMs();
+    return settings.isAdaptiveAutoTriggerDelay() ? estimator.quietPeriodMs(file, configured) : configured;
+  }
 
-    private boolean stop = false;
-    EventWatcher() {
-      this.setDaemon(true);
-      this.setName("sonarlint-auto-trigger-" + myProject.getName());
-    }
+  private synchronized void scheduleIfNeeded(VirtualFile file, long delayMs) {
+    // further modifications don't reschedule: the deadline is checked again when it expires
+    deadlines.computeIfAbsent(file, f -> SCHEDULER.schedule(() -> checkDeadline(f), delayMs, TimeUnit.MILLISECONDS));
+  }
 
-    public void stopWatcher() {
-      stop = true;
-      this.interrupt();
+  private synchronized void cancelDeadline(VirtualFile file) {
+    ScheduledFuture<?> deadline = deadlines.remove(file);
+    if (deadline != null) {
+      deadline.cancel(false);
     }
+  }
 
-    @Override
-    public void run() {
-      while (!stop) {
-        checkTimers();
-        try {
-          Thread.sleep(200);
-        } catch (InterruptedException e) {
-          // continue until stop flag is set
-        }
+  private void checkDeadline(VirtualFile file) {
+    long remaining;
+    synchronized (this) {
+      deadlines.remove(file);
+      Long lastChange = eventMap.get(file);
+      if (lastChange == null || myProject.isDisposed()) {
+        return;
       }
-    }
-
-    private void triggerFile(VirtualFile file) {
-      SonarLintGlobalSettings globalSettings = SonarLintUtils.getService(SonarLintGlobalSettings.class);
-      if (SonarLintAppUtils.isOpenFile(myProject, file) && globalSettings.isAutoTrigger()) {
-        SonarLintSubmitter submitter = SonarLintUtils.getService(myProject, SonarLintSubmitter.class);
-        submitter.submitFiles(Collections.singleton(file), TriggerType.EDITOR_CHANGE, true);
+      if (!file.isValid()) {
+        eventMap.remove(file);
+        return;
       }
+      remaining = lastChange + quietPeriodMs(file) - System.currentTimeMillis();
+      if (remaining > 0) {
+        scheduleIfNeeded(file, remaining);
+        return;
+      }
+      eventMap.remove(file);
     }
+    triggerFile(file);
+  }
 
-    private void checkTimers() {
-      long t = System.currentTimeMillis();
-
-      Iterator<Map.Entry<VirtualFile, Long>> it = eventMap.entrySet().iterator();
-      while (it.hasNext()) {
-        Map.Entry<VirtualFile, Long> e = it.next();
-        if (!e.getKey().isValid()) {
-          it.remove();
-          continue;
-        }
-        // don't trigger if file currently has errors?
-        // filter files opened in the editor
-        // use some heuristics based on analysis time or average pauses? Or make it configurable?
-        if (e.getValue() + timerMs < t) {
-          triggerFile(e.getKey());
-          it.remove();
-        }
-      }
+  private void triggerFile(VirtualFile file) {
+    SonarLintGlobalSettings globalSettings = SonarLintUtils.getService(SonarLintGlobalSettings.class);
+    if (SonarLintAppUtils.isOpenFile(myProject, file) && globalSettings.isAutoTrigger()) {
+      SonarLintSubmitter submitter = SonarLintUtils.getService(myProject, SonarLintSubmitter.class);
+      submitter.submitFiles(Collections.singleton(file), TriggerType.EDITOR_CHANGE, true);
     }
+  }
 
+  private void recordAnalysisTime(SonarLintJob job) {
+    Long start = runningJobs.remove(job);
+    // the duration of a job with several files says little about each of them
+    if (start == null || job.isCanceled() || job.filesPerModule().size() != 1) {
+      return;
+    }
+    Collection<VirtualFile> files = job.filesPerModule().values().iterator().next();
+    if (files.size() == 1) {
+      estimator.recordAnalysis(files.iterator().next(), System.currentTimeMillis() - start);
+    }
   }
 
   @Override
-  public void dispose() {
+  public synchronized void dispose() {
     EditorFactory.getInstance().getEventMulticaster().removeDocumentListener(this);
     eventMap.clear();
-    watcher.stopWatcher();
+    deadlines.values().forEach(f -> f.cancel(false));
+    deadlines.clear();
+    runningJobs.clear();
   }
 
 }
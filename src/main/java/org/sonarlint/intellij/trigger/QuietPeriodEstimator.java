@@ -0,0 +1,78 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.trigger;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Estimates how long to wait after the last modification of a file before analyzing it automatically.
+ * Files that are slow to analyze get a longer quiet period, so that they are not analyzed (and canceled) over and over while the user
+ * is typing, and files that are fast to analyze get a shorter one.
+ * The analysis time is tracked per file and, for files never analyzed, per file type.
+ */
+@ThreadSafe
+class QuietPeriodEstimator {
+  private static final int MAX_TRACKED_FILES = 1000;
+  private static final double SMOOTHING = 0.3;
+  private static final int ANALYSIS_TIME_FACTOR = 2;
+
+  private final Map<VirtualFile, Double> durationPerFile = new LinkedHashMap<VirtualFile, Double>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<VirtualFile, Double> eldest) {
+      return size() > MAX_TRACKED_FILES;
+    }
+  };
+  private final Map<String, Double> durationPerFileType = new HashMap<>();
+
+  synchronized void recordAnalysis(VirtualFile file, long durationMs) {
+    durationPerFile.merge(file, (double) durationMs, QuietPeriodEstimator::smooth);
+    durationPerFileType.merge(file.getFileType().getName(), (double) durationMs, QuietPeriodEstimator::smooth);
+  }
+
+  /**
+   * @param configuredMs the quiet period configured for the project. The estimated period stays between half and four times this value.
+   */
+  synchronized long quietPeriodMs(VirtualFile file, long configuredMs) {
+    Double expectedDuration = expectedDuration(file);
+    if (expectedDuration == null) {
+      return configuredMs;
+    }
+    long estimated = (long) (ANALYSIS_TIME_FACTOR * expectedDuration);
+    return Math.max(configuredMs / 2, Math.min(configuredMs * 4, estimated));
+  }
+
+  @CheckForNull
+  private Double expectedDuration(VirtualFile file) {
+    Double duration = durationPerFile.get(file);
+    if (duration == null) {
+      duration = durationPerFileType.get(file.getFileType().getName());
+    }
+    return duration;
+  }
+
+  private static Double smooth(Double previous, Double current) {
+    return previous + SMOOTHING * (current - previous);
+  }
+}
@@ -51,7 +51,7 @@ public class SonarLintSubmitter {
   private final Supplier<LocalFileExclusions> exclusionsProvider;
 
   public SonarLintSubmitter(Project project) {
-    this(project, () -> new LocalFileExclusions(project));
+    this(project, () -> SonarLintUtils.getService(project, LocalFileExclusions.class));
   }
 
   /**
@@ -137,10 +137,10 @@ public class SonarLintSubmitter {
   private Map<Module, Collection<VirtualFile>> filterAndGetByModule(Collection<VirtualFile> files, boolean checkExclusions, List<VirtualFile> filesToClearIssues)
     throws InvalidBindingException {
     Map<Module, Collection<VirtualFile>> filesByModule = new LinkedHashMap<>();
+    LocalFileExclusions localFileExclusions = exclusionsProvider.get();
 
     for (VirtualFile file : files) {
       Module m = SonarLintAppUtils.findModuleForFile(file, myProject);
-      LocalFileExclusions localFileExclusions = exclusionsProvider.get();
       LocalFileExclusions.Result result = localFileExclusions.canAnalyze(file, m);
       if (result.isExcluded()) {
         logExclusion(file, "excluded: " + result.excludeReason());
@@ -20,23 +20,43 @@
 package org.sonarlint.intellij.trigger;
 
 public enum TriggerType {
-  EDITOR_OPEN("Editor open"),
-  ACTION("Action"),
-  ALL("All files"),
-  CHANGED_FILES("Changed files"),
-  COMPILATION("Compilation"),
-  EDITOR_CHANGE("Editor change"),
-  CHECK_IN("Pre-commit check"),
-  CONFIG_CHANGE("Config change"),
-  BINDING_UPDATE("Binding update");
+  EDITOR_OPEN("Editor open", true),
+  ACTION("Action", true),
+  ALL("All files", false),
+  CHANGED_FILES("Changed files", false),
+  COMPILATION("Compilation", false),
+  EDITOR_CHANGE("Editor change", false),
+  CHECK_IN("Pre-commit check", true),
+  CONFIG_CHANGE("Config change", true),
+  BINDING_UPDATE("Binding update", true);
 
   private final String name;
+  private final boolean updateServerIssues;
 
-  TriggerType(String name) {
+  TriggerType(String name, boolean updateServerIssues) {
     this.name = name;
+    this.updateServerIssues = updateServerIssues;
   }
 
   public String getName() {
     return name;
   }
+
+  /**
+   * Whether the issues found by analyses with this trigger should be matched with the issues of the server.
+   */
+  public boolean shouldUpdateServerIssues() {
+    return updateServerIssues;
+  }
+
+  /**
+   * When merging two analyses, returns the trigger that should be kept. A trigger updating server issues wins, otherwise the most recent
+   * one (this one) is kept.
+   */
+  public TriggerType mostDemanding(TriggerType previous) {
+    if (previous.shouldUpdateServerIssues() && !shouldUpdateServerIssues()) {
+      return previous;
+    }
+    return this;
+  }
 }
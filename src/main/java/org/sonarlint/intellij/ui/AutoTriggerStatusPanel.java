@@ -70,7 +70,7 @@ public class AutoTriggerStatusPanel {
 
   public AutoTriggerStatusPanel(Project project) {
     this.project = project;
-    this.localFileExclusions = new LocalFileExclusions(project);
+    this.localFileExclusions = SonarLintUtils.getService(project, LocalFileExclusions.class);
     createPanel();
     switchCards();
     subscribeToEvents();
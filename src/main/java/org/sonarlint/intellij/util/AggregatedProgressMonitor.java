@@ -0,0 +1,133 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.util;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+
+/**
+ * Aggregates the progress of several analyses running concurrently into a single {@link ProgressIndicator}.
+ * Each analysis reports to its own {@link ProgressMonitor}, obtained with {@link #newPart(int)}, and the overall fraction
+ * is the average of all parts, weighted by the number of files each of them analyzes.
+ */
+public class AggregatedProgressMonitor {
+  private final ProgressIndicator indicator;
+  private final BooleanSupplier cancellationToken;
+  private final List<Part> parts = new ArrayList<>();
+  private volatile boolean canceled = false;
+  private int nonCancelableSections = 0;
+
+  public AggregatedProgressMonitor(ProgressIndicator indicator) {
+    this(indicator, () -> false);
+  }
+
+  /**
+   * @param cancellationToken allows all parts to be canceled independently from the indicator
+   */
+  public AggregatedProgressMonitor(ProgressIndicator indicator, BooleanSupplier cancellationToken) {
+    this.indicator = indicator;
+    this.cancellationToken = cancellationToken;
+  }
+
+  public synchronized ProgressMonitor newPart(int weight) {
+    Part part = new Part(Math.max(1, weight));
+    parts.add(part);
+    return part;
+  }
+
+  /**
+   * Makes all parts report themselves as canceled, even if the wrapped indicator isn't.
+   */
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled || indicator.isCanceled() || cancellationToken.getAsBoolean();
+  }
+
+  private synchronized void updateFraction() {
+    double total = 0;
+    double done = 0;
+    for (Part p : parts) {
+      total += p.weight;
+      done += p.weight * p.fraction;
+    }
+    if (total > 0) {
+      indicator.setIndeterminate(false);
+      indicator.setFraction(done / total);
+    }
+  }
+
+  private synchronized void startNonCancelableSection() {
+    if (nonCancelableSections++ == 0) {
+      indicator.startNonCancelableSection();
+    }
+  }
+
+  private synchronized void finishNonCancelableSection() {
+    if (nonCancelableSections > 0 && --nonCancelableSections == 0) {
+      indicator.finishNonCancelableSection();
+    }
+  }
+
+  private class Part extends ProgressMonitor {
+    private final int weight;
+    private volatile float fraction = 0f;
+
+    private Part(int weight) {
+      this.weight = weight;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return AggregatedProgressMonitor.this.isCanceled();
+    }
+
+    @Override
+    public void setMessage(String msg) {
+      indicator.setText2(msg);
+    }
+
+    @Override
+    public void setFraction(float fraction) {
+      this.fraction = Math.max(0f, Math.min(1f, fraction));
+      updateFraction();
+    }
+
+    @Override
+    public void setIndeterminate(boolean indeterminate) {
+      // the aggregated indicator becomes determinate as soon as one of the parts reports a fraction
+    }
+
+    @Override
+    public void startNonCancelableSection() {
+      AggregatedProgressMonitor.this.startNonCancelableSection();
+    }
+
+    @Override
+    public void finishNonCancelableSection() {
+      AggregatedProgressMonitor.this.finishNonCancelableSection();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Streams the bytes of a text, encoding it chunk by chunk instead of copying it to a String and then to a byte array.
+ * Malformed and unmappable characters are replaced, like {@link String#getBytes(Charset)} does.
+ */
+public class CharSequenceInputStream extends InputStream {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final CharBuffer chars;
+  private final CharsetEncoder encoder;
+  private final ByteBuffer bytes;
+  private boolean encoded;
+  private boolean flushed;
+
+  public CharSequenceInputStream(CharSequence text, Charset charset) {
+    this.chars = CharBuffer.wrap(text);
+    this.encoder = charset.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    this.bytes.flip();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return bytes.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int read = Math.min(len, bytes.remaining());
+    bytes.get(b, off, read);
+    return read;
+  }
+
+  @Override
+  public int available() {
+    return bytes.remaining();
+  }
+
+  private boolean fill() throws IOException {
+    while (!bytes.hasRemaining()) {
+      if (flushed) {
+        return false;
+      }
+      bytes.clear();
+      CoderResult result;
+      if (!encoded) {
+        result = encoder.encode(chars, bytes, true);
+        encoded = result.isUnderflow();
+      } else {
+        result = encoder.flush(bytes);
+        flushed = result.isUnderflow();
+      }
+      if (result.isError()) {
+        result.throwException();
+      }
+      bytes.flip();
+    }
+    return true;
+  }
+}
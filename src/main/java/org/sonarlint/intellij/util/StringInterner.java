@@ -17,22 +17,26 @@
  * License along with this program; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
  */
-package org.sonarlint.intellij.editor;
+package org.sonarlint.intellij.util;
 
-import java.util.LinkedList;
-import java.util.List;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
-import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
-public class AccumulatorIssueListener implements IssueListener {
-  private final List<Issue> issues = new LinkedList<>();
+/**
+ * Shares the instances of the strings repeated in many issues, like rule keys, severities or messages.
+ * References are weak, so strings no longer used by any issue can be garbage collected.
+ */
+public final class StringInterner {
+  private static final Interner<String> INTERNER = Interners.newWeakInterner();
 
-  public List<Issue> getIssues() {
-    return issues;
+  private StringInterner() {
+    // utility class
   }
 
-  @Override
-  public void handle(Issue issue) {
-    issues.add(issue);
+  @CheckForNull
+  public static String intern(@Nullable String str) {
+    return str == null ? null : INTERNER.intern(str);
   }
 }
@@ -20,13 +20,23 @@
 package org.sonarlint.intellij.util;
 
 import com.intellij.openapi.progress.ProgressIndicator;
+import java.util.function.BooleanSupplier;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 
 public class TaskProgressMonitor extends ProgressMonitor {
   private final ProgressIndicator indicator;
+  private final BooleanSupplier cancellationToken;
 
   public TaskProgressMonitor(ProgressIndicator indicator) {
+    this(indicator, () -> false);
+  }
+
+  /**
+   * @param cancellationToken allows the task to be canceled independently from the indicator
+   */
+  public TaskProgressMonitor(ProgressIndicator indicator, BooleanSupplier cancellationToken) {
     this.indicator = indicator;
+    this.cancellationToken = cancellationToken;
   }
 
   /**
@@ -34,7 +44,7 @@ public class TaskProgressMonitor extends ProgressMonitor {
    */
   @Override
   public boolean isCanceled() {
-    return indicator.isCanceled();
+    return indicator.isCanceled() || cancellationToken.getAsBoolean();
   }
 
   /**
@@ -28,7 +28,9 @@ import org.junit.Test;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
 import org.sonarlint.intellij.issue.IssueManager;
 import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.issue.persistence.AnalysisResultCache;
 import org.sonarlint.intellij.util.SonarLintUtils;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -62,6 +64,21 @@ public class SonarClearIssuesActionTest extends AbstractSonarLintLightTests {
     assertThat(issueManager.getForFile(file)).isEmpty();
   }
 
+  @Test
+  public void testClearCachedAnalysisResults() {
+    AnalysisResultCache cache = SonarLintUtils.getService(getProject(), AnalysisResultCache.class);
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.relativePath()).thenReturn("foo.php");
+    cache.save(inputFile, "hash", "config", "php", Collections.emptyList());
+    assertThat(cache.replay(inputFile, "hash", "config", i -> {
+    })).isPresent();
+
+    clearIssues.actionPerformed(event);
+
+    assertThat(cache.replay(inputFile, "hash", "config", i -> {
+    })).isEmpty();
+  }
+
   @Test
   public void testClearWithInvalidFiles() throws IOException {
     FileEditorManager.getInstance(getProject()).openFile(file, true);
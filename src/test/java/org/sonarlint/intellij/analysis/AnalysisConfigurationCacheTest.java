@@ -0,0 +1,155 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootModificationUtil;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.messages.ProjectConfigurationListener;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AnalysisConfigurationCacheTest extends AbstractSonarLintLightTests {
+  private AnalysisConfigurator configurator = mock(AnalysisConfigurator.class);
+  private SonarLintConsole console = mock(SonarLintConsole.class);
+  private AnalysisConfigurationCache underTest;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Before
+  public void prepare() {
+    replaceProjectService(SonarLintConsole.class, console);
+    when(configurator.configure(getModule())).thenReturn(Collections.singletonMap("sonar.java.libraries", "lib.jar"));
+    underTest = new AnalysisConfigurationCache(getProject(), () -> Collections.singletonList(configurator));
+  }
+
+  @After
+  public void cleanUp() {
+    Disposer.dispose(underTest);
+  }
+
+  @Test
+  public void should_configure_module_once() {
+    Map<String, String> first = underTest.getConfiguration(getModule());
+    Map<String, String> second = underTest.getConfiguration(getModule());
+
+    assertThat(first).containsOnly(entry("sonar.java.libraries", "lib.jar"));
+    assertThat(second).isSameAs(first);
+    verify(configurator, times(1)).configure(getModule());
+    assertThat(underTest.hits()).isEqualTo(1);
+    assertThat(underTest.misses()).isEqualTo(1);
+    verify(console).debug(argThat(msg -> msg.startsWith("Reusing analysis configuration of module '" + getModule().getName() + "'")));
+  }
+
+  @Test
+  public void should_configure_again_when_roots_change() {
+    underTest.getConfiguration(getModule());
+    getProject().getMessageBus().syncPublisher(ProjectTopics.PROJECT_ROOTS).rootsChanged(mock(ModuleRootEvent.class));
+    underTest.getConfiguration(getModule());
+
+    verify(configurator, times(2)).configure(getModule());
+  }
+
+  @Test
+  public void should_configure_again_when_settings_change() {
+    underTest.getConfiguration(getModule());
+    getProject().getMessageBus().syncPublisher(ProjectConfigurationListener.TOPIC).changed(getProjectSettings());
+    underTest.getConfiguration(getModule());
+
+    verify(configurator, times(2)).configure(getModule());
+  }
+
+  @Test
+  public void should_configure_again_when_output_directory_is_created_without_compilation() {
+    File output = new File(temp.getRoot(), "out");
+    ModuleRootModificationUtil.updateModel(getModule(), model -> {
+      CompilerModuleExtension extension = model.getModuleExtension(CompilerModuleExtension.class);
+      extension.inheritCompilerOutputPath(false);
+      extension.setCompilerOutputPath(VfsUtilCore.pathToUrl(output.getAbsolutePath()));
+    });
+    try {
+      underTest.getConfiguration(getModule());
+      // like a build delegated to Gradle, seen through a refresh of the VFS
+      WriteAction.runAndWait(() -> VfsUtil.createDirectoryIfMissing(output.getAbsolutePath()));
+      underTest.getConfiguration(getModule());
+
+      verify(configurator, times(2)).configure(getModule());
+    } finally {
+      ModuleRootModificationUtil.updateModel(getModule(),
+        model -> model.getModuleExtension(CompilerModuleExtension.class).inheritCompilerOutputPath(true));
+    }
+  }
+
+  @Test
+  public void should_not_invalidate_when_files_are_created_in_output_directory() throws Exception {
+    File output = temp.newFolder("out");
+    LocalFileSystem.getInstance().refreshAndFindFileByIoFile(output);
+    ModuleRootModificationUtil.updateModel(getModule(), model -> {
+      CompilerModuleExtension extension = model.getModuleExtension(CompilerModuleExtension.class);
+      extension.inheritCompilerOutputPath(false);
+      extension.setCompilerOutputPath(VfsUtilCore.pathToUrl(output.getAbsolutePath()));
+    });
+    try {
+      underTest.getConfiguration(getModule());
+      WriteAction.runAndWait(() -> VfsUtil.createDirectoryIfMissing(output.getAbsolutePath() + "/org/foo"));
+      underTest.getConfiguration(getModule());
+
+      verify(configurator, times(1)).configure(getModule());
+    } finally {
+      ModuleRootModificationUtil.updateModel(getModule(),
+        model -> model.getModuleExtension(CompilerModuleExtension.class).inheritCompilerOutputPath(true));
+    }
+  }
+
+  @Test
+  public void should_not_cache_configuration_computed_during_invalidation() {
+    when(configurator.configure(getModule())).thenAnswer(invocation -> {
+      underTest.invalidate();
+      return Collections.emptyMap();
+    });
+    underTest.getConfiguration(getModule());
+    underTest.getConfiguration(getModule());
+
+    verify(configurator, times(2)).configure(getModule());
+  }
+}
@@ -27,8 +27,10 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.stream.Collectors;
@@ -40,6 +42,9 @@ import org.junit.rules.TemporaryFolder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultClientInputFileTest {
@@ -89,7 +94,7 @@ public class DefaultClientInputFileTest {
   @Test
   public void testDoc() throws IOException {
     Document doc = mock(Document.class);
-    when(doc.getText()).thenReturn("test string");
+    when(doc.getImmutableCharSequence()).thenReturn("test string");
     inputFile = new DefaultClientInputFile(vFile, "unused", true, StandardCharsets.UTF_8, doc);
 
     assertThat(inputFile.contents()).isEqualTo("test string");
@@ -98,6 +103,36 @@ public class DefaultClientInputFileTest {
     }
   }
 
+  @Test
+  public void testDocSnapshotTakenOnce() throws IOException {
+    Document doc = mock(Document.class);
+    when(doc.getImmutableCharSequence()).thenReturn("test string");
+    inputFile = new DefaultClientInputFile(vFile, "unused", true, StandardCharsets.UTF_8, doc);
+    when(doc.getImmutableCharSequence()).thenReturn("modified later");
+
+    assertThat(inputFile.contents()).isEqualTo("test string");
+    assertThat(readAll(inputFile.inputStream(), StandardCharsets.UTF_8)).isEqualTo("test string");
+    verify(doc, times(1)).getImmutableCharSequence();
+    verify(doc, never()).getText();
+  }
+
+  @Test
+  public void testFileReadThroughVfs() throws IOException {
+    // differs from the file on disk, the VFS is the only source of the contents
+    when(vFile.getInputStream()).thenReturn(new ByteArrayInputStream("test string".getBytes(StandardCharsets.UTF_8)));
+    when(vFile.contentsToByteArray()).thenReturn("test string".getBytes(StandardCharsets.UTF_8));
+    inputFile = new DefaultClientInputFile(vFile, "unused", true, StandardCharsets.UTF_8);
+
+    assertThat(readAll(inputFile.inputStream(), StandardCharsets.UTF_8)).isEqualTo("test string");
+    assertThat(inputFile.contents()).isEqualTo("test string");
+  }
+
+  private static String readAll(InputStream inputStream, Charset charset) throws IOException {
+    try (InputStream in = inputStream) {
+      return new String(FileUtil.loadBytes(in), charset);
+    }
+  }
+
   @Test
   public void testUriRoundTrip() throws URISyntaxException {
     inputFile = new DefaultClientInputFile(vFile, "unused", true, StandardCharsets.UTF_8);
@@ -20,7 +20,9 @@
 package org.sonarlint.intellij.analysis;
 
 import com.intellij.compiler.CompilerConfiguration;
+import com.intellij.openapi.application.WriteAction;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.projectRoots.SdkModificator;
 import com.intellij.openapi.roots.CompilerModuleExtension;
@@ -35,6 +37,7 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.pom.java.LanguageLevel;
 import com.intellij.testFramework.IdeaTestUtil;
@@ -54,6 +57,7 @@ import org.jetbrains.annotations.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.util.SonarLintUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
@@ -216,6 +220,53 @@ public class JavaAnalysisConfiguratorTests extends AbstractSonarLintLightTests {
         exportedLibInTestDependentModuleFile.toPath());
   }
 
+  @Test
+  public void testClasspath_of_dependencies_computed_once() {
+    JavaClasspathGraph graph = SonarLintUtils.getService(getProject(), JavaClasspathGraph.class);
+    Map<String, String> props = underTest.configure(getModule());
+    long computedNodes = graph.computedNodes();
+
+    assertThat(underTest.configure(getModule())).isEqualTo(props);
+    assertThat(graph.computedNodes()).isEqualTo(computedNodes);
+  }
+
+  @Test
+  public void testClasspath_updated_when_roots_change() throws IOException {
+    Module dependentModule = ModuleManager.getInstance(getProject()).findModuleByName("dependent");
+    File newExportedLibFile = tempDir.newFile("myNewExportedLib.jar");
+    underTest.configure(getModule());
+
+    ModuleRootModificationUtil.updateModel(dependentModule, dependentModel -> {
+      Library myNewExportedLib = PsiTestUtil.addLibrary(dependentModel, "myNewExportedLib", newExportedLibFile.getParent(), newExportedLibFile.getName());
+      dependentModel.findLibraryOrderEntry(myNewExportedLib).setExported(true);
+    });
+    try {
+      assertThat(Stream.of(underTest.configure(getModule()).get("sonar.java.libraries").split(",")).map(Paths::get))
+        .endsWith(exportedLibInDependentModuleFile.toPath(), newExportedLibFile.toPath());
+    } finally {
+      ModuleRootModificationUtil.updateModel(dependentModule, dependentModel -> Stream.of(dependentModel.getOrderEntries())
+        .filter(e -> e instanceof LibraryOrderEntry && "myNewExportedLib".equals(((LibraryOrderEntry) e).getLibraryName()))
+        .forEach(dependentModel::removeOrderEntry));
+    }
+    assertThat(Stream.of(underTest.configure(getModule()).get("sonar.java.libraries").split(",")).map(Paths::get))
+      .doesNotContain(newExportedLibFile.toPath());
+  }
+
+  @Test
+  public void testClasspath_updated_when_output_directory_is_deleted_or_created_without_compilation() throws IOException {
+    // like a clean then a build delegated to Gradle, seen through a refresh of the VFS
+    VirtualFile output = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(dependentModCompilerOutputDirFile);
+    WriteAction.runAndWait(() -> output.delete(this));
+    try {
+      assertThat(Stream.of(underTest.configure(getModule()).get("sonar.java.libraries").split(",")).map(Paths::get))
+        .doesNotContain(dependentModCompilerOutputDirFile.toPath());
+    } finally {
+      WriteAction.runAndWait(() -> VfsUtil.createDirectoryIfMissing(dependentModCompilerOutputDirFile.getAbsolutePath()));
+    }
+    assertThat(Stream.of(underTest.configure(getModule()).get("sonar.java.libraries").split(",")).map(Paths::get))
+      .contains(dependentModCompilerOutputDirFile.toPath());
+  }
+
   private static Sdk addRtJarTo(@NotNull Sdk jdk) {
     try {
       jdk = (Sdk) jdk.clone();
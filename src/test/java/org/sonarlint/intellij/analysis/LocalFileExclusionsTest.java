@@ -21,13 +21,19 @@ package org.sonarlint.intellij.analysis;
 
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.HeavyPlatformTestCase;
 import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.PsiTestUtil;
 import org.jdom.JDOMException;
 import org.junit.Test;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
+import org.sonarlint.intellij.messages.ProjectConfigurationListener;
+import org.sonarlint.intellij.util.SonarLintUtils;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.function.BooleanSupplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -99,4 +105,38 @@ public class LocalFileExclusionsTest extends HeavyPlatformTestCase {
 
     assertThat(exclusions.canAnalyze(f, getModule()).isExcluded()).isTrue();
   }
+
+  @Test
+  public void test_should_reevaluate_cached_decisions_when_settings_or_names_change() throws IOException {
+    VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(createTempDirectory());
+    PsiTestUtil.addContentRoot(getModule(), root);
+    VirtualFile file = createChildData(root, "Foo.java");
+    assertThat(exclusions.checkExclusions(file, getModule()).isExcluded()).isFalse();
+
+    SonarLintProjectSettings settings = SonarLintUtils.getService(getProject(), SonarLintProjectSettings.class);
+    settings.setFileExclusions(Collections.singletonList("GLOB:*Foo.java"));
+    getProject().getMessageBus().syncPublisher(ProjectConfigurationListener.TOPIC).changed(settings);
+    assertThat(exclusions.checkExclusions(file, getModule()).isExcluded()).isTrue();
+
+    rename(file, "Bar.java");
+    assertThat(exclusions.checkExclusions(file, getModule()).isExcluded()).isFalse();
+  }
+
+  @Test
+  public void test_should_only_drop_decisions_of_files_deleted_in_content() throws IOException {
+    VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(createTempDirectory());
+    PsiTestUtil.addContentRoot(getModule(), root);
+    VirtualFile foo = createChildData(root, "Foo.java");
+    VirtualFile bar = createChildData(root, "Bar.java");
+    VirtualFile outside = createChildData(LocalFileSystem.getInstance().refreshAndFindFileByIoFile(createTempDirectory()), "Other.java");
+    exclusions.checkExclusions(foo, getModule());
+    exclusions.checkExclusions(bar, getModule());
+    assertThat(exclusions.cachedDecisions()).isEqualTo(2);
+
+    delete(outside);
+    assertThat(exclusions.cachedDecisions()).isEqualTo(2);
+
+    delete(foo);
+    assertThat(exclusions.cachedDecisions()).isEqualTo(1);
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.junit.Test;
+import org.sonarlint.intellij.trigger.TriggerType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SonarLintJobQueueTest {
+  private final Project project = mock(Project.class);
+  private final Module module = mock(Module.class);
+  private final VirtualFile file1 = mock(VirtualFile.class);
+  private final VirtualFile file2 = mock(VirtualFile.class);
+  private final SonarLintJobQueue queue = new SonarLintJobQueue();
+
+  @Test
+  public void should_merge_pending_jobs_by_file() {
+    SonarLintJobQueue.Entry entry = queue.enqueue(job(TriggerType.EDITOR_CHANGE, Collections.singleton(file1), null));
+    assertThat(entry).isNotNull();
+    assertThat(queue.enqueue(job(TriggerType.COMPILATION, Arrays.asList(file1, file2), null))).isNull();
+
+    assertThat(queue.depth()).isEqualTo(1);
+    assertThat(queue.mergedJobs()).isEqualTo(1);
+    assertThat(queue.submittedJobs()).isEqualTo(2);
+    assertThat(queue.deduplicatedFiles()).isEqualTo(1);
+
+    SonarLintJob merged = queue.take(entry);
+    assertThat(merged.allFiles()).containsOnly(file1, file2);
+    assertThat(merged.trigger()).isEqualTo(TriggerType.COMPILATION);
+    assertThat(queue.take(entry)).isNull();
+    assertThat(queue.depth()).isZero();
+  }
+
+  @Test
+  public void should_keep_most_demanding_trigger() {
+    SonarLintJobQueue.Entry entry = queue.enqueue(job(TriggerType.EDITOR_OPEN, Collections.singleton(file1), null));
+    queue.enqueue(job(TriggerType.EDITOR_CHANGE, Collections.singleton(file1), null));
+
+    assertThat(queue.take(entry).trigger()).isEqualTo(TriggerType.EDITOR_OPEN);
+  }
+
+  @Test
+  public void should_not_merge_jobs_with_callback() {
+    AnalysisCallback callback = mock(AnalysisCallback.class);
+    SonarLintJobQueue.Entry first = queue.enqueue(job(TriggerType.ACTION, Collections.singleton(file1), callback));
+    assertThat(first).isNotNull();
+    assertThat(queue.enqueue(job(TriggerType.EDITOR_CHANGE, Collections.singleton(file1), null))).isNotNull();
+    assertThat(queue.enqueue(job(TriggerType.ACTION, Collections.singleton(file1), callback))).isNotNull();
+
+    assertThat(queue.depth()).isEqualTo(3);
+    assertThat(queue.mergedJobs()).isZero();
+    assertThat(queue.take(first).callback()).isEqualTo(callback);
+  }
+
+  @Test
+  public void should_only_merge_into_last_pending_job() {
+    AnalysisCallback callback = mock(AnalysisCallback.class);
+    SonarLintJobQueue.Entry first = queue.enqueue(job(TriggerType.EDITOR_CHANGE, Collections.singleton(file1), null));
+    queue.enqueue(job(TriggerType.ACTION, Collections.singleton(file1), callback));
+
+    SonarLintJobQueue.Entry last = queue.enqueue(job(TriggerType.EDITOR_CHANGE, Collections.singleton(file2), null));
+
+    // not merged past the job with a callback, which would run it before that job
+    assertThat(last).isNotNull();
+    assertThat(queue.depth()).isEqualTo(3);
+    assertThat(queue.peek(first).allFiles()).containsOnly(file1);
+
+    assertThat(queue.enqueue(job(TriggerType.EDITOR_CHANGE, Collections.singleton(file1), null))).isNull();
+    assertThat(queue.take(last).allFiles()).containsOnly(file2, file1);
+    assertThat(queue.take(first).allFiles()).containsOnly(file1);
+  }
+
+  @Test
+  public void newest_job_decides_whether_file_is_analyzed_or_cleared() {
+    SonarLintJobQueue.Entry entry = queue.enqueue(new SonarLintJob(project, Collections.singletonMap(module, Collections.singleton(file1)),
+      Collections.singleton(file2), TriggerType.EDITOR_CHANGE, false, null));
+    queue.enqueue(new SonarLintJob(project, Collections.singletonMap(module, Collections.singleton(file2)), Collections.singleton(file1),
+      TriggerType.EDITOR_CHANGE, true, null));
+
+    SonarLintJob merged = queue.take(entry);
+    assertThat(merged.allFiles()).containsOnly(file2);
+    assertThat(merged.filesToClearIssues()).containsOnly(file1);
+    assertThat(merged.waitForServerIssues()).isTrue();
+  }
+
+  private SonarLintJob job(TriggerType trigger, Collection<VirtualFile> files, AnalysisCallback callback) {
+    return new SonarLintJob(project, Collections.singletonMap(module, files), Collections.emptyList(), trigger, false, callback);
+  }
+}
@@ -41,6 +41,10 @@ public class SonarLintJobTest {
     assertThat(job.filesPerModule().keySet()).containsOnly(m);
     assertThat(job.trigger()).isEqualTo(TriggerType.COMPILATION);
     assertThat(job.creationTime()).isBetween(System.currentTimeMillis() - 5000, System.currentTimeMillis());
+    assertThat(job.isCanceled()).isFalse();
+
+    job.cancel();
+    assertThat(job.isCanceled()).isTrue();
   }
 
 }
@@ -22,6 +22,7 @@ package org.sonarlint.intellij.analysis;
 import com.intellij.lang.LanguageExtensionPoint;
 import com.intellij.openapi.extensions.ExtensionPoint;
 import com.intellij.openapi.extensions.Extensions;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.junit.Before;
@@ -40,9 +41,19 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -72,7 +83,7 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
     job = createJob();
     when(progress.isCanceled()).thenReturn(false);
     when(analysisResults.failedAnalysisFiles()).thenReturn(Collections.emptyList());
-    when(sonarLintAnalyzer.analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class))).thenReturn(analysisResults);
+    when(sonarLintAnalyzer.analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class), anyBoolean())).thenReturn(analysisResults);
 
     replaceProjectService(SonarLintStatus.class, new SonarLintStatus(getProject()));
     replaceProjectService(SonarLintAnalyzer.class, sonarLintAnalyzer);
@@ -98,8 +109,10 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
     task.run(progress);
 
 
-    verify(sonarLintAnalyzer).analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class));
-    verify(processor).process(job, progress, new ArrayList<>(), new ArrayList<>());
+    verify(sonarLintAnalyzer).analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class), anyBoolean());
+    verify(processor).startJob(job);
+    verify(processor).processFiles(new ArrayList<>(files), new ArrayList<>(), new ArrayList<>());
+    verify(processor).completeJob(job, progress, new HashSet<>(), new ArrayList<>());
     verify(listener).ended(job);
 
     assertThat(getExternalAnnotators())
@@ -114,7 +127,7 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
     TaskListener listener = mock(TaskListener.class);
     getProject().getMessageBus().connect(getProject()).subscribe(TaskListener.SONARLINT_TASK_TOPIC, listener);
 
-    doThrow(new IllegalStateException("error")).when(sonarLintAnalyzer).analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class));
+    doThrow(new IllegalStateException("error")).when(sonarLintAnalyzer).analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class), anyBoolean());
     task.run(progress);
 
     // never called because of error
@@ -125,6 +138,57 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
     verifyNoMoreInteractions(listener);
   }
 
+  @Test
+  public void testJobCanceled() {
+    TaskListener listener = mock(TaskListener.class);
+    getProject().getMessageBus().connect(getProject()).subscribe(TaskListener.SONARLINT_TASK_TOPIC, listener);
+
+    job.cancel();
+    task.run(progress);
+
+    verifyZeroInteractions(sonarLintAnalyzer);
+    verifyZeroInteractions(processor);
+    verify(listener).ended(job);
+  }
+
+  @Test
+  public void testWaitForRunningModulesWhenOneFails() throws Exception {
+    ExecutorService workers = Executors.newFixedThreadPool(2);
+    try {
+      SonarLintJobManager jobManager = mock(SonarLintJobManager.class);
+      when(jobManager.maxParallelModuleAnalyses()).thenReturn(2);
+      when(jobManager.submitModuleAnalysis(any())).thenAnswer(invocation -> workers.submit((Callable<?>) invocation.getArgument(0)));
+      replaceProjectService(SonarLintJobManager.class, jobManager);
+
+      Module otherModule = mock(Module.class);
+      Set<VirtualFile> otherFiles = Collections.singleton(mock(VirtualFile.class));
+      CountDownLatch otherStarted = new CountDownLatch(1);
+      AtomicBoolean otherFinished = new AtomicBoolean();
+      when(sonarLintAnalyzer.analyzeModule(eq(otherModule), eq(otherFiles), any(IssueListener.class), any(ProgressMonitor.class), anyBoolean()))
+        .thenAnswer(invocation -> {
+          otherStarted.countDown();
+          Thread.sleep(200);
+          otherFinished.set(true);
+          return analysisResults;
+        });
+      when(sonarLintAnalyzer.analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class), anyBoolean()))
+        .thenAnswer(invocation -> {
+          otherStarted.await(5, TimeUnit.SECONDS);
+          throw new IllegalStateException("error");
+        });
+      Map<Module, Collection<VirtualFile>> filesPerModule = new LinkedHashMap<>();
+      filesPerModule.put(getModule(), files);
+      filesPerModule.put(otherModule, otherFiles);
+      job = new SonarLintJob(getProject(), filesPerModule, Collections.emptyList(), TriggerType.ACTION, false, null);
+
+      new SonarLintTask(getProject(), job, false, true).run(progress);
+
+      assertThat(otherFinished).isTrue();
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
   private SonarLintJob createJob() {
     return new SonarLintJob(getModule(), files, Collections.emptyList(), TriggerType.ACTION);
   }
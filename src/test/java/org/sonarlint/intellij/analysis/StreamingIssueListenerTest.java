@@ -0,0 +1,166 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.analysis;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.trigger.TriggerType;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StreamingIssueListenerTest extends AbstractSonarLintLightTests {
+  private IssueProcessor processor = mock(IssueProcessor.class);
+  private AnalysisResults results = mock(AnalysisResults.class);
+  private List<Collection<Issue>> processedIssues = new ArrayList<>();
+  private List<Collection<VirtualFile>> processedFiles = new ArrayList<>();
+
+  @Before
+  public void prepare() {
+    replaceProjectService(IssueProcessor.class, processor);
+    replaceProjectService(SonarLintConsole.class, mock(SonarLintConsole.class));
+    when(results.failedAnalysisFiles()).thenReturn(Collections.emptyList());
+    when(processor.processFiles(anyCollection(), anyCollection(), anyCollection())).thenAnswer(i -> {
+      Collection<VirtualFile> files = new ArrayList<>(i.getArgument(0));
+      Collection<Issue> issues = new ArrayList<>(i.getArgument(1));
+      processedFiles.add(files);
+      processedIssues.add(issues);
+      Map<VirtualFile, Collection<LiveIssue>> map = new HashMap<>();
+      files.forEach(f -> map.put(f, Collections.emptyList()));
+      issues.forEach(issue -> map.put(issue.getInputFile().getClientObject(), Collections.singletonList(mock(LiveIssue.class))));
+      return map;
+    });
+  }
+
+  @Test
+  public void should_only_process_issues_of_completed_files() {
+    VirtualFile file1 = mock(VirtualFile.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    SonarLintJob job = new SonarLintJob(getModule(), Arrays.asList(file1, file2), Collections.emptyList(), TriggerType.ACTION);
+    StreamingIssueListener listener = new StreamingIssueListener(getProject(), job);
+    Issue issue1 = issue(file1);
+    Issue issue2 = issue(file2);
+
+    listener.handle(issue1);
+    listener.handle(issue2);
+    listener.filesCompleted(Collections.singleton(file1), results);
+
+    assertThat(processedFiles).containsExactly(Collections.singletonList(file1));
+    assertThat(processedIssues).containsExactly(Collections.singletonList(issue1));
+
+    listener.filesCompleted(Collections.singleton(file2), results);
+    assertThat(processedIssues).containsExactly(Collections.singletonList(issue1), Collections.singletonList(issue2));
+
+    ProgressIndicator indicator = mock(ProgressIndicator.class);
+    listener.finish(indicator);
+    verify(processor).completeJob(job, indicator, new HashSet<>(Arrays.asList(file1, file2)), Collections.emptyList());
+  }
+
+  @Test
+  public void should_clear_issues_before_first_batch() {
+    VirtualFile file1 = mock(VirtualFile.class);
+    VirtualFile file2 = mock(VirtualFile.class);
+    VirtualFile excluded = mock(VirtualFile.class);
+    SonarLintJob job = new SonarLintJob(getModule(), Arrays.asList(file1, file2), Collections.singleton(excluded), TriggerType.ACTION);
+    StreamingIssueListener listener = new StreamingIssueListener(getProject(), job);
+
+    listener.filesCompleted(Collections.singleton(file1), results);
+    listener.filesCompleted(Collections.singleton(file2), results);
+    ProgressIndicator indicator = mock(ProgressIndicator.class);
+    listener.finish(indicator);
+
+    InOrder inOrder = inOrder(processor);
+    inOrder.verify(processor).startJob(job);
+    inOrder.verify(processor, times(2)).processFiles(anyCollection(), anyCollection(), any());
+    inOrder.verify(processor).completeJob(eq(job), eq(indicator), anyCollection(), anyCollection());
+    verify(processor, times(1)).startJob(job);
+  }
+
+  @Test
+  public void should_clear_issues_of_job_without_files() {
+    VirtualFile excluded = mock(VirtualFile.class);
+    SonarLintJob job = new SonarLintJob(getModule(), Collections.emptyList(), Collections.singleton(excluded), TriggerType.ACTION);
+    StreamingIssueListener listener = new StreamingIssueListener(getProject(), job);
+
+    listener.finish(mock(ProgressIndicator.class));
+
+    verify(processor).startJob(job);
+  }
+
+  @Test
+  public void should_process_in_batches() {
+    List<VirtualFile> files = new ArrayList<>();
+    for (int i = 0; i < StreamingIssueListener.BATCH_SIZE * 2 + 1; i++) {
+      files.add(mock(VirtualFile.class));
+    }
+    SonarLintJob job = new SonarLintJob(getModule(), files, Collections.emptyList(), TriggerType.ACTION);
+    StreamingIssueListener listener = new StreamingIssueListener(getProject(), job);
+
+    listener.filesCompleted(files, results);
+
+    verify(processor, times(3)).processFiles(anyCollection(), anyCollection(), any());
+    assertThat(processedFiles).extracting(Collection::size).containsExactly(StreamingIssueListener.BATCH_SIZE, StreamingIssueListener.BATCH_SIZE, 1);
+  }
+
+  @Test
+  public void should_ignore_project_level_issues() {
+    VirtualFile file = mock(VirtualFile.class);
+    SonarLintJob job = new SonarLintJob(getModule(), Collections.singleton(file), Collections.emptyList(), TriggerType.ACTION);
+    StreamingIssueListener listener = new StreamingIssueListener(getProject(), job);
+
+    listener.handle(mock(Issue.class));
+    listener.filesCompleted(Collections.singleton(file), results);
+
+    assertThat(processedIssues).containsExactly(Collections.emptyList());
+  }
+
+  private static Issue issue(VirtualFile file) {
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getClientObject()).thenReturn(file);
+    Issue issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+}
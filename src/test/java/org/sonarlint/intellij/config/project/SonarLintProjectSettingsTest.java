@@ -48,6 +48,12 @@ public class SonarLintProjectSettingsTest {
     settings.setBindingEnabled(true);
     assertThat(settings.isBindingEnabled()).isTrue();
 
+    settings.setMaxParallelModuleAnalyses(4);
+    assertThat(settings.getMaxParallelModuleAnalyses()).isEqualTo(4);
+
+    settings.setMaxParallelModuleAnalyses(0);
+    assertThat(settings.getMaxParallelModuleAnalyses()).isEqualTo(1);
+
     assertThat(settings.getState()).isEqualTo(settings);
 
     settings.setAdditionalProperties(Collections.singletonMap("key", "value"));
@@ -0,0 +1,107 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ServerIssueBatcherTest {
+  private final List<Map<VirtualFile, Collection<Trackable>>> batches = new ArrayList<>();
+  private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+  private final ScheduledFuture<?> scheduledFlush = mock(ScheduledFuture.class);
+  private ServerIssueBatcher underTest;
+
+  @Before
+  public void setUp() {
+    doReturn(scheduledFlush).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    underTest = new ServerIssueBatcher(batches::add, scheduler, () -> 3, () -> 500);
+  }
+
+  @Test
+  public void should_match_full_batches_right_away() {
+    for (int i = 0; i < 7; i++) {
+      underTest.add(mock(VirtualFile.class), Collections.singletonList(mock(Trackable.class)));
+    }
+
+    assertThat(batches).hasSize(2);
+    assertThat(batches).allMatch(batch -> batch.size() == 3);
+    assertThat(underTest.pendingCount()).isEqualTo(1);
+    verify(scheduledFlush, times(2)).cancel(false);
+  }
+
+  @Test
+  public void should_match_incomplete_batch_after_time_window() {
+    VirtualFile file = mock(VirtualFile.class);
+    underTest.add(file, Collections.emptyList());
+    underTest.add(mock(VirtualFile.class), Collections.emptyList());
+
+    ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).schedule(flush.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+    assertThat(batches).isEmpty();
+
+    flush.getValue().run();
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).hasSize(2).containsKey(file);
+    assertThat(underTest.pendingCount()).isZero();
+  }
+
+  @Test
+  public void should_keep_latest_issues_of_a_file() {
+    VirtualFile file = mock(VirtualFile.class);
+    Collection<Trackable> latest = Collections.singletonList(mock(Trackable.class));
+    underTest.add(file, Collections.emptyList());
+    underTest.add(file, latest);
+    underTest.flush();
+
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).containsOnlyKeys(file);
+    assertThat(batches.get(0).get(file)).isSameAs(latest);
+  }
+
+  @Test
+  public void should_drop_pending_files_on_clear() {
+    underTest.add(mock(VirtualFile.class), Collections.emptyList());
+    underTest.clear();
+    underTest.flush();
+
+    assertThat(batches).isEmpty();
+    verify(scheduledFlush).cancel(false);
+  }
+}
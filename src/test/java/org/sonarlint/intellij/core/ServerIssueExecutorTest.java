@@ -0,0 +1,129 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.core.ServerIssueExecutor.Priority;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerIssueExecutorTest {
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> executed = new CopyOnWriteArrayList<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private ServerIssueExecutor underTest;
+  private Future<Void> blocker;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    underTest = new ServerIssueExecutor(1, idleCount::incrementAndGet);
+    // keeps the only thread busy, so that the next tasks wait
+    CountDownLatch started = new CountDownLatch(1);
+    blocker = underTest.submit("blocker", Priority.VISIBLE, () -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @After
+  public void tearDown() {
+    underTest.shutdown();
+  }
+
+  @Test
+  public void should_run_by_priority_then_in_order() throws Exception {
+    underTest.submit("b1", Priority.BACKGROUND, () -> executed.add("b1"));
+    underTest.submit("o1", Priority.OPEN, () -> executed.add("o1"));
+    underTest.submit("v1", Priority.VISIBLE, () -> executed.add("v1"));
+    Future<Void> last = underTest.submit("b2", Priority.BACKGROUND, () -> executed.add("b2"));
+
+    release.countDown();
+    last.get(5, TimeUnit.SECONDS);
+
+    assertThat(executed).containsExactly("v1", "o1", "b1", "b2");
+  }
+
+  @Test
+  public void should_collapse_waiting_tasks_with_same_key() throws Exception {
+    Future<Void> first = underTest.submit("a", Priority.BACKGROUND, () -> executed.add("a1"));
+    underTest.submit("b", Priority.BACKGROUND, () -> executed.add("b"));
+    Future<Void> second = underTest.submit("a", Priority.VISIBLE, () -> executed.add("a2"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(underTest.getWaitingCount()).isEqualTo(2);
+    assertThat(underTest.getQueuedCount()).isEqualTo(3);
+    assertThat(underTest.getCoalescedCount()).isEqualTo(1);
+
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    underTest.submit("c", Priority.BACKGROUND, () -> executed.add("c")).get(5, TimeUnit.SECONDS);
+
+    // the priority of the waiting task was raised
+    assertThat(executed).containsExactly("a1", "b", "c");
+  }
+
+  @Test
+  public void should_queue_again_once_started() throws Exception {
+    release.countDown();
+    blocker.get(5, TimeUnit.SECONDS);
+
+    Future<Void> again = underTest.submit("blocker", Priority.VISIBLE, () -> executed.add("again"));
+    assertThat(again).isNotSameAs(blocker);
+    again.get(5, TimeUnit.SECONDS);
+    assertThat(executed).containsExactly("again");
+  }
+
+  @Test
+  public void should_notify_when_idle() throws Exception {
+    Future<Void> task = underTest.submit("a", Priority.BACKGROUND, () -> executed.add("a"));
+    assertThat(idleCount).hasValue(0);
+
+    release.countDown();
+    task.get(5, TimeUnit.SECONDS);
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (idleCount.get() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(idleCount).hasValue(1);
+  }
+
+  @Test
+  public void should_cancel_waiting_tasks_on_shutdown() {
+    Future<Void> task = underTest.submit("a", Priority.BACKGROUND, () -> executed.add("a"));
+
+    assertThat(underTest.shutdown()).isEqualTo(1);
+    assertThat(task.isCancelled()).isTrue();
+    assertThat(underTest.getWaitingCount()).isZero();
+    assertThat(executed).isEmpty();
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerIssueFetchStrategyTest {
+  private final ServerIssueFetchStrategy underTest = new ServerIssueFetchStrategy(5);
+
+  @Test
+  public void should_download_few_files_per_file() {
+    assertThat(underTest.decide(1, -1).isDownloadProject()).isFalse();
+    assertThat(underTest.decide(5, -1).isDownloadProject()).isFalse();
+  }
+
+  @Test
+  public void should_download_many_files_with_whole_project() {
+    assertThat(underTest.decide(10, -1).isDownloadProject()).isTrue();
+    assertThat(underTest.decide(1000, 0).isDownloadProject()).isTrue();
+  }
+
+  @Test
+  public void should_prefer_whole_project_when_snapshot_gets_old() {
+    assertThat(underTest.decide(8, 0).isDownloadProject()).isFalse();
+    assertThat(underTest.decide(8, ServerIssueFetchStrategy.SNAPSHOT_FULL_VALUE_AGE_MS).isDownloadProject()).isTrue();
+  }
+
+  @Test
+  public void should_adapt_to_measured_durations() {
+    for (int i = 0; i < 20; i++) {
+      underTest.recordProjectDownload(60_000);
+      underTest.recordFileRequest(100);
+    }
+    // a large project with a fast server
+    assertThat(underTest.decide(100, -1).isDownloadProject()).isFalse();
+
+    for (int i = 0; i < 20; i++) {
+      underTest.recordProjectDownload(200);
+    }
+    assertThat(underTest.decide(20, 0).isDownloadProject()).isTrue();
+  }
+
+  @Test
+  public void should_describe_decision() {
+    assertThat(underTest.decide(3, -1))
+      .hasToString("download per file (3 files at 500ms per request: 500ms, whole project: 2000ms, snapshot age: none)");
+    assertThat(underTest.decide(20, 30_000))
+      .hasToString("download whole project (20 files at 500ms per request: 2000ms, whole project: 2000ms, snapshot age: 30s)");
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.core;
+
+import com.intellij.ide.util.PropertiesComponent;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerIssueSnapshotTest extends AbstractSonarLintLightTests {
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private ServerIssueSnapshot underTest;
+
+  @Before
+  public void setUp() {
+    underTest = new ServerIssueSnapshot(PropertiesComponent.getInstance(getProject()), clock::get);
+  }
+
+  @After
+  public void tearDown() {
+    underTest.invalidate("server", "project");
+  }
+
+  @Test
+  public void should_not_exist_before_first_sync() {
+    assertThat(underTest.getLastSync("server", "project")).isNull();
+    assertThat(underTest.getAge("server", "project")).isEqualTo(-1);
+    assertThat(underTest.isStale("server", "project")).isTrue();
+  }
+
+  @Test
+  public void should_become_stale_with_time() {
+    underTest.markSynced("server", "project", clock.get());
+    assertThat(underTest.getLastSync("server", "project")).isEqualTo(clock.get());
+    assertThat(underTest.getLastSync("server", "otherProject")).isNull();
+    assertThat(underTest.isStale("server", "project")).isFalse();
+
+    clock.addAndGet(ServerIssueSnapshot.MAX_AGE_MS + 1);
+    assertThat(underTest.getAge("server", "project")).isEqualTo(ServerIssueSnapshot.MAX_AGE_MS + 1);
+    assertThat(underTest.isStale("server", "project")).isTrue();
+  }
+
+  @Test
+  public void should_not_exist_once_invalidated() {
+    underTest.markSynced("server", "project", clock.get());
+    underTest.invalidate("server", "project");
+    assertThat(underTest.getAge("server", "project")).isEqualTo(-1);
+  }
+}
@@ -19,18 +19,24 @@
  */
 package org.sonarlint.intellij.core;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.EmptyProgressIndicator;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
 import org.sonarlint.intellij.config.global.SonarQubeServer;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.exception.InvalidBindingException;
 import org.sonarlint.intellij.issue.IssueManager;
+import org.sonarlint.intellij.messages.GlobalConfigurationListener;
+import org.sonarlint.intellij.messages.ProjectConfigurationListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintUtils;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
@@ -38,7 +44,9 @@ import org.sonarsource.sonarlint.core.client.api.connected.ProjectBinding;
 import org.sonarsource.sonarlint.core.client.api.connected.ServerConfiguration;
 import org.sonarsource.sonarlint.core.client.api.connected.ServerIssue;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
@@ -47,6 +55,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -74,12 +83,14 @@ public class ServerIssueUpdaterTest extends AbstractSonarLintLightTests {
     getGlobalSettings().setSonarQubeServers(Collections.singletonList(SonarQubeServer.newBuilder().setName(SERVER_ID).setHostUrl("http://dummyserver:9000").build()));
     getProjectSettings().setServerId(SERVER_ID);
     getProjectSettings().setProjectKey(PROJECT_KEY);
-
+    underTest.getSnapshot().invalidate(SERVER_ID, PROJECT_KEY);
   }
 
   @After
   public void dispose() {
     underTest.dispose();
+    underTest.getSnapshot().invalidate(SERVER_ID, PROJECT_KEY);
+    getProjectSettings().setServerIssuesBatchSize(SonarLintProjectSettings.DEFAULT_SERVER_ISSUES_BATCH_SIZE);
   }
 
   @Test
@@ -105,7 +116,7 @@ public class ServerIssueUpdaterTest extends AbstractSonarLintLightTests {
 
     underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), Collections.singletonList(file)), new EmptyProgressIndicator(), false);
 
-    verify(issueManager, timeout(3000).times(1)).matchWithServerIssues(eq(file), argThat(issues -> issues.size() == 1));
+    verify(issueManager, timeout(3000).times(1)).matchWithServerIssues(argThat(map -> map.size() == 1 && map.get(file).size() == 1));
 
     verify(mockedConsole, never()).error(anyString());
     verify(mockedConsole, never()).error(anyString(), any(Throwable.class));
@@ -130,9 +141,128 @@ public class ServerIssueUpdaterTest extends AbstractSonarLintLightTests {
 
     underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), files), new EmptyProgressIndicator(), false);
 
-    verify(issueManager, timeout(3000).times(10)).matchWithServerIssues(any(VirtualFile.class), argThat(issues -> issues.size() == 1));
+    verify(issueManager, timeout(3000).times(1)).matchWithServerIssues(argThat(map -> map.size() == 10 && map.values().stream().allMatch(issues -> issues.size() == 1)));
     verify(engine).downloadServerIssues(any(ServerConfiguration.class), eq(PROJECT_KEY));
     verify(mockedConsole, never()).error(anyString());
     verify(mockedConsole, never()).error(anyString(), any(Throwable.class));
+    assertThat(underTest.getSnapshot().getLastSync(SERVER_ID, PROJECT_KEY)).isNotNull();
+  }
+
+  @Test
+  public void should_match_with_snapshot_without_downloading() {
+    VirtualFile file = myFixture.copyFileToProject(FOO_PHP, FOO_PHP);
+    ServerIssue serverIssue = mock(ServerIssue.class);
+    when(engine.getServerIssues(PROJECT_BINDING, FOO_PHP)).thenReturn(Collections.singletonList(serverIssue));
+    underTest.getSnapshot().markSynced(SERVER_ID, PROJECT_KEY, System.currentTimeMillis());
+    getProjectSettings().setBindingEnabled(true);
+
+    underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), Collections.singletonList(file)), new EmptyProgressIndicator(), true);
+
+    verify(issueManager).matchWithServerIssues(argThat(map -> map.size() == 1 && map.get(file).size() == 1));
+    verify(engine, never()).downloadServerIssues(any(ServerConfiguration.class), any(ProjectBinding.class), anyString());
+    verify(engine, never()).downloadServerIssues(any(ServerConfiguration.class), anyString());
+  }
+
+  @Test
+  public void should_invalidate_snapshot_when_binding_changes() {
+    underTest.getSnapshot().markSynced(SERVER_ID, PROJECT_KEY, System.currentTimeMillis());
+
+    getProject().getMessageBus().syncPublisher(ProjectConfigurationListener.TOPIC).changed(getProjectSettings());
+
+    assertThat(underTest.getSnapshot().getLastSync(SERVER_ID, PROJECT_KEY)).isNull();
+  }
+
+  @Test
+  public void should_invalidate_snapshot_when_connections_are_applied() {
+    underTest.getSnapshot().markSynced(SERVER_ID, PROJECT_KEY, System.currentTimeMillis());
+
+    ApplicationManager.getApplication().getMessageBus().syncPublisher(GlobalConfigurationListener.TOPIC).applied(getGlobalSettings());
+
+    assertThat(underTest.getSnapshot().getLastSync(SERVER_ID, PROJECT_KEY)).isNull();
+  }
+
+  @Test
+  public void should_download_few_files_in_background_if_snapshot_is_stale() {
+    VirtualFile file = myFixture.copyFileToProject(FOO_PHP, FOO_PHP);
+    ServerIssue serverIssue = mock(ServerIssue.class);
+    when(engine.getServerIssues(PROJECT_BINDING, FOO_PHP)).thenReturn(Collections.singletonList(serverIssue));
+    when(engine.downloadServerIssues(any(ServerConfiguration.class), eq(PROJECT_BINDING), eq(FOO_PHP))).thenReturn(Collections.singletonList(serverIssue));
+    long lastSync = System.currentTimeMillis() - ServerIssueSnapshot.MAX_AGE_MS - 1000;
+    underTest.getSnapshot().markSynced(SERVER_ID, PROJECT_KEY, lastSync);
+    getProjectSettings().setBindingEnabled(true);
+
+    underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), Collections.singletonList(file)), new EmptyProgressIndicator(), false);
+
+    // matched right away with the stale snapshot, and again once downloaded (unless both end up in the same batch)
+    verify(engine, timeout(3000)).downloadServerIssues(any(ServerConfiguration.class), eq(PROJECT_BINDING), eq(FOO_PHP));
+    verify(issueManager, timeout(3000).atLeastOnce()).matchWithServerIssues(argThat(map -> map.size() == 1));
+    verify(engine, never()).downloadServerIssues(any(ServerConfiguration.class), anyString());
+    assertThat(underTest.getSnapshot().getLastSync(SERVER_ID, PROJECT_KEY)).isEqualTo(lastSync);
+    verify(mockedConsole).debug(argThat(msg -> msg.startsWith("Server issues fetch strategy: download per file (1 files")));
+  }
+
+  @Test
+  public void should_refresh_old_snapshot_in_background() {
+    List<VirtualFile> files = new LinkedList<>();
+    for (int i = 0; i < 10; i++) {
+      files.add(myFixture.copyFileToProject(FOO_PHP, "foo" + i + ".php"));
+    }
+    ServerIssue serverIssue = mock(ServerIssue.class);
+    when(engine.getServerIssues(eq(PROJECT_BINDING), anyString())).thenReturn(Collections.singletonList(serverIssue));
+    long lastSync = System.currentTimeMillis() - 2 * ServerIssueFetchStrategy.SNAPSHOT_FULL_VALUE_AGE_MS;
+    underTest.getSnapshot().markSynced(SERVER_ID, PROJECT_KEY, lastSync);
+    getProjectSettings().setBindingEnabled(true);
+
+    underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), files), new EmptyProgressIndicator(), false);
+
+    // matched right away with the stale snapshot, and again once it is refreshed
+    verify(engine, timeout(3000)).downloadServerIssues(any(ServerConfiguration.class), eq(PROJECT_KEY));
+    verify(engine, timeout(3000).times(20)).getServerIssues(eq(PROJECT_BINDING), anyString());
+    verify(issueManager, timeout(3000).atLeastOnce()).matchWithServerIssues(argThat(map -> map.size() == 10));
+    verify(engine, never()).downloadServerIssues(any(ServerConfiguration.class), any(ProjectBinding.class), anyString());
+    assertThat(underTest.getSnapshot().getLastSync(SERVER_ID, PROJECT_KEY)).isGreaterThan(lastSync);
+    verify(mockedConsole).debug(argThat(msg -> msg.startsWith("Server issues fetch strategy: download whole project (10 files")));
+  }
+
+  @Test
+  public void should_degrade_to_project_download_when_too_many_requests_wait() throws Exception {
+    List<VirtualFile> files = new LinkedList<>();
+    for (int i = 0; i < 110; i++) {
+      files.add(myFixture.copyFileToProject(FOO_PHP, "foo" + i + ".php"));
+    }
+    CountDownLatch release = new CountDownLatch(1);
+    when(engine.downloadServerIssues(any(ServerConfiguration.class), eq(PROJECT_BINDING), anyString())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return Collections.emptyList();
+    });
+    // downloading the whole project looks too slow to be chosen up front
+    underTest.getFetchStrategy().recordProjectDownload(10_000_000);
+    getProjectSettings().setBindingEnabled(true);
+
+    underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), files), new EmptyProgressIndicator(), false);
+    release.countDown();
+
+    verify(engine, timeout(5000)).downloadServerIssues(any(ServerConfiguration.class), eq(PROJECT_KEY));
+    verify(mockedConsole).debug(argThat(msg -> msg.startsWith("Too many server issue requests waiting")));
+    assertThat(underTest.getStats()).doesNotContain(" 0 files degraded");
+  }
+
+  @Test
+  public void should_match_in_batches_of_configured_size() {
+    List<VirtualFile> files = new LinkedList<>();
+    for (int i = 0; i < 10; i++) {
+      VirtualFile file = myFixture.copyFileToProject(FOO_PHP, "foo" + i + ".php");
+      files.add(file);
+    }
+    ServerIssue serverIssue = mock(ServerIssue.class);
+    when(engine.getServerIssues(eq(PROJECT_BINDING), anyString())).thenReturn(Collections.singletonList(serverIssue));
+    getProjectSettings().setServerIssuesBatchSize(4);
+    getProjectSettings().setBindingEnabled(true);
+
+    underTest.fetchAndMatchServerIssues(Collections.singletonMap(getModule(), files), new EmptyProgressIndicator(), true);
+
+    verify(issueManager, times(2)).matchWithServerIssues(argThat(map -> map.size() == 4));
+    verify(issueManager, times(1)).matchWithServerIssues(argThat(map -> map.size() == 2));
+    verify(issueManager, never()).matchWithServerIssues(any(VirtualFile.class), anyCollection());
   }
 }
@@ -21,11 +21,15 @@ package org.sonarlint.intellij.issue;
 
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -35,13 +39,20 @@ import org.sonarlint.intellij.AbstractSonarLintLightTests;
 import org.sonarlint.intellij.SonarLintTestUtils;
 import org.sonarlint.intellij.issue.persistence.IssuePersistence;
 import org.sonarlint.intellij.issue.persistence.LiveIssueCache;
+import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.messages.IssueStoreListener;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.any;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 public class IssueManagerTest extends AbstractSonarLintLightTests {
@@ -206,6 +217,71 @@ public class IssueManagerTest extends AbstractSonarLintLightTests {
     assertThat(issuePointer.getSeverity()).isEqualTo("sev");
   }
 
+  @Test
+  public void should_release_file_lock_on_error() throws Exception {
+    LiveIssue serverIssue = createRangeStoredIssue(1, "issue 1", 10);
+    doThrow(new IllegalStateException("error")).doNothing().when(cache).save(eq(file1), anyCollection());
+
+    assertThatThrownBy(() -> manager.matchWithServerIssues(file1, Collections.singleton(serverIssue)))
+      .isInstanceOf(IllegalStateException.class);
+
+    // the lock is reentrant, so it must be taken from another thread to verify it was released
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> manager.matchWithServerIssues(file1, Collections.singleton(serverIssue))).get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(cache, times(2)).save(eq(file1), anyCollection());
+    assertThat(manager.getLockWaitStats()).startsWith("2 acquisitions");
+  }
+
+  @Test
+  public void should_notify_once_per_batch_of_matched_files() {
+    VirtualFile file2 = mock(VirtualFile.class);
+    LiveIssue issue2 = createRangeStoredIssue(2, "issue 2", 20);
+    when(cache.contains(file2)).thenReturn(true);
+    when(cache.getLive(file2)).thenReturn(Collections.singletonList(issue2));
+    doThrow(new IllegalStateException("error")).when(cache).save(eq(file1), anyCollection());
+    IssueStoreListener listener = mock(IssueStoreListener.class);
+    getProject().getMessageBus().connect(myFixture.getTestRootDisposable()).subscribe(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC, listener);
+
+    Map<VirtualFile, Collection<Trackable>> serverIssues = new LinkedHashMap<>();
+    serverIssues.put(file1, Collections.emptyList());
+    serverIssues.put(file2, Collections.emptyList());
+    assertThatThrownBy(() -> manager.matchWithServerIssues(serverIssues)).isInstanceOf(IllegalStateException.class);
+
+    // the failure on the first file doesn't prevent the second one from being matched and notified
+    verify(cache).save(eq(file2), anyCollection());
+    verify(listener).filesChanged(Collections.singletonMap(file2, Collections.singletonList(issue2)));
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void should_not_publish_files_without_live_issues() {
+    VirtualFile file2 = mock(VirtualFile.class);
+    when(cache.contains(file2)).thenReturn(true);
+    when(cache.getLive(file2)).thenReturn(null);
+    IssueStoreListener listener = mock(IssueStoreListener.class);
+    getProject().getMessageBus().connect(myFixture.getTestRootDisposable()).subscribe(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC, listener);
+
+    Map<VirtualFile, Collection<Trackable>> serverIssues = new LinkedHashMap<>();
+    serverIssues.put(file1, Collections.emptyList());
+    serverIssues.put(file2, Collections.emptyList());
+    manager.matchWithServerIssues(serverIssues);
+
+    verify(listener).filesChanged(Collections.singletonMap(file1, Collections.singletonList(issue1)));
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void should_spread_files_over_lock_stripes() {
+    for (int i = 0; i < 1000; i++) {
+      VirtualFile file = mock(VirtualFile.class);
+      assertThat(IssueManager.stripe(file)).isBetween(0, IssueManager.LOCK_STRIPES - 1);
+    }
+  }
+
   @Test
   public void unknown_file() {
     VirtualFile unknownFile = mock(VirtualFile.class);
@@ -259,7 +335,9 @@ public class IssueManagerTest extends AbstractSonarLintLightTests {
     RangeMarker range = mock(RangeMarker.class);
     when(range.isValid()).thenReturn(true);
     when(range.getDocument()).thenReturn(document);
-    when(document.getText(any(TextRange.class))).thenReturn(rangeContent);
+    when(range.getEndOffset()).thenReturn(rangeContent.length());
+    when(document.getImmutableCharSequence()).thenReturn(rangeContent);
+    when(document.getLineEndOffset(anyInt())).thenReturn(rangeContent.length());
     PsiFile psiFile = mock(PsiFile.class);
     when(psiFile.isValid()).thenReturn(true);
     return new LiveIssue(issue, psiFile, range, Collections.emptyList());
@@ -0,0 +1,132 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.lang.Language;
+import com.intellij.openapi.editor.ex.DocumentEx;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueProcessorTest extends AbstractSonarLintLightTests {
+  private IssueManager manager = mock(IssueManager.class);
+  private IssueProcessor processor;
+
+  @Before
+  public void prepare() {
+    replaceProjectService(IssueManager.class, manager);
+    replaceProjectService(SonarLintConsole.class, mock(SonarLintConsole.class));
+    processor = new IssueProcessor(getProject());
+  }
+
+  @Test
+  public void should_transform_issues_per_file() {
+    VirtualFile file1 = createTestFile("Foo.java", Language.findLanguageByID("JAVA"), "public class Foo {\n}");
+    VirtualFile file2 = createTestFile("Bar.java", Language.findLanguageByID("JAVA"), "public class Bar {}");
+    VirtualFile file3 = createTestFile("Baz.java", Language.findLanguageByID("JAVA"), "public class Baz {}");
+    ClientInputFile inputFile1 = inputFile(file1);
+    ClientInputFile inputFile2 = inputFile(file2);
+
+    Map<VirtualFile, Collection<LiveIssue>> result = processor.processFiles(Arrays.asList(file1, file2, file3),
+      Arrays.asList(issue(inputFile1, 1, 2), issue(inputFile2, 1, 1), issue(inputFile1, 2, 2)), Collections.emptyList());
+
+    assertThat(result).containsOnlyKeys(file1, file2, file3);
+    assertThat(result.get(file1)).extracting(LiveIssue::getLine).containsExactly(1, 2);
+    assertThat(result.get(file2)).extracting(LiveIssue::getLine).containsExactly(1);
+    assertThat(result.get(file3)).isEmpty();
+    verify(manager).store(result);
+  }
+
+  @Test
+  public void should_not_refresh_files_with_unmatched_issues() {
+    VirtualFile file1 = createTestFile("Foo.java", Language.findLanguageByID("JAVA"), "public class Foo {}");
+    VirtualFile file2 = createTestFile("Bar.java", Language.findLanguageByID("JAVA"), "public class Bar {}");
+
+    Map<VirtualFile, Collection<LiveIssue>> result = processor.processFiles(Arrays.asList(file1, file2),
+      Arrays.asList(issue(inputFile(file1), 1, 1), issue(inputFile(file2), 10, 10)), Collections.emptyList());
+
+    assertThat(result).containsOnlyKeys(file1);
+  }
+
+  @Test
+  public void should_dispose_range_markers_of_unmatched_files() {
+    VirtualFile file = createTestFile("Foo.java", Language.findLanguageByID("JAVA"), "public class Foo {}");
+    DocumentEx document = (DocumentEx) FileDocumentManager.getInstance().getDocument(file);
+    int markersBefore = countRangeMarkers(document);
+
+    Map<VirtualFile, Collection<LiveIssue>> result = processor.processFiles(Collections.singleton(file),
+      Arrays.asList(issue(inputFile(file), 1, 1), issue(inputFile(file), 10, 10)), Collections.emptyList());
+
+    assertThat(result).isEmpty();
+    assertThat(countRangeMarkers(document)).isEqualTo(markersBefore);
+  }
+
+  private static int countRangeMarkers(DocumentEx document) {
+    AtomicInteger count = new AtomicInteger();
+    document.processRangeMarkers(marker -> {
+      count.incrementAndGet();
+      return true;
+    });
+    return count.get();
+  }
+
+  @Test
+  public void should_not_refresh_failed_files() {
+    VirtualFile file = createTestFile("Foo.java", Language.findLanguageByID("JAVA"), "public class Foo {}");
+    ClientInputFile inputFile = inputFile(file);
+
+    Map<VirtualFile, Collection<LiveIssue>> result = processor.processFiles(Collections.singleton(file),
+      Collections.singleton(issue(inputFile, 1, 1)), Collections.singleton(inputFile));
+
+    assertThat(result).isEmpty();
+  }
+
+  private static ClientInputFile inputFile(VirtualFile file) {
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getClientObject()).thenReturn(file);
+    when(inputFile.getPath()).thenReturn(file.getPath());
+    return inputFile;
+  }
+
+  private static Issue issue(ClientInputFile inputFile, int startLine, int endLine) {
+    Issue issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    when(issue.getRuleKey()).thenReturn("java:S1234");
+    when(issue.getMessage()).thenReturn("msg");
+    when(issue.getStartLine()).thenReturn(startLine);
+    when(issue.getEndLine()).thenReturn(endLine);
+    return issue;
+  }
+}
@@ -19,6 +19,7 @@
  */
 package org.sonarlint.intellij.issue;
 
+import java.util.Arrays;
 import org.junit.Test;
 import org.sonarlint.intellij.proto.Sonarlint;
 
@@ -50,6 +51,20 @@ public class LocalIssueTrackableTest {
     assertThat(trackable.getRuleKey()).isEqualTo("ruleKey");
   }
 
+  @Test
+  public void testStringTable() {
+    Sonarlint.Issues.Issue issue = Sonarlint.Issues.Issue.newBuilder()
+      .setRuleKeyRef(1)
+      .setMessageRef(2)
+      .setAssigneeRef(1)
+      .build();
+
+    LocalIssueTrackable trackable = new LocalIssueTrackable(issue.toByteString(), Arrays.asList("ruleKey", "msg"));
+    assertThat(trackable.getRuleKey()).isEqualTo("ruleKey");
+    assertThat(trackable.getMessage()).isEqualTo("msg");
+    assertThat(trackable.getAssignee()).isEqualTo("ruleKey");
+  }
+
   @Test
   public void testNulls() {
     Sonarlint.Issues.Issue issue = Sonarlint.Issues.Issue.newBuilder()
@@ -0,0 +1,72 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.util.Random;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TextChecksumTest {
+
+  @Test
+  public void should_ignore_whitespaces() {
+    assertThat(TextChecksum.checksum("int a = 1;")).isEqualTo(TextChecksum.checksum(" int\ta=1;\r\n"));
+    assertThat(TextChecksum.checksum("int a = 1;")).isNotEqualTo(TextChecksum.checksum("int a = 2;"));
+  }
+
+  @Test
+  public void should_checksum_range() {
+    assertThat(TextChecksum.checksum("foo bar baz", 4, 7)).isEqualTo(TextChecksum.checksum("bar"));
+  }
+
+  @Test
+  public void should_be_compatible_with_stored_checksums() {
+    assertThat(TextChecksum.checksum("")).isEqualTo(legacyChecksum(""));
+    assertThat(TextChecksum.checksum("public class Foo {}")).isEqualTo(legacyChecksum("public class Foo {}"));
+    // non ASCII characters, surrogate pairs and lone surrogates
+    assertThat(TextChecksum.checksum("caf\u00e9 \u4e2d \uD83D\uDE00")).isEqualTo(legacyChecksum("caf\u00e9 \u4e2d \uD83D\uDE00"));
+    assertThat(TextChecksum.checksum("\uD83D \uDE00")).isEqualTo(legacyChecksum("\uD83D \uDE00"));
+    assertThat(TextChecksum.checksum("a\uDE00\uD83Db\uD83D")).isEqualTo(legacyChecksum("a\uDE00\uD83Db\uD83D"));
+  }
+
+  @Test
+  public void should_be_compatible_with_stored_checksums_on_random_text() {
+    char[] chars = {' ', '\t', '\n', '\r', '\f', '\u000B', '\u00a0', 'a', '{', '\u00e9', '\u4e2d', '\uD83D', '\uDE00'};
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      StringBuilder builder = new StringBuilder();
+      // longer than the internal buffer
+      int length = random.nextInt(3000);
+      for (int j = 0; j < length; j++) {
+        builder.append(chars[random.nextInt(chars.length)]);
+      }
+      String text = builder.toString();
+      assertThat(TextChecksum.checksum(text)).as(text).isEqualTo(legacyChecksum(text));
+    }
+  }
+
+  private static int legacyChecksum(String content) {
+    return Hex.encodeHexString(DigestUtils.md5(content.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode();
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AnalysisResultCacheTest {
+  private Project project = mock(Project.class);
+  private ClientInputFile inputFile = mock(ClientInputFile.class);
+  private AnalysisResultCache cache;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws IOException {
+    VirtualFile baseDir = mock(VirtualFile.class);
+
+    when(project.getBasePath()).thenReturn(temp.getRoot().getAbsolutePath());
+    when(project.getBaseDir()).thenReturn(baseDir);
+    when(baseDir.getPath()).thenReturn(temp.getRoot().getAbsolutePath());
+    when(baseDir.findFileByRelativePath(anyString())).thenReturn(baseDir);
+    when(baseDir.isValid()).thenReturn(true);
+    when(inputFile.relativePath()).thenReturn("src/Foo.java");
+    when(inputFile.getCharset()).thenReturn(StandardCharsets.UTF_8);
+    when(inputFile.inputStream()).thenAnswer(i -> new ByteArrayInputStream("class Foo {}".getBytes(StandardCharsets.UTF_8)));
+    cache = new AnalysisResultCache(project);
+  }
+
+  @Test
+  public void should_replay_saved_issues() {
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    cache.save(inputFile, hash, "config", "java", Collections.singleton(testIssue()));
+
+    List<Issue> replayed = new ArrayList<>();
+    assertThat(cache.replay(inputFile, hash, "config", replayed::add)).isEqualTo(Optional.of("java"));
+
+    assertThat(replayed).hasSize(1);
+    Issue issue = replayed.get(0);
+    assertThat(issue.getInputFile()).isSameAs(inputFile);
+    assertThat(issue.getRuleKey()).isEqualTo("java:S1234");
+    assertThat(issue.getRuleName()).isEqualTo("rule");
+    assertThat(issue.getSeverity()).isEqualTo("MAJOR");
+    assertThat(issue.getType()).isEqualTo("BUG");
+    assertThat(issue.getMessage()).isEqualTo("msg");
+    assertThat(issue.getStartLine()).isEqualTo(1);
+    assertThat(issue.getStartLineOffset()).isEqualTo(2);
+    assertThat(issue.getEndLine()).isEqualTo(3);
+    assertThat(issue.getEndLineOffset()).isEqualTo(4);
+    assertThat(issue.flows()).hasSize(1);
+    assertThat(issue.flows().get(0).locations()).hasSize(1);
+    assertThat(issue.flows().get(0).locations().get(0).getMessage()).isEqualTo("flow msg");
+    assertThat(cache.hits()).isEqualTo(1);
+    assertThat(cache.misses()).isZero();
+  }
+
+  @Test
+  public void should_miss_if_content_or_configuration_changed() {
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    cache.save(inputFile, hash, "config", "java", Collections.singleton(testIssue()));
+
+    List<Issue> replayed = new ArrayList<>();
+    assertThat(cache.replay(inputFile, "otherHash", "config", replayed::add)).isEmpty();
+    assertThat(cache.replay(inputFile, hash, "otherConfig", replayed::add)).isEmpty();
+    assertThat(replayed).isEmpty();
+    assertThat(cache.misses()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_miss_after_clear() {
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    cache.save(inputFile, hash, "config", "java", Collections.emptyList());
+    cache.clear();
+
+    assertThat(cache.replay(inputFile, hash, "config", i -> {
+    })).isEmpty();
+  }
+
+  @Test
+  public void should_replay_without_waiting_for_writers() throws Exception {
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    cache.save(inputFile, hash, "config", "java", Collections.singleton(testIssue()));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // held by writers and while the store is opened
+      synchronized (cache) {
+        Future<Optional<String>> replayed = executor.submit(() -> cache.replay(inputFile, hash, "config", i -> {
+        }));
+        assertThat(replayed.get(5, TimeUnit.SECONDS)).isEqualTo(Optional.of("java"));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void should_open_store_lazily_and_reload_entries() {
+    Path storePath = temp.getRoot().toPath().resolve(Project.DIRECTORY_STORE_FOLDER).resolve("sonarlint").resolve("analysisresults");
+    assertThat(storePath).doesNotExist();
+
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    cache.save(inputFile, hash, "config", "java", Collections.singleton(testIssue()));
+    assertThat(storePath.resolve(AnalysisResultCache.LOG_FILENAME)).exists();
+    cache.dispose();
+
+    AnalysisResultCache reloaded = new AnalysisResultCache(project);
+    assertThat(reloaded.replay(inputFile, hash, "config", i -> {
+    })).isEqualTo(Optional.of("java"));
+  }
+
+  @Test
+  public void should_clean_entries_of_deleted_files() {
+    ClientInputFile otherFile = mock(ClientInputFile.class);
+    when(otherFile.relativePath()).thenReturn("src/Bar.java");
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    cache.save(inputFile, hash, "config", "java", Collections.emptyList());
+    cache.save(otherFile, hash, "config", "java", Collections.emptyList());
+    when(project.getBaseDir().findFileByRelativePath("src/Foo.java")).thenReturn(null);
+
+    cache.clean();
+
+    assertThat(cache.replay(inputFile, hash, "config", i -> {
+    })).isEmpty();
+    assertThat(cache.replay(otherFile, hash, "config", i -> {
+    })).isPresent();
+  }
+
+  @Test
+  public void content_hash_depends_on_content() {
+    String hash = AnalysisResultCache.contentHash(inputFile);
+    assertThat(AnalysisResultCache.contentHash(inputFile)).isEqualTo(hash);
+
+    when(inputFile.inputStream()).thenAnswer(i -> new ByteArrayInputStream("class Bar {}".getBytes(StandardCharsets.UTF_8)));
+    assertThat(AnalysisResultCache.contentHash(inputFile)).isNotEqualTo(hash);
+  }
+
+  @Test
+  public void configuration_fingerprint_depends_on_rules_properties_and_analyzers() {
+    PluginDetails java = mock(PluginDetails.class);
+    when(java.key()).thenReturn("java");
+    when(java.version()).thenReturn("1.0");
+    String fingerprint = AnalysisResultCache.configurationFingerprint("rules", Collections.singletonMap("k", "v"), Collections.singleton(java));
+
+    assertThat(AnalysisResultCache.configurationFingerprint("rules", Collections.singletonMap("k", "v"), Collections.singleton(java))).isEqualTo(fingerprint);
+    assertThat(AnalysisResultCache.configurationFingerprint("rules2", Collections.singletonMap("k", "v"), Collections.singleton(java))).isNotEqualTo(fingerprint);
+    assertThat(AnalysisResultCache.configurationFingerprint("rules", Collections.singletonMap("k", "v2"), Collections.singleton(java))).isNotEqualTo(fingerprint);
+    when(java.version()).thenReturn("2.0");
+    assertThat(AnalysisResultCache.configurationFingerprint("rules", Collections.singletonMap("k", "v"), Collections.singleton(java))).isNotEqualTo(fingerprint);
+  }
+
+  private Issue testIssue() {
+    IssueLocation flowLocation = mock(IssueLocation.class);
+    when(flowLocation.getStartLine()).thenReturn(5);
+    when(flowLocation.getMessage()).thenReturn("flow msg");
+    Issue.Flow flow = mock(Issue.Flow.class);
+    when(flow.locations()).thenReturn(Collections.singletonList(flowLocation));
+
+    Issue issue = mock(Issue.class);
+    when(issue.getRuleKey()).thenReturn("java:S1234");
+    when(issue.getRuleName()).thenReturn("rule");
+    when(issue.getSeverity()).thenReturn("MAJOR");
+    when(issue.getType()).thenReturn("BUG");
+    when(issue.getMessage()).thenReturn("msg");
+    when(issue.getStartLine()).thenReturn(1);
+    when(issue.getStartLineOffset()).thenReturn(2);
+    when(issue.getEndLine()).thenReturn(3);
+    when(issue.getEndLineOffset()).thenReturn(4);
+    when(issue.flows()).thenReturn(Collections.singletonList(flow));
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+}
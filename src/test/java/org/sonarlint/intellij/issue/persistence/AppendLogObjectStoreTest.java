@@ -0,0 +1,242 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.util.SystemInfo;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeFalse;
+
+public class AppendLogObjectStoreTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Reader<String> reader = stream -> new Scanner(stream, StandardCharsets.UTF_8.name()).next();
+  private final Writer<String> writer = (stream, str) -> {
+    try {
+      stream.write(str.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  };
+  private Path logPath;
+  private AppendLogObjectStore<String> store;
+
+  @Before
+  public void setUp() {
+    logPath = temp.getRoot().toPath().resolve("store").resolve("issues.log");
+    store = open(Long.MAX_VALUE);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+  }
+
+  private AppendLogObjectStore<String> open(long minGarbageToCompact) {
+    return new AppendLogObjectStore<>(logPath, reader, writer, key -> !key.startsWith("invalid"), minGarbageToCompact);
+  }
+
+  @Test
+  public void should_write_and_read() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("other", "othervalue");
+
+    assertThat(store.read("mykey")).hasValue("myvalue");
+    assertThat(store.read("other")).hasValue("othervalue");
+    assertThat(store.read("random")).isEmpty();
+    assertThat(store.contains("mykey")).isTrue();
+    assertThat(store.contains("random")).isFalse();
+    assertThat(store.keys()).containsOnly("mykey", "other");
+  }
+
+  @Test
+  public void should_read_latest_value_after_reopening() throws IOException {
+    store.write("mykey", "value1");
+    store.write("mykey", "value2");
+    store.write("deleted", "value");
+    store.delete("deleted");
+    store.close();
+
+    store = open(Long.MAX_VALUE);
+    assertThat(store.read("mykey")).hasValue("value2");
+    assertThat(store.contains("deleted")).isFalse();
+    assertThat(store.keys()).containsOnly("mykey");
+  }
+
+  @Test
+  public void should_delete() throws IOException {
+    store.write("mykey", "myvalue");
+    store.delete("mykey");
+    store.delete("random");
+
+    assertThat(store.read("mykey")).isEmpty();
+    assertThat(store.contains("mykey")).isFalse();
+  }
+
+  @Test
+  public void should_delete_invalid() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("invalidkey", "myvalue");
+
+    store.deleteInvalid();
+
+    assertThat(store.keys()).containsOnly("mykey");
+  }
+
+  @Test
+  public void should_compact_when_garbage_exceeds_live_data() throws IOException {
+    store.close();
+    store = open(100);
+    for (int i = 0; i < 100; i++) {
+      store.write("mykey", "value" + i);
+    }
+    store.write("other", "othervalue");
+
+    assertThat(store.garbageBytes()).isLessThan(100);
+    assertThat(store.size()).isLessThan(200);
+    assertThat(store.read("mykey")).hasValue("value99");
+    assertThat(store.read("other")).hasValue("othervalue");
+
+    store.close();
+    store = open(100);
+    assertThat(store.read("mykey")).hasValue("value99");
+    assertThat(store.read("other")).hasValue("othervalue");
+  }
+
+  @Test
+  public void should_read_bytes_without_copy() throws IOException {
+    store.write("mykey", "myvalue");
+
+    ByteBuffer bytes = store.readBytes("mykey");
+    assertThat(bytes.isReadOnly()).isTrue();
+    assertThat(StandardCharsets.UTF_8.decode(bytes).toString()).isEqualTo("myvalue");
+    assertThat(store.readBytes("random")).isNull();
+  }
+
+  @Test
+  public void should_only_map_complete_chunks() throws IOException {
+    assumeFalse(SystemInfo.isWindows);
+    char[] chars = new char[(int) (AppendLogObjectStore.MAPPED_CHUNK_SIZE * 3 / 4)];
+    Arrays.fill(chars, 'a');
+    String first = new String(chars);
+    Arrays.fill(chars, 'b');
+    String second = new String(chars);
+
+    store.write("first", first);
+    assertThat(StandardCharsets.UTF_8.decode(store.readBytes("first")).toString()).isEqualTo(first);
+    assertThat(store.mappedChunks()).isZero();
+
+    store.write("second", second);
+    assertThat(StandardCharsets.UTF_8.decode(store.readBytes("first")).toString()).isEqualTo(first);
+    assertThat(store.mappedChunks()).isEqualTo(1);
+    // spans two chunks
+    assertThat(StandardCharsets.UTF_8.decode(store.readBytes("second")).toString()).isEqualTo(second);
+    assertThat(store.readBytes("first")).isNotNull();
+    assertThat(store.mappedChunks()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_read_concurrently_with_writes_and_compactions() throws Exception {
+    store.close();
+    store = open(1024);
+    AtomicBoolean stop = new AtomicBoolean();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Thread> readers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread reader = new Thread(() -> {
+        try {
+          while (!stop.get()) {
+            for (int k = 0; k < 10; k++) {
+              Optional<String> value = store.read("key" + k);
+              if (value.isPresent() && !value.get().startsWith("key" + k + ":")) {
+                throw new IllegalStateException("Unexpected value " + value.get());
+              }
+            }
+          }
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      store.write("key" + (i % 10), "key" + (i % 10) + ":" + i);
+    }
+    stop.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertThat(failure.get()).isNull();
+    assertThat(store.read("key9")).hasValue("key9:9999");
+  }
+
+  @Test
+  public void should_discard_incomplete_record() throws IOException {
+    store.write("mykey", "myvalue");
+    store.close();
+    long size = Files.size(logPath);
+    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 5, 'o', 't'}), size);
+    }
+
+    store = open(Long.MAX_VALUE);
+    assertThat(store.keys()).containsOnly("mykey");
+    assertThat(Files.size(logPath)).isEqualTo(size);
+
+    store.write("other", "othervalue");
+    assertThat(store.read("other")).hasValue("othervalue");
+  }
+
+  @Test
+  public void should_start_empty_if_format_is_unknown() throws IOException {
+    store.close();
+    Files.write(logPath, "garbage".getBytes(StandardCharsets.UTF_8));
+
+    store = open(Long.MAX_VALUE);
+    assertThat(store.keys()).isEmpty();
+    store.write("mykey", "myvalue");
+    assertThat(store.read("mykey")).hasValue("myvalue");
+  }
+}
@@ -19,11 +19,19 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Rule;
@@ -31,9 +39,12 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.HashingPathMapper;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -49,6 +60,7 @@ public class IssuePersistenceTest {
     VirtualFile baseDir = mock(VirtualFile.class);
 
     when(project.getBaseDir()).thenReturn(baseDir);
+    when(project.getBasePath()).thenReturn(temp.getRoot().getAbsolutePath());
     when(baseDir.getPath()).thenReturn(temp.getRoot().getAbsolutePath());
     when(baseDir.findFileByRelativePath(anyString())).thenReturn(baseDir);
     persistence = new IssuePersistence(project);
@@ -98,6 +110,166 @@ public class IssuePersistenceTest {
     assertThat(issue.getServerIssueKey()).isEqualTo("serverKey");
   }
 
+  @Test
+  public void should_persist_on_flush() throws IOException {
+    persistence.save("key1", Collections.singleton(testTrackable));
+    persistence.save("key2", Collections.singleton(testTrackable));
+    persistence.clear("key2");
+    persistence.flush();
+
+    IssuePersistence reloaded = new IssuePersistence(project);
+    assertThat(reloaded.contains("key1")).isTrue();
+    assertThat(reloaded.read("key1")).hasSize(1);
+    assertThat(reloaded.contains("key2")).isFalse();
+    assertThat(reloaded.read("key2")).isNull();
+  }
+
+  @Test
+  public void should_read_latest_write() throws IOException {
+    persistence.save("key", Collections.emptyList());
+    persistence.save("key", Collections.singleton(testTrackable));
+    assertThat(persistence.read("key")).hasSize(1);
+
+    persistence.flush();
+    assertThat(persistence.read("key")).hasSize(1);
+    assertThat(persistence.failedWrites()).isZero();
+  }
+
+  @Test
+  public void should_not_contain_cleared_key() {
+    persistence.save("key", Collections.singleton(testTrackable));
+    assertThat(persistence.contains("key")).isTrue();
+    persistence.clear("key");
+    assertThat(persistence.contains("key")).isFalse();
+    persistence.flush();
+    assertThat(persistence.contains("key")).isFalse();
+  }
+
+  @Test
+  public void should_apply_backpressure_when_many_writes_are_pending() throws IOException {
+    for (int i = 0; i < IssuePersistence.MAX_PENDING_WRITES * 2; i++) {
+      persistence.save("key" + i, Collections.singleton(testTrackable));
+    }
+    persistence.flush();
+
+    IssuePersistence reloaded = new IssuePersistence(project);
+    assertThat(reloaded.read("key0")).hasSize(1);
+    assertThat(reloaded.read("key" + (IssuePersistence.MAX_PENDING_WRITES * 2 - 1))).hasSize(1);
+  }
+
+  @Test
+  public void should_migrate_legacy_store() throws IOException {
+    Path legacyBasePath = temp.getRoot().toPath().resolve(Project.DIRECTORY_STORE_FOLDER).resolve("sonarlint").resolve("issuestore");
+    Files.createDirectories(legacyBasePath);
+    IndexedObjectStore<String, Sonarlint.Issues> legacyStore = new IndexedObjectStore<>(new StringStoreIndex(legacyBasePath),
+      new HashingPathMapper(legacyBasePath, 2), IssuePersistence.READER, IssuePersistence.WRITER, key -> true);
+    legacyStore.write("legacy", Sonarlint.Issues.newBuilder()
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("ruleKey").setMessage("msg").setLine(5))
+      .build());
+
+    IssuePersistence migrated = new IssuePersistence(project);
+
+    Collection<LocalIssueTrackable> issues = migrated.read("legacy");
+    assertThat(issues).hasSize(1);
+    assertThat(issues.iterator().next().getMessage()).isEqualTo("msg");
+    assertThat(legacyBasePath).doesNotExist();
+  }
+
+  @Test
+  public void should_keep_legacy_store_if_migration_fails() throws IOException {
+    Path legacyBasePath = temp.getRoot().toPath().resolve(Project.DIRECTORY_STORE_FOLDER).resolve("sonarlint").resolve("issuestore");
+    Files.createDirectories(legacyBasePath);
+    HashingPathMapper mapper = new HashingPathMapper(legacyBasePath, 2);
+    IndexedObjectStore<String, Sonarlint.Issues> legacyStore = new IndexedObjectStore<>(new StringStoreIndex(legacyBasePath),
+      mapper, IssuePersistence.READER, IssuePersistence.WRITER, key -> true);
+    legacyStore.write("legacy", Sonarlint.Issues.newBuilder()
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("ruleKey").setMessage("msg").setLine(5))
+      .build());
+    // truncated protobuf
+    Files.write(mapper.apply("legacy"), new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+
+    IssuePersistence migrated = new IssuePersistence(project);
+
+    assertThat(migrated.read("legacy")).isNull();
+    assertThat(legacyBasePath.resolve(StringStoreIndex.INDEX_FILENAME)).exists();
+    assertThat(mapper.apply("legacy")).exists();
+  }
+
+  @Test
+  public void should_open_store_lazily() {
+    Path storePath = temp.getRoot().toPath().resolve(Project.DIRECTORY_STORE_FOLDER).resolve("sonarlint").resolve("issues");
+    assertThat(storePath).doesNotExist();
+
+    persistence.open();
+    assertThat(storePath).exists();
+  }
+
+  @Test
+  public void should_clean_entries_of_deleted_files() throws IOException {
+    persistence.save("key1", Collections.singleton(testTrackable));
+    persistence.save("gone", Collections.singleton(testTrackable));
+    persistence.flush();
+    when(project.getBaseDir().findFileByRelativePath("gone")).thenReturn(null);
+
+    assertThat(persistence.clean(mock(ProgressIndicator.class))).isEqualTo(1);
+
+    assertThat(persistence.read("key1")).hasSize(1);
+    assertThat(persistence.read("gone")).isNull();
+  }
+
+  @Test(expected = ProcessCanceledException.class)
+  public void should_cancel_clean() {
+    persistence.save("key1", Collections.singleton(testTrackable));
+    persistence.flush();
+    ProgressIndicator indicator = mock(ProgressIndicator.class);
+    doThrow(new ProcessCanceledException()).when(indicator).checkCanceled();
+
+    persistence.clean(indicator);
+  }
+
+  @Test
+  public void should_decode_issues_from_buffer() throws IOException {
+    byte[] serialized = Sonarlint.Issues.newBuilder()
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule1").setMessage("msg1").setLine(1).setChecksum(12))
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule2").setMessage("msg2").setServerIssueKey("key2").setResolved(true))
+      .build()
+      .toByteArray();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(serialized.length);
+    buffer.put(serialized).flip();
+
+    List<LocalIssueTrackable> issues = new ArrayList<>(IssuePersistence.decode(buffer));
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).getRuleKey()).isEqualTo("rule1");
+    assertThat(issues.get(0).getMessage()).isEqualTo("msg1");
+    assertThat(issues.get(0).getLine()).isEqualTo(1);
+    assertThat(issues.get(0).getLineHash()).isEqualTo(12);
+    assertThat(issues.get(0).getServerIssueKey()).isNull();
+    assertThat(issues.get(1).getRuleKey()).isEqualTo("rule2");
+    assertThat(issues.get(1).getLine()).isNull();
+    assertThat(issues.get(1).getServerIssueKey()).isEqualTo("key2");
+    assertThat(issues.get(1).isResolved()).isTrue();
+  }
+
+  @Test
+  public void should_share_repeated_strings() throws IOException {
+    persistence.save("key", Arrays.asList(testTrackable, testTrackable));
+    persistence.flush();
+
+    List<LocalIssueTrackable> issues = new ArrayList<>(new IssuePersistence(project).read("key"));
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).getMessage()).isEqualTo("msg");
+    assertThat(issues.get(0).getAssignee()).isEqualTo("assignee");
+    assertThat(issues.get(1).getRuleKey()).isSameAs(issues.get(0).getRuleKey());
+    assertThat(issues.get(1).getMessage()).isSameAs(issues.get(0).getMessage());
+  }
+
+  @Test
+  public void should_decode_empty_buffer() throws IOException {
+    assertThat(IssuePersistence.decode(ByteBuffer.allocate(0))).isEmpty();
+  }
+
   private Trackable testTrackable = new Trackable() {
     @Override public Integer getLine() {
       return 5;
@@ -19,24 +19,29 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.intellij.lang.Language;
+import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Ignore;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.ExpectedException;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.config.project.SonarLintProjectSettings;
 import org.sonarlint.intellij.issue.LiveIssue;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -46,8 +51,6 @@ import static org.mockito.Mockito.when;
 public class LiveIssueCacheTest extends AbstractSonarLintLightTests {
 
   private IssuePersistence store = mock(IssuePersistence.class);
-  @Rule
-  public ExpectedException exception = ExpectedException.none();
 
   private LiveIssueCache cache;
 
@@ -157,52 +160,122 @@ public class LiveIssueCacheTest extends AbstractSonarLintLightTests {
 
     verify(store).save(eq("file0"), anyCollection());
     verify(store).save(eq("file1"), anyCollection());
+    verify(store).flush();
     verifyNoMoreInteractions(store);
   }
 
   @Test
   @Ignore
-  public void error_flush() throws IOException {
-    doThrow(new IOException()).when(store).save(anyString(), anyCollection());
-
+  public void should_flush_on_project_closing() throws IOException {
     LiveIssue issue1 = createTestIssue("r1");
     VirtualFile file0 = createTestFile("file0");
-    // TODO how to link created file to module
     cache.save(file0, Collections.singleton(issue1));
+    VirtualFile file1 = createTestFile("file1");
+    cache.save(file1, Collections.singleton(issue1));
 
-    exception.expect(IllegalStateException.class);
     cache.flushAll();
+
+    verify(store).save(eq("file0"), anyCollection());
+    verify(store).save(eq("file1"), anyCollection());
+    verify(store).flush();
+    verifyNoMoreInteractions(store);
   }
 
   @Test
-  @Ignore
-  public void error_remove_eldest() throws IOException {
-    doThrow(new IOException()).when(store).save(anyString(), anyCollection());
+  public void should_weigh_flows_and_range_markers() {
+    LiveIssue simple = createTestIssue("r1");
+    LiveIssue withRange = createTestIssue("r1");
+    when(withRange.getRange()).thenReturn(mock(RangeMarker.class));
+    LiveIssue withFlows = createTestIssue("r1");
+    LiveIssue.IssueLocation location = new LiveIssue.IssueLocation(mock(RangeMarker.class), "location");
+    when(withFlows.flows()).thenReturn(Collections.singletonList(new LiveIssue.Flow(Arrays.asList(location, location))));
+
+    long simpleWeight = LiveIssueCache.weigh(Collections.singleton(simple));
+    assertThat(LiveIssueCache.weigh(Collections.emptyList())).isEqualTo(LiveIssueCache.ENTRY_OVERHEAD);
+    assertThat(LiveIssueCache.weigh(Arrays.asList(simple, simple))).isGreaterThan(simpleWeight);
+    assertThat(LiveIssueCache.weigh(Collections.singleton(withRange))).isEqualTo(simpleWeight + LiveIssueCache.RANGE_MARKER_OVERHEAD);
+    assertThat(LiveIssueCache.weigh(Collections.singleton(withFlows))).isGreaterThan(simpleWeight + 2 * LiveIssueCache.RANGE_MARKER_OVERHEAD);
+  }
 
-    LiveIssue issue1 = createTestIssue("r1");
-    for (int i = 0; i < 10; i++) {
-      VirtualFile file = createTestFile("file" + i);
-      cache.save(file, Collections.singleton(issue1));
-    }
+  @Test
+  public void should_evict_least_recently_used_when_over_budget() {
+    LiveIssue issue = createTestIssue("r1");
+    List<LiveIssue> manyIssues = Collections.nCopies(100, issue);
+    long budget = LiveIssueCache.weigh(manyIssues) + LiveIssueCache.weigh(Collections.singleton(issue)) * 3;
+    cache = new LiveIssueCache(getProject(), LiveIssueCache.DEFAULT_MAX_ENTRIES, () -> budget);
+
+    VirtualFile bigFile = createTestFile("Big.java", Language.findLanguageByID("JAVA"), "");
+    cache.save(bigFile, manyIssues);
+    VirtualFile small1 = createTestFile("Small1.java", Language.findLanguageByID("JAVA"), "");
+    cache.save(small1, Collections.singleton(issue));
+    VirtualFile small2 = createTestFile("Small2.java", Language.findLanguageByID("JAVA"), "");
+    cache.save(small2, Collections.singleton(issue));
+    // big file becomes the most recently used
+    assertThat(cache.getLive(bigFile)).hasSize(100);
+    assertThat(cache.getStats().evictionCount()).isZero();
+
+    VirtualFile small3 = createTestFile("Small3.java", Language.findLanguageByID("JAVA"), "");
+    cache.save(small3, Collections.singleton(issue));
+    VirtualFile small4 = createTestFile("Small4.java", Language.findLanguageByID("JAVA"), "");
+    cache.save(small4, Collections.singleton(issue));
+
+    assertThat(cache.contains(small1)).isFalse();
+    assertThat(cache.contains(bigFile)).isTrue();
+    assertThat(cache.getStats().weight()).isLessThanOrEqualTo(budget);
+    assertThat(cache.getStats().evictionCount()).isPositive();
+    verify(store).save(anyString(), anyCollection());
+  }
 
-    exception.expect(IllegalStateException.class);
-    cache.save(createTestFile("anotherfile"), Collections.singleton(issue1));
+  @Test
+  public void should_persist_evicted_entries_outside_of_cache_monitor() {
+    cache = new LiveIssueCache(getProject(), 1, () -> Long.MAX_VALUE);
+    LiveIssue issue = createTestIssue("r1");
+    VirtualFile evicted = createTestFile("Evicted.java", Language.findLanguageByID("JAVA"), "");
+    cache.save(evicted, Collections.singleton(issue));
+    List<Boolean> heldLock = new ArrayList<>();
+    List<Collection<LiveIssue>> visibleDuringSave = new ArrayList<>();
+    doAnswer(invocation -> {
+      heldLock.add(Thread.holdsLock(cache));
+      visibleDuringSave.add(cache.getLive(evicted));
+      return null;
+    }).when(store).save(anyString(), anyCollection());
+
+    cache.save(createTestFile("Other.java", Language.findLanguageByID("JAVA"), ""), Collections.singleton(issue));
+
+    assertThat(heldLock).containsExactly(false);
+    // still served from memory until it is queued to be persisted
+    assertThat(visibleDuringSave.get(0)).containsOnly(issue);
+    assertThat(cache.getLive(evicted)).isNull();
   }
 
   @Test
-  @Ignore
-  public void should_flush_on_project_closing() throws IOException {
-    LiveIssue issue1 = createTestIssue("r1");
-    VirtualFile file0 = createTestFile("file0");
-    cache.save(file0, Collections.singleton(issue1));
-    VirtualFile file1 = createTestFile("file1");
-    cache.save(file1, Collections.singleton(issue1));
+  public void should_keep_most_recent_entry_even_if_over_budget() {
+    cache = new LiveIssueCache(getProject(), LiveIssueCache.DEFAULT_MAX_ENTRIES, () -> 1L);
+    VirtualFile file = createTestFile("file1");
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
 
-    cache.flushAll();
+    assertThat(cache.contains(file)).isTrue();
+    assertThat(cache.getStats().evictionCount()).isZero();
+  }
 
-    verify(store).save(eq("file0"), anyCollection());
-    verify(store).save(eq("file1"), anyCollection());
-    verifyNoMoreInteractions(store);
+  @Test
+  public void should_compute_stats() {
+    VirtualFile file = createTestFile("file1");
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+    cache.getLive(file);
+    cache.getLive(file);
+    cache.getLive(createTestFile("file2"));
+
+    LiveIssueCache.Stats stats = cache.getStats();
+    assertThat(stats.size()).isEqualTo(1);
+    assertThat(stats.weight()).isEqualTo(LiveIssueCache.weigh(Collections.singleton(createTestIssue("r1"))));
+    assertThat(stats.hitCount()).isEqualTo(2);
+    assertThat(stats.missCount()).isEqualTo(1);
+    assertThat(stats.hitRatio()).isEqualTo(2.0 / 3);
+    assertThat(stats.maxWeight()).isEqualTo(SonarLintProjectSettings.DEFAULT_ISSUE_CACHE_MAX_SIZE_MB * 1024L * 1024L);
+
+    cache.save(file, Collections.emptyList());
+    assertThat(cache.getStats().weight()).isEqualTo(LiveIssueCache.ENTRY_OVERHEAD);
   }
 
   private LiveIssue createTestIssue(String ruleKey) {
@@ -0,0 +1,301 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Function;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrackerTest extends AbstractSonarLintLightTests {
+
+  @Test
+  public void should_match_in_passes() {
+    FakeTrackable base1 = new FakeTrackable("rule1", 1, 10, 100, "msg1", null);
+    FakeTrackable base2 = new FakeTrackable("rule1", 5, 20, 200, "msg2", "key2");
+    FakeTrackable base3 = new FakeTrackable("rule2", 7, 30, 300, "msg3", null);
+    // moved, same text range hash
+    FakeTrackable raw1 = new FakeTrackable("rule1", 3, 10, 150, "other msg", null);
+    // same line and message
+    FakeTrackable raw2 = new FakeTrackable("rule1", 5, 21, 201, "msg2", null);
+    // different rule
+    FakeTrackable raw3 = new FakeTrackable("rule3", 7, 30, 300, "msg3", null);
+
+    Tracking<FakeTrackable, FakeTrackable> tracking = new Tracker<FakeTrackable, FakeTrackable>()
+      .track(() -> Arrays.asList(raw1, raw2, raw3), () -> Arrays.asList(base1, base2, base3));
+
+    assertThat(tracking.getMatchedRaws()).containsOnly(entry(raw1, base1), entry(raw2, base2));
+    assertThat(tracking.getUnmatchedRaws()).containsExactly(raw3);
+    assertThat(tracking.getUnmatchedBases()).containsExactly(base3);
+  }
+
+  @Test
+  public void should_match_server_issue_key_only_if_not_blank() {
+    FakeTrackable base1 = new FakeTrackable("rule1", 1, 10, 100, "msg1", "");
+    FakeTrackable base2 = new FakeTrackable("rule2", 2, 20, 200, "msg2", "key");
+    FakeTrackable raw1 = new FakeTrackable("rule3", 3, 30, 300, "msg3", "");
+    FakeTrackable raw2 = new FakeTrackable("rule4", 4, 40, 400, "msg4", "key");
+
+    Tracking<FakeTrackable, FakeTrackable> tracking = new Tracker<FakeTrackable, FakeTrackable>()
+      .track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2));
+
+    assertThat(tracking.getMatchedRaws()).containsOnly(entry(raw2, base2));
+  }
+
+  @Test
+  public void should_prefer_candidate_with_same_message() {
+    FakeTrackable base1 = new FakeTrackable("rule", 1, 10, 100, "msg1", null);
+    FakeTrackable base2 = new FakeTrackable("rule", 1, 20, 100, "msg2", null);
+    FakeTrackable base3 = new FakeTrackable("rule", 1, 30, 100, "msg3", null);
+    // moved to another line and text range changed, only the line hash is the same
+    FakeTrackable raw1 = new FakeTrackable("rule", 2, 31, 100, "msg3", null);
+    FakeTrackable raw2 = new FakeTrackable("rule", 2, 11, 100, "msg1", null);
+
+    Tracking<FakeTrackable, FakeTrackable> tracking = new Tracker<FakeTrackable, FakeTrackable>()
+      .track(() -> Arrays.asList(raw1, raw2), () -> Arrays.asList(base1, base2, base3));
+
+    assertThat(tracking.getMatchedRaws()).containsOnly(entry(raw1, base3), entry(raw2, base1));
+  }
+
+  @Test
+  public void should_prefer_candidate_with_same_column() {
+    FakeTrackable base1 = new FakeTrackable("rule", 1, 10, 100, "msg1", null, 0);
+    FakeTrackable base2 = new FakeTrackable("rule", 1, 20, 100, "msg2", null, 5);
+    FakeTrackable base3 = new FakeTrackable("rule", 1, 30, 100, "msg3", null, 9);
+    // same line and line hash, but text range and message changed
+    FakeTrackable raw1 = new FakeTrackable("rule", 1, 31, 100, "other", null, 9);
+    FakeTrackable raw2 = new FakeTrackable("rule", 1, 21, 100, "other", null, 5);
+    FakeTrackable raw3 = new FakeTrackable("rule", 1, 11, 100, "other", null, 0);
+
+    Tracking<FakeTrackable, FakeTrackable> tracking = new Tracker<FakeTrackable, FakeTrackable>()
+      .track(() -> Arrays.asList(raw1, raw2, raw3), () -> Arrays.asList(base1, base2, base3));
+
+    assertThat(tracking.getMatchedRaws()).containsOnly(entry(raw1, base3), entry(raw2, base2), entry(raw3, base1));
+  }
+
+  @Test
+  public void should_keep_pairing_stable_on_lines_with_many_identical_rules() {
+    // generated-like code: a single line with the same issue repeated, which only differ by column
+    List<FakeTrackable> bases = new ArrayList<>();
+    List<FakeTrackable> raws = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      bases.add(new FakeTrackable("rule", 1, 10, 100, "msg", null, i % Tracker.MAX_CANDIDATES));
+      raws.add(new FakeTrackable("rule", 1, 10, 100, "msg", null, (i + 1) % Tracker.MAX_CANDIDATES));
+    }
+
+    Tracking<FakeTrackable, FakeTrackable> tracking = new Tracker<FakeTrackable, FakeTrackable>().track(() -> raws, () -> bases);
+
+    assertThat(tracking.getUnmatchedRaws()).isEmpty();
+    assertThat(tracking.getMatchedRaws().entrySet()).allMatch(e -> e.getKey().getColumn().equals(e.getValue().getColumn()));
+  }
+
+  @Test
+  public void should_give_same_results_as_reference_algorithm() {
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      List<FakeTrackable> raws = randomTrackables(random, random.nextInt(60));
+      List<FakeTrackable> bases = randomTrackables(random, random.nextInt(60));
+
+      Tracking<FakeTrackable, FakeTrackable> tracking = new Tracker<FakeTrackable, FakeTrackable>().track(() -> raws, () -> bases);
+      Map<FakeTrackable, FakeTrackable> expected = ReferenceTracker.track(raws, bases);
+
+      assertThat(tracking.getMatchedRaws()).isEqualTo(expected);
+      List<FakeTrackable> expectedUnmatchedRaws = new ArrayList<>(raws);
+      expectedUnmatchedRaws.removeIf(expected::containsKey);
+      assertThat(tracking.getUnmatchedRaws()).containsExactlyElementsOf(expectedUnmatchedRaws);
+      List<FakeTrackable> expectedUnmatchedBases = new ArrayList<>(bases);
+      expectedUnmatchedBases.removeIf(expected::containsValue);
+      assertThat(tracking.getUnmatchedBases()).containsExactlyElementsOf(expectedUnmatchedBases);
+    }
+  }
+
+  private static List<FakeTrackable> randomTrackables(Random random, int count) {
+    // small domains to have many collisions between keys
+    List<FakeTrackable> list = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      list.add(new FakeTrackable(
+        "rule" + random.nextInt(3),
+        random.nextInt(5) == 0 ? null : random.nextInt(6),
+        random.nextInt(5) == 0 ? null : random.nextInt(4),
+        random.nextInt(5) == 0 ? null : random.nextInt(4),
+        "msg" + random.nextInt(3),
+        random.nextInt(3) == 0 ? "key" + random.nextInt(10) : null,
+        random.nextInt(5) == 0 ? null : random.nextInt(3)));
+    }
+    return list;
+  }
+
+  private static Map.Entry<FakeTrackable, FakeTrackable> entry(FakeTrackable raw, FakeTrackable base) {
+    return new AbstractMap.SimpleEntry<>(raw, base);
+  }
+
+  /**
+   * Straightforward implementation of the tracking algorithm, used as reference.
+   */
+  private static class ReferenceTracker {
+    static Map<FakeTrackable, FakeTrackable> track(List<FakeTrackable> raws, List<FakeTrackable> bases) {
+      Map<FakeTrackable, FakeTrackable> rawToBase = new IdentityHashMap<>();
+      List<Function<FakeTrackable, Object>> keys = Arrays.asList(
+        t -> Arrays.asList(t.getRuleKey(), t.getLine(), t.getTextRangeHash()),
+        t -> Arrays.asList(t.getRuleKey(), t.getMessage(), t.getTextRangeHash()),
+        t -> Arrays.asList(t.getRuleKey(), t.getLine(), t.getMessage()),
+        t -> Arrays.asList(t.getRuleKey(), t.getTextRangeHash()),
+        t -> Arrays.asList(t.getRuleKey(), t.getLine(), t.getLineHash()),
+        t -> Arrays.asList(t.getRuleKey(), t.getLineHash()),
+        t -> t.getServerIssueKey() == null || t.getServerIssueKey().isEmpty() ? new Object() : t.getServerIssueKey());
+      for (Function<FakeTrackable, Object> key : keys) {
+        if (rawToBase.size() == raws.size()) {
+          break;
+        }
+        Map<Object, List<FakeTrackable>> baseSearch = new HashMap<>();
+        for (FakeTrackable base : bases) {
+          if (!rawToBase.containsValue(base)) {
+            baseSearch.computeIfAbsent(key.apply(base), k -> new ArrayList<>()).add(base);
+          }
+        }
+        for (FakeTrackable raw : raws) {
+          if (rawToBase.containsKey(raw)) {
+            continue;
+          }
+          List<FakeTrackable> candidates = baseSearch.get(key.apply(raw));
+          if (candidates != null && !candidates.isEmpty()) {
+            FakeTrackable match = candidates.get(0);
+            for (FakeTrackable candidate : candidates.subList(0, Math.min(candidates.size(), Tracker.MAX_CANDIDATES))) {
+              if (score(raw, candidate) > score(raw, match)) {
+                match = candidate;
+              }
+            }
+            rawToBase.put(raw, match);
+            candidates.remove(match);
+          }
+        }
+      }
+      return rawToBase;
+    }
+
+    private static int score(FakeTrackable raw, FakeTrackable base) {
+      int score = 0;
+      if (Objects.equals(raw.getMessage(), base.getMessage())) {
+        score += 4;
+      }
+      if (Objects.equals(raw.getTextRangeHash(), base.getTextRangeHash())) {
+        score += 2;
+      }
+      if (raw.getColumn() != null && raw.getColumn().equals(base.getColumn())) {
+        score += 1;
+      }
+      return score;
+    }
+  }
+
+  private static class FakeTrackable implements Trackable {
+    private final String ruleKey;
+    private final Integer line;
+    private final Integer textRangeHash;
+    private final Integer lineHash;
+    private final String message;
+    private final String serverIssueKey;
+    private final Integer column;
+
+    FakeTrackable(String ruleKey, Integer line, Integer textRangeHash, Integer lineHash, String message, String serverIssueKey) {
+      this(ruleKey, line, textRangeHash, lineHash, message, serverIssueKey, null);
+    }
+
+    FakeTrackable(String ruleKey, Integer line, Integer textRangeHash, Integer lineHash, String message, String serverIssueKey, Integer column) {
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.textRangeHash = textRangeHash;
+      this.lineHash = lineHash;
+      this.message = message;
+      this.serverIssueKey = serverIssueKey;
+      this.column = column;
+    }
+
+    @Override
+    public Integer getColumn() {
+      return column;
+    }
+
+    @Override
+    public Integer getLine() {
+      return line;
+    }
+
+    @Override
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public Integer getTextRangeHash() {
+      return textRangeHash;
+    }
+
+    @Override
+    public Integer getLineHash() {
+      return lineHash;
+    }
+
+    @Override
+    public String getRuleKey() {
+      return ruleKey;
+    }
+
+    @Override
+    public String getServerIssueKey() {
+      return serverIssueKey;
+    }
+
+    @Override
+    public Long getCreationDate() {
+      return null;
+    }
+
+    @Override
+    public boolean isResolved() {
+      return false;
+    }
+
+    @Override
+    public String getAssignee() {
+      return "";
+    }
+
+    @Override
+    public String getSeverity() {
+      return "MAJOR";
+    }
+
+    @Override
+    public String getType() {
+      return null;
+    }
+  }
+}
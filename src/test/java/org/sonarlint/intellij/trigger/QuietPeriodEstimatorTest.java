@@ -0,0 +1,79 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.trigger;
+
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QuietPeriodEstimatorTest {
+  private final QuietPeriodEstimator estimator = new QuietPeriodEstimator();
+
+  @Test
+  public void should_use_configured_period_when_file_never_analyzed() {
+    assertThat(estimator.quietPeriodMs(file("JAVA"), 2000)).isEqualTo(2000);
+  }
+
+  @Test
+  public void should_adapt_to_analysis_time_of_file() {
+    VirtualFile slow = file("JAVA");
+    estimator.recordAnalysis(slow, 3000);
+    assertThat(estimator.quietPeriodMs(slow, 2000)).isEqualTo(6000);
+
+    VirtualFile fast = file("JAVA");
+    estimator.recordAnalysis(fast, 100);
+    assertThat(estimator.quietPeriodMs(fast, 2000)).isEqualTo(1000);
+  }
+
+  @Test
+  public void should_bound_adapted_period() {
+    VirtualFile verySlow = file("JAVA");
+    estimator.recordAnalysis(verySlow, 60_000);
+    assertThat(estimator.quietPeriodMs(verySlow, 2000)).isEqualTo(8000);
+  }
+
+  @Test
+  public void should_fallback_to_file_type() {
+    estimator.recordAnalysis(file("Python"), 2000);
+
+    assertThat(estimator.quietPeriodMs(file("Python"), 2000)).isEqualTo(4000);
+    assertThat(estimator.quietPeriodMs(file("JAVA"), 2000)).isEqualTo(2000);
+  }
+
+  @Test
+  public void should_smooth_measures() {
+    VirtualFile f = file("JAVA");
+    estimator.recordAnalysis(f, 1000);
+    estimator.recordAnalysis(f, 2000);
+    assertThat(estimator.quietPeriodMs(f, 2000)).isEqualTo(2600);
+  }
+
+  private static VirtualFile file(String fileType) {
+    VirtualFile file = mock(VirtualFile.class);
+    FileType type = mock(FileType.class);
+    when(type.getName()).thenReturn(fileType);
+    when(file.getFileType()).thenReturn(type);
+    return file;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.util;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AggregatedProgressMonitorTest {
+  private ProgressIndicator indicator = mock(ProgressIndicator.class);
+  private AggregatedProgressMonitor aggregated = new AggregatedProgressMonitor(indicator);
+
+  @Test
+  public void should_weight_fraction_by_part() {
+    ProgressMonitor small = aggregated.newPart(1);
+    ProgressMonitor big = aggregated.newPart(3);
+
+    big.setFraction(1f);
+    verify(indicator).setFraction(0.75);
+
+    small.setFraction(0.5f);
+    verify(indicator).setFraction(0.875);
+  }
+
+  @Test
+  public void should_propagate_cancellation_to_all_parts() {
+    ProgressMonitor part1 = aggregated.newPart(1);
+    ProgressMonitor part2 = aggregated.newPart(1);
+    assertThat(part1.isCanceled()).isFalse();
+
+    when(indicator.isCanceled()).thenReturn(true);
+    assertThat(part1.isCanceled()).isTrue();
+    assertThat(part2.isCanceled()).isTrue();
+  }
+
+  @Test
+  public void should_cancel_parts_without_canceling_indicator() {
+    ProgressMonitor part = aggregated.newPart(1);
+    aggregated.cancel();
+
+    assertThat(part.isCanceled()).isTrue();
+    verify(indicator, times(0)).cancel();
+  }
+
+  @Test
+  public void should_nest_non_cancelable_sections() {
+    ProgressMonitor part1 = aggregated.newPart(1);
+    ProgressMonitor part2 = aggregated.newPart(1);
+
+    part1.startNonCancelableSection();
+    part2.startNonCancelableSection();
+    part1.finishNonCancelableSection();
+    verify(indicator, times(1)).startNonCancelableSection();
+    verify(indicator, times(0)).finishNonCancelableSection();
+
+    part2.finishNonCancelableSection();
+    verify(indicator, times(1)).finishNonCancelableSection();
+  }
+
+  @Test
+  public void should_ignore_fraction_out_of_bounds() {
+    ProgressMonitor part = aggregated.newPart(0);
+    part.setFraction(2f);
+    verify(indicator).setFraction(1.0);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CharSequenceInputStreamTest {
+
+  @Test
+  public void should_encode_text_bigger_than_buffer() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      // multi-byte characters end up split across chunks
+      text.append("été € 😀 ").append(i).append('\n');
+    }
+
+    assertThat(readAll(new CharSequenceInputStream(text, StandardCharsets.UTF_8), 1000))
+      .isEqualTo(text.toString().getBytes(StandardCharsets.UTF_8));
+    assertThat(readAll(new CharSequenceInputStream(text, StandardCharsets.UTF_16), 1000))
+      .isEqualTo(text.toString().getBytes(StandardCharsets.UTF_16));
+  }
+
+  @Test
+  public void should_read_byte_by_byte() throws IOException {
+    String text = "héllo";
+
+    assertThat(readAll(new CharSequenceInputStream(text, StandardCharsets.UTF_8), 1)).isEqualTo(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void should_replace_unmappable_characters_like_string() throws IOException {
+    String text = "café € \ud800";
+    Charset charset = StandardCharsets.ISO_8859_1;
+
+    assertThat(readAll(new CharSequenceInputStream(text, charset), 8192)).isEqualTo(text.getBytes(charset));
+  }
+
+  @Test
+  public void should_be_empty_for_empty_text() throws IOException {
+    InputStream in = new CharSequenceInputStream("", StandardCharsets.UTF_8);
+
+    assertThat(in.read()).isEqualTo(-1);
+    assertThat(in.read(new byte[10], 0, 10)).isEqualTo(-1);
+  }
+
+  private static byte[] readAll(InputStream in, int chunkSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (chunkSize == 1) {
+      int b;
+      while ((b = in.read()) != -1) {
+        out.write(b);
+      }
+    } else {
+      byte[] buffer = new byte[chunkSize];
+      int read;
+      while ((read = in.read(buffer, 0, chunkSize)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return out.toByteArray();
+  }
+}
@@ -22,6 +22,7 @@ package org.sonarlint.intellij.util;
 import com.intellij.openapi.progress.ProgressIndicator;
 import org.junit.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -49,4 +50,11 @@ public class TaskProgressMonitorTest {
     monitor.startNonCancelableSection();
     verify(wrapped).startNonCancelableSection();
   }
+
+  @Test
+  public void should_be_canceled_by_token() {
+    TaskProgressMonitor canceledMonitor = new TaskProgressMonitor(wrapped, () -> true);
+    assertThat(canceledMonitor.isCanceled()).isTrue();
+    assertThat(monitor.isCanceled()).isFalse();
+  }
 }